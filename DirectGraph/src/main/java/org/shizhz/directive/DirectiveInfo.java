@@ -3,10 +3,11 @@ package org.shizhz.directive;
 public class DirectiveInfo {
 
     public enum DirectiveType {
-        G("Add Route to Graph"), D("Distance"), TS("Trips with Stops"), TMS(
-                "Trips with Max Stops"), TLTD("Trips Less Than Distance"), SD(
-                "Shortest Distance"), PRINT("Print Route Network"), HELP(
-                "Usage Information");
+        G("Add Route to Graph"), D("Distance"), TS("Trips with Stops"), TSA(
+                "Trips Aggregate with Stops"), TMS("Trips with Max Stops"),
+        TLTD("Trips Less Than Distance"), SD("Shortest Distance"), SDS(
+                "Shortest Distance with Stops"), PRINT("Print Route Network"),
+        HELP("Usage Information");
 
         private String desc;
 
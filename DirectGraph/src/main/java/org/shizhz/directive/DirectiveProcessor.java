@@ -1,5 +1,6 @@
 package org.shizhz.directive;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -8,7 +9,8 @@ import org.shizhz.exception.DirectiveException;
 import org.shizhz.exception.IllegalInputException;
 import org.shizhz.exception.NoRouteExistingException;
 import org.shizhz.exception.UnRecognizedDirectiveException;
-import org.shizhz.route.Route;
+import org.shizhz.matrix.LinearRecurrence;
+import org.shizhz.matrix.TripAggregate;
 import org.shizhz.route.RouteNetwork;
 import org.shizhz.route.RouteParser;
 import org.shizhz.util.Joiner;
@@ -101,9 +103,52 @@ public class DirectiveProcessor {
         }
     }
 
+    private long getLongParameter(String param, String name)
+            throws DirectiveException {
+        try {
+            return Long.valueOf(param);
+        } catch (NumberFormatException nfe) {
+            throw new DirectiveException("The " + name
+                    + " should be a positive number");
+        }
+    }
+
+    /**
+     * The trips are counted exactly only with stops in an <code>int</code>,
+     * more stops need a modulus.
+     * 
+     * @param route
+     * @param stops
+     * @return
+     * @throws DirectiveException
+     */
+    private int getExactStops(String route, long stops)
+            throws DirectiveException {
+        if ((int) stops != stops) {
+            throw new DirectiveException(
+                    "Too many stops to count the trips exactly, count them modulo a prime like `"
+                            + route + ", " + stops + ", "
+                            + LinearRecurrence.DEFAULT_MODULUS + "`");
+        }
+
+        return (int) stops;
+    }
+
+    private void tripsParametersRequired(DirectiveInfo directive)
+            throws DirectiveException {
+        parameterRequired(directive);
+
+        int amount = directive.getDirectiveParams().length;
+        if (amount != 2 && amount != 3) {
+            throw new DirectiveException(
+                    "Wrong parameter to query trips. The valid format is like `A-C, 4` or `A-C, 4, 1000000007`, but get "
+                            + directive.getDirective());
+        }
+    }
+
     /**
      * Process directive of finding trips amount of a route with specified stops
-     * number.
+     * number, or modulo a prime if the prime follows the stops.
      * 
      * @param directive
      * @return
@@ -114,25 +159,56 @@ public class DirectiveProcessor {
     private String processTripsWithStops(DirectiveInfo directive)
             throws DirectiveException, IllegalInputException,
             NoRouteExistingException {
+        tripsParametersRequired(directive);
+
+        String[] params = directive.getDirectiveParams();
+        String route = params[0];
+        long stops = getLongParameter(params[1], "stops");
+
+        if (params.length == 3) {
+            return route
+                    + RESULT_TITLE_DELIMITER
+                    + routeNetwork.tripsAmountWithStops(route, stops,
+                            getLongParameter(params[2], "modulus"));
+        }
+
+        BigInteger trips = routeNetwork.tripsAmountWithStops(route,
+                getExactStops(route, stops));
+
+        return route + RESULT_TITLE_DELIMITER + trips;
+    }
+
+    /**
+     * Process directive of finding the number, the shortest, longest and
+     * average distances of the trips of a route with specified stops number.
+     * 
+     * @param directive
+     * @return
+     * @throws DirectiveException
+     * @throws IllegalInputException
+     * @throws NoRouteExistingException
+     */
+    private String processTripsAggregateWithStops(DirectiveInfo directive)
+            throws DirectiveException, IllegalInputException,
+            NoRouteExistingException {
         parameterRequired(directive);
 
         if (directive.getDirectiveParams().length != 2) {
             throw new DirectiveException(
-                    "Wrong parameter to query trips. The valid format is like `A-B-C, 4`, but get "
+                    "Wrong parameter to query trips. The valid format is like `A-C, 4`, but get "
                             + directive.getDirective());
         }
 
         String route = directive.getDirectiveParams()[0];
-
-        int trips = routeNetwork.tripsAmountWithStops(route,
+        TripAggregate aggregate = routeNetwork.tripsAggregateWithStops(route,
                 getNumericParameter(directive.getDirectiveParams()[1]));
 
-        return route + RESULT_TITLE_DELIMITER + trips;
+        return route + RESULT_TITLE_DELIMITER + aggregate;
     }
 
     /**
      * Process directive of finding trips amount of a route with maximum stops
-     * number.
+     * number, or modulo a prime if the prime follows the stops.
      * 
      * @param directive
      * @return
@@ -143,17 +219,21 @@ public class DirectiveProcessor {
     private String processTripsWithMaximumStops(DirectiveInfo directive)
             throws DirectiveException, IllegalInputException,
             NoRouteExistingException {
-        parameterRequired(directive);
+        tripsParametersRequired(directive);
 
-        if (directive.getDirectiveParams().length != 2) {
-            throw new DirectiveException(
-                    "Wrong parameter to query trips. The valid format is like `A-B-C, 4`, but get "
-                            + directive.getDirective());
+        String[] params = directive.getDirectiveParams();
+        String route = params[0];
+        long stops = getLongParameter(params[1], "stops");
+
+        if (params.length == 3) {
+            return route
+                    + RESULT_TITLE_DELIMITER
+                    + routeNetwork.tripsAmountWithMaximumStops(route, stops,
+                            getLongParameter(params[2], "modulus"));
         }
 
-        String route = directive.getDirectiveParams()[0];
-        int trips = routeNetwork.tripsAmountWithMaximumStops(route,
-                getNumericParameter(directive.getDirectiveParams()[1]));
+        BigInteger trips = routeNetwork.tripsAmountWithMaximumStops(route,
+                getExactStops(route, stops));
 
         return route + RESULT_TITLE_DELIMITER + trips;
     }
@@ -204,9 +284,9 @@ public class DirectiveProcessor {
 
         for (String route : directive.getDirectiveParams()) {
             try {
-                Route path = routeNetwork.shortestPath(route);
-                result.append(route + RESULT_TITLE_DELIMITER
-                        + path.getDistance() + MULTI_RESULT_DELIMITER);
+                int distance = routeNetwork.shortestDistance(route);
+                result.append(route + RESULT_TITLE_DELIMITER + distance
+                        + MULTI_RESULT_DELIMITER);
             } catch (NoRouteExistingException nee) {
                 result.append(route + RESULT_TITLE_DELIMITER + nee.getMessage()
                         + MULTI_RESULT_DELIMITER);
@@ -219,6 +299,35 @@ public class DirectiveProcessor {
         return path + "\n";
     }
 
+    /**
+     * Process the directive of finding the shortest distance between two
+     * cities with specified stops number.
+     * 
+     * @param directive
+     * @return
+     * @throws DirectiveException
+     * @throws IllegalInputException
+     * @throws NoRouteExistingException
+     */
+    private String processShortestDistanceWithStops(DirectiveInfo directive)
+            throws DirectiveException, IllegalInputException,
+            NoRouteExistingException {
+        parameterRequired(directive);
+
+        if (directive.getDirectiveParams().length != 2) {
+            throw new DirectiveException(
+                    "Wrong parameter to query shortest distance. The valid format is like `A-C, 4`, but get "
+                            + directive.getDirective());
+        }
+
+        String route = directive.getDirectiveParams()[0];
+
+        int distance = routeNetwork.shortestDistanceWithStops(route,
+                getNumericParameter(directive.getDirectiveParams()[1]));
+
+        return route + RESULT_TITLE_DELIMITER + distance;
+    }
+
     /**
      * Process the print route network directive.
      * 
@@ -320,6 +429,9 @@ public class DirectiveProcessor {
                 case TS:
                     result = processTripsWithStops(directive);
                     break;
+                case TSA:
+                    result = processTripsAggregateWithStops(directive);
+                    break;
                 case TMS:
                     result = processTripsWithMaximumStops(directive);
                     break;
@@ -329,6 +441,9 @@ public class DirectiveProcessor {
                 case SD:
                     result = processFindShortestPath(directive);
                     break;
+                case SDS:
+                    result = processShortestDistanceWithStops(directive);
+                    break;
                 case PRINT:
                     result = processPrintRouteNetwork();
                     break;
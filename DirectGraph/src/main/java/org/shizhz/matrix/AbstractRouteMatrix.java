@@ -1,19 +1,32 @@
 package org.shizhz.matrix;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-import org.shizhz.exception.BrokenRouteMatrixExcpetion;
 import org.shizhz.route.City;
 import org.shizhz.route.Route;
 import org.shizhz.route.RouteParser;
 
 /**
  * The abstract class of <code>RouteMatrix</code> interface.
+ * <p>
+ * Elements are kept once, in rows indexed by the ordinals of the sorted
+ * cities. Each row only keeps its elements which are not null, along with the
+ * sorted ordinals of their columns, so a sparse matrix costs O(n + E) instead
+ * of O(n^2). Rows and columns are returned as read-only views backed by the
+ * matrix, and columns are scanned across the rows unless the column index is
+ * enabled by <code>setColumnIndexed</code>.
  * 
  * @author shizhz
  * @param <T>
@@ -21,27 +34,87 @@ import org.shizhz.route.RouteParser;
  */
 public abstract class AbstractRouteMatrix<T> implements RouteMatrix<T> {
 
-    private List<City> matrixRouteCities = new ArrayList<City>();
+    private CityIndex matrixRouteCities = CityIndex.EMPTY;
 
-    private List<Route> matrixRoutes = new ArrayList<Route>();
+    /**
+     * The routes added since the last build.
+     */
+    private List<Route> newMatrixRoutes = new ArrayList<Route>();
 
-    private Map<City, Map<City, T>> matrixRowBucket = new TreeMap<City, Map<City, T>>();
+    /**
+     * All the routes ever added, to find duplicates in O(1). Single routes are
+     * hashed by the ids of their cities and their distance.
+     */
+    private Set<Route> matrixRouteSet = new HashSet<Route>();
 
-    private Map<City, Map<City, T>> matrixColumnBucket = new TreeMap<City, Map<City, T>>();
+    private ElementRow[] matrixRows = new ElementRow[0];
+
+    /**
+     * Whether any element has been kept in <code>matrixRows</code>, which
+     * stays false for the subclasses keeping elements in their own storage.
+     */
+    private boolean rowsStored;
+
+    /**
+     * The rows with an element in each column, or null if not indexed.
+     */
+    private BitSet[] columnIndex;
+
+    private List<RouteMatrix<T>> binaryPowers = new ArrayList<RouteMatrix<T>>();
 
     @Override
     public List<City> getMatrixRouteCities() {
-        return Collections.unmodifiableList(matrixRouteCities);
+        return matrixRouteCities;
+    }
+
+    /**
+     * Get the power of this matrix with exponent 2^index. All such powers
+     * computed are cached until this matrix is changed.
+     * 
+     * @param index
+     * @return This matrix raised to the power of 2^index.
+     */
+    protected RouteMatrix<T> getBinaryPower(int index) {
+        if (binaryPowers.isEmpty()) {
+            binaryPowers.add(this);
+        }
+
+        while (binaryPowers.size() <= index) {
+            RouteMatrix<T> last = binaryPowers.get(binaryPowers.size() - 1);
+            binaryPowers.add(last.multiply(last));
+        }
+
+        return binaryPowers.get(index);
     }
 
-    protected Map<City, Map<City, T>> getMatrixRowBucket() {
-        return Collections.unmodifiableMap(matrixRowBucket);
+    /**
+     * Drop the cached binary powers of this matrix. Should be invoked whenever
+     * the content of this matrix is changed.
+     */
+    protected void invalidatePowers() {
+        if (!binaryPowers.isEmpty()) {
+            // The first one is this matrix itself.
+            for (int i = 1; i < binaryPowers.size(); i++) {
+                releasePower(binaryPowers.get(i));
+            }
+            binaryPowers.clear();
+        }
     }
 
-    protected Map<City, Map<City, T>> getMatrixColumnBucket() {
-        return Collections.unmodifiableMap(matrixColumnBucket);
+    /**
+     * Release the resources held by a cached power of this matrix, which is
+     * being dropped. Nothing to release by default.
+     * 
+     * @param power
+     */
+    protected void releasePower(RouteMatrix<T> power) {
     }
 
+    /**
+     * Exponentiation by squaring, which costs O(log(exponent)) multiplications.
+     * The powers with exponent 2^i are cached by this matrix, so the returned
+     * matrix may be shared with later calls and should not be modified.
+     */
     @Override
     public RouteMatrix<T> power(int exponent) {
         if (exponent <= 0) {
@@ -49,14 +122,47 @@ public abstract class AbstractRouteMatrix<T> implements RouteMatrix<T> {
                     "In current implementation, the exponent should be a positive integer.");
         }
 
-        RouteMatrix<T> result = this;
-        for (int i = exponent; i > 1; i--) {
-            result = result.multiply(this);
+        RouteMatrix<T> result = null;
+        for (int index = 0; exponent > 0; index++, exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                RouteMatrix<T> binaryPower = getBinaryPower(index);
+                result = result == null ? binaryPower : result
+                        .multiply(binaryPower);
+            }
         }
 
         return result;
     }
 
+    /**
+     * Recursive doubling on the bits of the exponent, from the highest one.
+     * With <code>S(m)</code> the sum of powers up to <code>m</code>:
+     * <code>S(2m) = S(m) + A^m * S(m)</code> and
+     * <code>S(2m + 1) = S(2m) + A^(2m + 1)</code>, so it costs at most 3
+     * multiplications for each bit, O(log(exponent)) in total.
+     */
+    @Override
+    public RouteMatrix<T> powerSum(int exponent) {
+        if (exponent <= 0) {
+            throw new UnsupportedOperationException(
+                    "In current implementation, the exponent should be a positive integer.");
+        }
+
+        // S(1) = A^1 = A
+        RouteMatrix<T> sum = this;
+        RouteMatrix<T> power = this;
+        for (int bit = Integer.highestOneBit(exponent) >>> 1; bit > 0; bit >>>= 1) {
+            sum = sum.add(power.multiply(sum));
+            power = power.multiply(power);
+            if ((exponent & bit) != 0) {
+                power = power.multiply(this);
+                sum = sum.add(power);
+            }
+        }
+
+        return sum;
+    }
+
     @Override
     public int getMatrixDimensions() {
         return getMatrixRouteCities().size();
@@ -64,58 +170,149 @@ public abstract class AbstractRouteMatrix<T> implements RouteMatrix<T> {
 
     @Override
     public Map<City, T> getMatrixRow(City city) {
-        Map<City, T> row = getMatrixRowBucket().get(city);
-        if (row == null) {
-            row = new TreeMap<City, T>();
-        }
-
-        return row;
+        return new LineView(city, true);
     }
 
     @Override
     public Map<City, T> getMatrixColumn(City city) {
-        Map<City, T> column = getMatrixColumnBucket().get(city);
-        if (column == null) {
-            column = new TreeMap<City, T>();
+        return new LineView(city, false);
+    }
+
+    /**
+     * Get the ordinal of the first column from the given one, whose element
+     * in the row is not null. Subclasses keeping elements in their own storage
+     * may override it to skip the empty elements faster than
+     * <code>getMatrixElement</code>.
+     * 
+     * @param row
+     *            The ordinal of the row city.
+     * @param column
+     *            The ordinal of the column city to start from.
+     * @return The ordinal of the column, or -1 if there is no more element in
+     *         the row.
+     */
+    protected int nextColumn(int row, int column) {
+        if (rowsStored) {
+            ElementRow elements = matrixRows[row];
+            return elements == null ? -1 : elements.next(column);
+        }
+
+        for (int size = getMatrixDimensions(); column < size; column++) {
+            if (getMatrixElement(row, column) != null) {
+                return column;
+            }
         }
 
-        return column;
+        return -1;
+    }
+
+    /**
+     * The same as <code>nextColumn</code>, for the rows of a column.
+     */
+    private int nextRow(int row, int column) {
+        if (columnIndex != null) {
+            return columnIndex[column].nextSetBit(row);
+        }
+
+        for (int size = getMatrixDimensions(); row < size; row++) {
+            if (getMatrixElement(row, column) != null) {
+                return row;
+            }
+        }
+
+        return -1;
     }
 
     @Override
     public T getMatrixElement(City rowCity, City columnCity) {
-        T valueInRowBucket = getMatrixRow(rowCity).get(columnCity);
-        T valueInColumnBucket = getMatrixColumn(columnCity).get(rowCity);
-        if (valueInRowBucket != valueInColumnBucket) {
-            // The two objects found here are supposed to point to the same spot
-            // of the memory.
-            throw new BrokenRouteMatrixExcpetion(
-                    "The matrix is broken. The value found by order row-> column is: "
-                            + valueInRowBucket.toString()
-                            + " and the value found by order column -> row is: "
-                            + valueInColumnBucket.toString()
-                            + ", but they are supposed to point to the same object.");
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        if (row < 0 || column < 0) {
+            return null;
         }
-        return valueInRowBucket;
+
+        return getMatrixElement(row, column);
+    }
+
+    /**
+     * Get the element by the ordinals of its row and column city. Subclasses
+     * keeping elements in their own storage override this method and
+     * <code>setMatrixElement</code>.
+     * 
+     * @param row
+     *            The ordinal of the row city.
+     * @param column
+     *            The ordinal of the column city.
+     * @return The element, or null if there is no route.
+     */
+    @SuppressWarnings("unchecked")
+    protected T getMatrixElement(int row, int column) {
+        ElementRow elements = matrixRows[row];
+        return elements == null ? null : (T) elements.get(column);
     }
 
+    /**
+     * Cities out of this matrix are added into it first.
+     */
     @Override
     public void setMatrixElement(City rowCity, City columnCity, T element) {
-        Map<City, T> row = matrixRowBucket.get(rowCity);
-        if (row == null) {
-            row = new TreeMap<City, T>();
-            matrixRowBucket.put(rowCity, row);
+        invalidatePowers();
+
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(rowCity, columnCity));
+        }
+
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        ElementRow elements = matrixRows[row];
+        if (elements == null) {
+            if (element == null) {
+                return;
+            }
+
+            elements = new ElementRow();
+            matrixRows[row] = elements;
+            rowsStored = true;
         }
-        row.put(columnCity, element);
+        elements.set(column, element);
 
-        Map<City, T> column = matrixColumnBucket.get(columnCity);
-        if (column == null) {
-            column = new TreeMap<City, T>();
-            matrixColumnBucket.put(columnCity, column);
+        if (columnIndex != null) {
+            columnIndex[column].set(row, element != null);
         }
-        column.put(rowCity, element);
     }
 
+    /**
+     * Enable or disable the index of rows with an element in each column,
+     * which speeds up <code>getMatrixColumn</code> on sparse matrices at the
+     * cost of maintaining it on every <code>setMatrixElement</code>.
+     * 
+     * @param indexed
+     */
+    protected void setColumnIndexed(boolean indexed) {
+        if (!indexed) {
+            columnIndex = null;
+            return;
+        }
+
+        int size = matrixRows.length;
+        columnIndex = new BitSet[size];
+        for (int j = 0; j < size; j++) {
+            columnIndex[j] = new BitSet(size);
+        }
+
+        for (int i = 0; i < size; i++) {
+            ElementRow elements = matrixRows[i];
+            for (int p = 0; elements != null && p < elements.amount; p++) {
+                columnIndex[elements.columns[p]].set(i);
+            }
+        }
+    }
+
+    /**
+     * The generic loop over elements, for the matrices without a semiring on
+     * primitive elements. The matrices with one override it with the blocked
+     * and parallel kernels of {@link SemiringKernels}.
+     */
     @Override
     public RouteMatrix<T> getMatrixTransitiveClosure() {
         // Warshall's algorithm to get the transitive closure of this matrix.
@@ -146,98 +343,216 @@ public abstract class AbstractRouteMatrix<T> implements RouteMatrix<T> {
         return transitiveClosure;
     }
 
-    @Override
-    public RouteMatrix<T> add(RouteMatrix<T> routeMatrix) {
-        if (routeMatrix == null) {
-            return null;
-        }
-
+    /**
+     * Check whether the given matrix can be used as the operand of a binary
+     * operation with this matrix, which requires both matrices to be built on
+     * the same set of cities.
+     * 
+     * @param routeMatrix
+     *            The other operand.
+     * @param operation
+     *            The name of the operation, used in the error message.
+     * @throws UnsupportedOperationException
+     *             Thrown if the two matrices are not compatible.
+     */
+    protected void validateOperand(RouteMatrix<T> routeMatrix, String operation) {
         if (getMatrixDimensions() != routeMatrix.getMatrixDimensions()) {
-            throw new UnsupportedOperationException(
-                    "It's not support to add two matrix with different dimensions");
+            throw new UnsupportedOperationException("It's not support to "
+                    + operation + " two matrix with different dimensions");
         }
 
-        if (!getMatrixRouteCities().containsAll(
-                routeMatrix.getMatrixRouteCities())) {
-            throw new UnsupportedOperationException(
-                    "It's not support to add two route matrix with different set of cities");
+        // Matrices derived from one another share the same index of cities.
+        List<City> cities = routeMatrix.getMatrixRouteCities();
+        if (cities != matrixRouteCities
+                && !matrixRouteCities.containsAll(cities)) {
+            throw new UnsupportedOperationException("It's not support to "
+                    + operation
+                    + " two route matrix with different set of cities");
         }
-        List<City> matrixCities = getMatrixRouteCities();
-        RouteMatrix<T> sum = newMatrixInstance();
+    }
 
-        sum.addMatrixRouteCities(matrixCities);
+    /**
+     * Get an element of a matrix validated as an operand of this matrix,
+     * which shares the same ordinals of cities.
+     */
+    private T getOperandElement(RouteMatrix<T> routeMatrix, int row, int column) {
+        if (routeMatrix instanceof AbstractRouteMatrix) {
+            return ((AbstractRouteMatrix<T>) routeMatrix).getMatrixElement(row,
+                    column);
+        }
 
-        int size = getMatrixDimensions();
+        List<City> matrixCities = getMatrixRouteCities();
+        return routeMatrix.getMatrixElement(matrixCities.get(row),
+                matrixCities.get(column));
+    }
 
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                City row = matrixCities.get(i);
-                City column = matrixCities.get(j);
-                T element = elementAdd(getMatrixElement(row, column),
-                        routeMatrix.getMatrixElement(row, column));
-                if (element != null) {
-                    sum.setMatrixElement(row, column, element);
-                }
-            }
+    @Override
+    public RouteMatrix<T> add(final RouteMatrix<T> routeMatrix) {
+        if (routeMatrix == null) {
+            return null;
         }
 
-        return sum;
+        validateOperand(routeMatrix, "add");
+        return computeElements(new ElementFunction<T>() {
+            @Override
+            public T compute(int row, int column) {
+                return elementAdd(getMatrixElement(row, column),
+                        getOperandElement(routeMatrix, row, column));
+            }
+        });
     }
 
     @Override
-    public RouteMatrix<T> multiply(RouteMatrix<T> routeMatrix) {
+    public RouteMatrix<T> multiply(final RouteMatrix<T> routeMatrix) {
         if (routeMatrix == null) {
             return null;
         }
 
-        if (getMatrixDimensions() != routeMatrix.getMatrixDimensions()) {
-            throw new UnsupportedOperationException(
-                    "It's not support to multiply two square matrix with different dimensions");
-        }
+        validateOperand(routeMatrix, "multiply");
+        final int size = getMatrixDimensions();
+        return computeElements(new ElementFunction<T>() {
+            @Override
+            public T compute(int row, int column) {
+                T element = null;
+                for (int cursor = 0; cursor < size; cursor++) {
+                    element = elementAdd(
+                            element,
+                            elementMultiply(getMatrixElement(row, cursor),
+                                    getOperandElement(routeMatrix, cursor,
+                                            column)));
+                }
 
-        if (!getMatrixRouteCities().containsAll(
-                routeMatrix.getMatrixRouteCities())) {
-            throw new UnsupportedOperationException(
-                    "It's not support to multiply two square route matrix with different set of cities");
-        }
+                return element;
+            }
+        });
+    }
 
-        RouteMatrix<T> product = newMatrixInstance();
+    /**
+     * The function computing an element of the result of a matrix operation
+     * by the ordinals of its row and column, which only reads the operands,
+     * so it can be called from multiple threads.
+     */
+    private interface ElementFunction<T> {
+        T compute(int row, int column);
+    }
+
+    /**
+     * Create a matrix on the cities of this matrix with the elements computed
+     * by the given function. Large matrices are computed by row blocks across
+     * the threads of {@link KernelConfig}, and then written into the result
+     * in the same order as a sequential run.
+     */
+    private RouteMatrix<T> computeElements(final ElementFunction<T> function) {
+        RouteMatrix<T> result = newMatrixInstance();
         List<City> matrixCities = getMatrixRouteCities();
-        product.addMatrixRouteCities(matrixCities);
+        result.addMatrixRouteCities(matrixCities);
 
-        int size = getMatrixDimensions();
+        final int size = getMatrixDimensions();
+        if (!KernelConfig.isParallel(size)) {
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    T element = function.compute(i, j);
+                    if (element != null) {
+                        result.setMatrixElement(matrixCities.get(i),
+                                matrixCities.get(j), element);
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        final Object[] elements = new Object[size * size];
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                for (int i = rowStart; i < rowEnd; i++) {
+                    for (int j = 0; j < size; j++) {
+                        elements[i * size + j] = function.compute(i, j);
+                    }
+                }
+            }
+        });
 
         for (int i = 0; i < size; i++) {
             for (int j = 0; j < size; j++) {
-                T element = null;
-                City row = matrixCities.get(i);
-                City column = matrixCities.get(j);
-                for (int k = 0; k < size; k++) {
-                    City cursor = matrixCities.get(k);
-                    element = elementAdd(
-                            element,
-                            elementMultiply(getMatrixElement(row, cursor),
-                                    routeMatrix
-                                            .getMatrixElement(cursor, column)));
-                }
+                @SuppressWarnings("unchecked")
+                T element = (T) elements[i * size + j];
                 if (element != null) {
-                    product.setMatrixElement(row, column, element);
+                    result.setMatrixElement(matrixCities.get(i),
+                            matrixCities.get(j), element);
                 }
             }
         }
 
-        return product;
+        return result;
     }
 
     @Override
     public void addMatrixRouteCities(Collection<City> cities) {
-        for (City city : cities) {
-            if (!matrixRouteCities.contains(city)) {
-                matrixRouteCities.add(city);
+        invalidatePowers();
+
+        List<City> previousCities = matrixRouteCities;
+        matrixRouteCities = matrixRouteCities.with(cities);
+
+        if (previousCities.size() != matrixRouteCities.size()) {
+            remapElements(previousCities);
+        }
+    }
+
+    /**
+     * Move the elements to the new ordinals of their cities, which may have
+     * been shifted by the cities added.
+     */
+    private void remapElements(List<City> previousCities) {
+        int size = matrixRouteCities.size();
+        ElementRow[] remapped = new ElementRow[size];
+        for (int i = 0; i < previousCities.size(); i++) {
+            ElementRow elements = matrixRows[i];
+            if (elements == null) {
+                continue;
+            }
+
+            // The previous cities are still sorted among the new ones, so the
+            // columns of a row keep their order.
+            for (int p = 0; p < elements.amount; p++) {
+                elements.columns[p] = getCityOrdinal(previousCities
+                        .get(elements.columns[p]));
             }
+            remapped[getCityOrdinal(previousCities.get(i))] = elements;
+        }
+
+        matrixRows = remapped;
+        if (columnIndex != null) {
+            setColumnIndexed(true);
+        }
+    }
+
+    /**
+     * Get the ordinal of a city in this matrix, which is the index of the city
+     * in the sorted cities returned by <code>getMatrixRouteCities</code>.
+     * 
+     * @param city
+     * @return The ordinal of the city, or -1 if the city is not in the matrix.
+     */
+    protected int getCityOrdinal(City city) {
+        return matrixRouteCities.getOrdinal(city);
+    }
+
+    /**
+     * Get the single routes added into this matrix since the last build, which
+     * are then taken as built.
+     * 
+     * @return An unmodifiable list of routes, empty if none was added.
+     */
+    protected List<Route> takeNewMatrixRoutes() {
+        if (newMatrixRoutes.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        Collections.sort(matrixRouteCities);
+        List<Route> routes = newMatrixRoutes;
+        newMatrixRoutes = new ArrayList<Route>();
+        return Collections.unmodifiableList(routes);
     }
 
     @Override
@@ -247,26 +562,33 @@ public abstract class AbstractRouteMatrix<T> implements RouteMatrix<T> {
         }
 
         for (Route route : routes) {
-            if (!matrixRoutes.contains(route)) {
+            if (!matrixRouteSet.contains(route)) {
                 if (route.getType() != Route.Type.SIGNLE) {
                     throw new IllegalArgumentException(
                             "Only Single type route can be added into matrix");
                 }
-                matrixRoutes.add(route);
+                matrixRouteSet.add(route);
+                newMatrixRoutes.add(route);
             }
         }
     }
 
+    /**
+     * Only the routes added since the last build are parsed and set, the
+     * elements of the routes built before are kept.
+     */
     @Override
     public void build() {
-        if (matrixRoutes.isEmpty()) {
+        invalidatePowers();
+
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
             return;
         }
 
-        addMatrixRouteCities(RouteParser.newInstance()
-                .parseCities(matrixRoutes));
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
 
-        for (Route route : matrixRoutes) {
+        for (Route route : routes) {
             City sourceCity = route.getSourceCity();
             City destCity = route.getDestinationCity();
             setMatrixElement(sourceCity, destCity, extractMatrixElement(route));
@@ -305,6 +627,181 @@ public abstract class AbstractRouteMatrix<T> implements RouteMatrix<T> {
         return identify;
     }
 
+    /**
+     * The elements of a row which are not null, kept by the sorted ordinals
+     * of their columns.
+     */
+    private static final class ElementRow {
+        private int[] columns = new int[2];
+
+        private Object[] elements = new Object[2];
+
+        private int amount;
+
+        private int positionOf(int column) {
+            return Arrays.binarySearch(columns, 0, amount, column);
+        }
+
+        Object get(int column) {
+            int position = positionOf(column);
+            return position < 0 ? null : elements[position];
+        }
+
+        /**
+         * Set an element, which is removed if null.
+         */
+        void set(int column, Object element) {
+            int position = positionOf(column);
+            if (position >= 0) {
+                if (element != null) {
+                    elements[position] = element;
+                    return;
+                }
+
+                amount--;
+                System.arraycopy(columns, position + 1, columns, position,
+                        amount - position);
+                System.arraycopy(elements, position + 1, elements, position,
+                        amount - position);
+                elements[amount] = null;
+                return;
+            }
+
+            if (element == null) {
+                return;
+            }
+
+            position = -position - 1;
+            if (amount == columns.length) {
+                columns = Arrays.copyOf(columns, amount * 2);
+                elements = Arrays.copyOf(elements, amount * 2);
+            }
+            System.arraycopy(columns, position, columns, position + 1, amount
+                    - position);
+            System.arraycopy(elements, position, elements, position + 1,
+                    amount - position);
+            columns[position] = column;
+            elements[position] = element;
+            amount++;
+        }
+
+        /**
+         * Get the first column from the given one, or -1 if none.
+         */
+        int next(int column) {
+            int position = positionOf(column);
+            if (position < 0) {
+                position = -position - 1;
+            }
+
+            return position < amount ? columns[position] : -1;
+        }
+    }
+
+    /**
+     * A read-only view of a row or a column of this matrix, whose entries are
+     * in the order of the sorted cities. It follows the changes of this
+     * matrix, without copying any element.
+     */
+    private final class LineView extends AbstractMap<City, T> {
+        private final City city;
+
+        private final boolean row;
+
+        LineView(City city, boolean row) {
+            this.city = city;
+            this.row = row;
+        }
+
+        private int next(int line, int ordinal) {
+            return row ? nextColumn(line, ordinal) : nextRow(ordinal, line);
+        }
+
+        private T elementAt(int line, int ordinal) {
+            return row ? getMatrixElement(line, ordinal) : getMatrixElement(
+                    ordinal, line);
+        }
+
+        @Override
+        public T get(Object key) {
+            int line = getCityOrdinal(city);
+            int ordinal = key instanceof City ? getCityOrdinal((City) key) : -1;
+            return line < 0 || ordinal < 0 ? null : elementAt(line, ordinal);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            int line = getCityOrdinal(city);
+            if (line < 0) {
+                return 0;
+            }
+
+            int amount = 0;
+            for (int ordinal = next(line, 0); ordinal >= 0; ordinal = next(
+                    line, ordinal + 1)) {
+                amount++;
+            }
+
+            return amount;
+        }
+
+        @Override
+        public Set<Map.Entry<City, T>> entrySet() {
+            return new AbstractSet<Map.Entry<City, T>>() {
+                @Override
+                public Iterator<Map.Entry<City, T>> iterator() {
+                    return new EntryIterator(getCityOrdinal(city));
+                }
+
+                @Override
+                public int size() {
+                    return LineView.this.size();
+                }
+            };
+        }
+
+        private final class EntryIterator implements
+                Iterator<Map.Entry<City, T>> {
+            private final int line;
+
+            private int ordinal;
+
+            EntryIterator(int line) {
+                this.line = line;
+                ordinal = line < 0 ? -1 : LineView.this.next(line, 0);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return ordinal >= 0;
+            }
+
+            @Override
+            public Map.Entry<City, T> next() {
+                if (ordinal < 0) {
+                    throw new NoSuchElementException();
+                }
+
+                City key = getMatrixRouteCities().get(ordinal);
+                Map.Entry<City, T> entry = new SimpleImmutableEntry<City, T>(
+                        key, elementAt(line, ordinal));
+                ordinal = LineView.this.next(line, ordinal + 1);
+                return entry;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(
+                        "Rows and columns of a matrix are read-only.");
+            }
+        }
+    }
+
     protected abstract T elementMultiply(T multiplicand, T multiplier);
 
     protected abstract T elementAdd(T addend, T augend);
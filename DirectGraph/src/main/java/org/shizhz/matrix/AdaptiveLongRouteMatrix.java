@@ -0,0 +1,319 @@
+package org.shizhz.matrix;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+
+/**
+ * A route matrix on a {@link LongSemiring} which keeps its elements either in
+ * a {@link SparseLongRouteMatrix} or in a {@link DenseLongRouteMatrix},
+ * chosen by the ratio of non-zero elements after each build, multiplication,
+ * addition and transitive closure. Powers of a sparse adjacency matrix fill
+ * in quickly, so a chain of multiplications starts on the sparse kernels and
+ * moves to the dense ones once the products are dense, without picking a
+ * representation up front.
+ * <p>
+ * The switch has hysteresis: a sparse matrix turns dense above
+ * {@link #DENSE_FILL_RATIO}, and a dense one turns sparse again only below
+ * {@link #SPARSE_FILL_RATIO}, so matrices around one threshold do not convert
+ * back and forth. Sparse operands are converted to dense storage if the other
+ * operand is dense.
+ * <p>
+ * On the counting semiring both representations keep the counts beyond
+ * <code>Long.MAX_VALUE</code> exactly, and carry them over when converted, so
+ * they are read by <code>getExactMatrixElement</code> whichever one is in use.
+ *
+ * @author shizhz
+ *
+ */
+public class AdaptiveLongRouteMatrix extends AbstractRouteMatrix<Long> {
+
+    /**
+     * The ratio of non-zero elements above which a sparse matrix is converted
+     * to dense storage.
+     */
+    public static final double DENSE_FILL_RATIO = 0.25;
+
+    /**
+     * The ratio of non-zero elements below which a dense matrix is converted
+     * to sparse storage.
+     */
+    public static final double SPARSE_FILL_RATIO = 0.0625;
+
+    private final LongSemiring semiring;
+
+    private AbstractRouteMatrix<Long> representation;
+
+    public AdaptiveLongRouteMatrix(LongSemiring semiring) {
+        this.semiring = semiring;
+        this.representation = new SparseLongRouteMatrix(semiring);
+    }
+
+    public static RouteMatrix<Long> newInstance(LongSemiring semiring) {
+        return new AdaptiveLongRouteMatrix(semiring);
+    }
+
+    /**
+     * Create a matrix on the counting semiring, used to count the trips of a
+     * route network.
+     */
+    public static AdaptiveLongRouteMatrix newConnectionInstance() {
+        return new AdaptiveLongRouteMatrix(LongSemiring.COUNTING);
+    }
+
+    public LongSemiring getSemiring() {
+        return semiring;
+    }
+
+    /**
+     * Whether the elements are currently kept in dense storage.
+     */
+    public boolean isDense() {
+        return representation instanceof DenseLongRouteMatrix;
+    }
+
+    /**
+     * Get the number of non-zero elements.
+     */
+    public int getNonZeroElementsAmount() {
+        return isDense() ? ((DenseLongRouteMatrix) representation)
+                .getNonZeroElementsAmount()
+                : ((SparseLongRouteMatrix) representation)
+                        .getNonZeroElementsAmount();
+    }
+
+    /**
+     * Switch the representation according to the ratio of non-zero elements.
+     */
+    private void adapt() {
+        long size = getMatrixDimensions();
+        if (size == 0) {
+            return;
+        }
+
+        double fillRatio = (double) getNonZeroElementsAmount()
+                / (size * size);
+        if (!isDense() && fillRatio > DENSE_FILL_RATIO) {
+            representation = ((SparseLongRouteMatrix) representation)
+                    .toDense();
+        } else if (isDense() && fillRatio < SPARSE_FILL_RATIO) {
+            representation = ((DenseLongRouteMatrix) representation)
+                    .toSparse();
+        }
+    }
+
+    private DenseLongRouteMatrix toDense() {
+        return isDense() ? (DenseLongRouteMatrix) representation
+                : ((SparseLongRouteMatrix) representation).toDense();
+    }
+
+    private SparseLongRouteMatrix toSparse() {
+        return isDense() ? ((DenseLongRouteMatrix) representation).toSparse()
+                : (SparseLongRouteMatrix) representation;
+    }
+
+    /**
+     * Wrap the result of an operation on the representations.
+     */
+    private AdaptiveLongRouteMatrix wrap(RouteMatrix<Long> result) {
+        AdaptiveLongRouteMatrix matrix = (AdaptiveLongRouteMatrix) newMatrixInstance();
+        matrix.representation = (AbstractRouteMatrix<Long>) result;
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        matrix.adapt();
+        return matrix;
+    }
+
+    private boolean isCompatible(RouteMatrix<Long> routeMatrix) {
+        return routeMatrix instanceof AdaptiveLongRouteMatrix
+                && ((AdaptiveLongRouteMatrix) routeMatrix).semiring == semiring;
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        super.addMatrixRouteCities(cities);
+        representation.addMatrixRouteCities(cities);
+    }
+
+    /**
+     * The routes added since the last build are built into the current
+     * representation, which is then switched by its new fill ratio.
+     */
+    @Override
+    public void build() {
+        List<Route> routes = takeNewMatrixRoutes();
+        invalidatePowers();
+        if (routes.isEmpty()) {
+            return;
+        }
+
+        representation.addRoutes(routes);
+        representation.build();
+        addMatrixRouteCities(representation.getMatrixRouteCities());
+        adapt();
+    }
+
+    @Override
+    protected Long getMatrixElement(int row, int column) {
+        return representation.getMatrixElement(row, column);
+    }
+
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity, Long element) {
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+        representation.setMatrixElement(rowCity, columnCity, element);
+    }
+
+    /**
+     * Get the exact count of routes between two cities, the same as
+     * {@link SparseLongRouteMatrix#getExactMatrixElement(City, City)}. Only
+     * for the {@link LongSemiring#COUNTING} semiring.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @return The count, or null if there is no such route.
+     */
+    public BigInteger getExactMatrixElement(City rowCity, City columnCity) {
+        return isDense() ? ((DenseLongRouteMatrix) representation)
+                .getExactMatrixElement(rowCity, columnCity)
+                : ((SparseLongRouteMatrix) representation)
+                        .getExactMatrixElement(rowCity, columnCity);
+    }
+
+    /**
+     * Get the exact count of routes with exactly <code>exponent</code> stops,
+     * by pushing the row of the city through the routes as
+     * {@link SparseLongRouteMatrix#getExactPowerElement(City, City, int)}
+     * does. Dense storage is converted to sparse rows first.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param exponent
+     *            A positive integer.
+     * @return The count, or null if there is no such route.
+     */
+    public BigInteger getExactPowerElement(City rowCity, City columnCity,
+            int exponent) {
+        return toSparse().getExactPowerElement(rowCity, columnCity, exponent);
+    }
+
+    /**
+     * Get the exact count of routes with at most <code>exponent</code> stops,
+     * the same as <code>getExactPowerElement</code> does.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param exponent
+     *            A positive integer.
+     * @return The count, or null if there is no such route.
+     */
+    public BigInteger getExactPowerSumElement(City rowCity, City columnCity,
+            int exponent) {
+        return toSparse().getExactPowerSumElement(rowCity, columnCity,
+                exponent);
+    }
+
+    /**
+     * Rows and columns are read from the current representation, so their
+     * views follow it across switches.
+     */
+    @Override
+    protected int nextColumn(int row, int column) {
+        return representation.nextColumn(row, column);
+    }
+
+    @Override
+    public RouteMatrix<Long> multiply(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "multiply");
+
+        AdaptiveLongRouteMatrix multiplier = (AdaptiveLongRouteMatrix) routeMatrix;
+        if (!isDense() && !multiplier.isDense()) {
+            return wrap(representation.multiply(multiplier.representation));
+        }
+
+        return wrap(toDense().multiply(multiplier.toDense()));
+    }
+
+    @Override
+    public RouteMatrix<Long> add(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "add");
+
+        AdaptiveLongRouteMatrix augend = (AdaptiveLongRouteMatrix) routeMatrix;
+        if (!isDense() && !augend.isDense()) {
+            return wrap(representation.add(augend.representation));
+        }
+
+        return wrap(toDense().add(augend.toDense()));
+    }
+
+    /**
+     * The transitive closure of a connected network is dense, so it is always
+     * computed on dense storage.
+     */
+    @Override
+    public RouteMatrix<Long> getMatrixTransitiveClosure() {
+        return wrap(toDense().getMatrixTransitiveClosure());
+    }
+
+    @Override
+    public RouteMatrix<Long> getAdditionIdentify() {
+        AdaptiveLongRouteMatrix identify = (AdaptiveLongRouteMatrix) newMatrixInstance();
+        identify.addMatrixRouteCities(getMatrixRouteCities());
+        return identify;
+    }
+
+    @Override
+    protected Long elementMultiply(Long multiplicand, Long multiplier) {
+        if (multiplicand == null || multiplier == null) {
+            return null;
+        }
+
+        long product = semiring.multiply(multiplicand, multiplier);
+        return product == semiring.zero() ? null : Long.valueOf(product);
+    }
+
+    @Override
+    protected Long elementAdd(Long addend, Long augend) {
+        if (addend == null) {
+            return augend;
+        }
+
+        if (augend == null) {
+            return addend;
+        }
+
+        long sum = semiring.add(addend, augend);
+        return sum == semiring.zero() ? null : Long.valueOf(sum);
+    }
+
+    @Override
+    protected RouteMatrix<Long> newMatrixInstance() {
+        return new AdaptiveLongRouteMatrix(semiring);
+    }
+
+    @Override
+    protected Long extractMatrixElement(Route route) {
+        return semiring.valueOf(route);
+    }
+
+    @Override
+    protected Long getIdentifyElement() {
+        return semiring.one();
+    }
+}
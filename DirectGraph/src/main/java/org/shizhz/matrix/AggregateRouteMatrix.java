@@ -0,0 +1,421 @@
+package org.shizhz.matrix;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * The element in this matrix is the {@link TripAggregate} of the trips
+ * between two cities: their number, and the minimum, maximum and sum of their
+ * distances. So the power of this matrix with exponent k answers all of them
+ * for the trips with exactly k stops in one pass, without enumerating any
+ * trip as <code>PathRouteMatrix</code> does.
+ * <p>
+ * The four aggregates are kept in parallel flat <code>long[]</code>s indexed
+ * by the ordinals of the sorted cities, where a count of 0 stands for no
+ * trip. Multiplication and addition between two such matrices are computed on
+ * the primitive arrays, and rows of the product are split across threads by
+ * {@link ParallelRows}.
+ * <p>
+ * Counts and sums which overflow <code>long</code> are detected the same way
+ * as <code>SparseLongRouteMatrix</code> does, and kept exactly in
+ * <code>BigInteger</code> side tables, while the primitive cells are saturated
+ * to <code>Long.MAX_VALUE</code>, so an overflowed count is never taken as no
+ * trip.
+ *
+ * @author shizhz
+ *
+ */
+public class AggregateRouteMatrix extends AbstractRouteMatrix<TripAggregate> {
+
+    private long[] counts = new long[0];
+
+    private long[] minDistances = new long[0];
+
+    private long[] maxDistances = new long[0];
+
+    private long[] sumDistances = new long[0];
+
+    /**
+     * The exact counts and sums of the cells overflowing <code>long</code>,
+     * allocated along with each other on the first overflow.
+     */
+    private BigInteger[] exactCounts;
+
+    private BigInteger[] exactSumDistances;
+
+    public AggregateRouteMatrix() {
+    }
+
+    public static RouteMatrix<TripAggregate> newInstance() {
+        return new AggregateRouteMatrix();
+    }
+
+    private void allocate(int size) {
+        counts = new long[size * size];
+        minDistances = new long[size * size];
+        maxDistances = new long[size * size];
+        sumDistances = new long[size * size];
+        exactCounts = null;
+        exactSumDistances = null;
+    }
+
+    /**
+     * Allocate the side tables, which may be done by any of the threads
+     * computing the rows of a product.
+     */
+    private synchronized void allocateExact() {
+        if (exactCounts == null) {
+            exactSumDistances = new BigInteger[counts.length];
+            exactCounts = new BigInteger[counts.length];
+        }
+    }
+
+    private boolean isExact(int cell) {
+        return exactCounts != null && exactCounts[cell] != null;
+    }
+
+    private BigInteger exactCountOf(int cell) {
+        return isExact(cell) ? exactCounts[cell] : BigInteger
+                .valueOf(counts[cell]);
+    }
+
+    private BigInteger exactSumDistanceOf(int cell) {
+        return isExact(cell) ? exactSumDistances[cell] : BigInteger
+                .valueOf(sumDistances[cell]);
+    }
+
+    /**
+     * Set the count and the sum of a cell, into the side tables if either of
+     * them overflows <code>long</code>.
+     */
+    private void setExact(int cell, BigInteger count, BigInteger sumDistance) {
+        if (count.bitLength() < 64 && sumDistance.bitLength() < 64) {
+            counts[cell] = count.longValue();
+            sumDistances[cell] = sumDistance.longValue();
+            if (isExact(cell)) {
+                exactCounts[cell] = null;
+                exactSumDistances[cell] = null;
+            }
+            return;
+        }
+
+        allocateExact();
+        exactCounts[cell] = count;
+        exactSumDistances[cell] = sumDistance;
+        counts[cell] = Long.MAX_VALUE;
+        sumDistances[cell] = Long.MAX_VALUE;
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        List<City> previousCities = getMatrixRouteCities();
+        super.addMatrixRouteCities(cities);
+
+        int size = getMatrixDimensions();
+        if (previousCities.size() == size) {
+            return;
+        }
+
+        // Cities are kept sorted, so the ordinals of the existing cities may
+        // have been shifted by the new ones.
+        int previousSize = previousCities.size();
+        long[] previousCounts = counts;
+        long[] previousMinDistances = minDistances;
+        long[] previousMaxDistances = maxDistances;
+        long[] previousSumDistances = sumDistances;
+        BigInteger[] previousExactCounts = exactCounts;
+        BigInteger[] previousExactSumDistances = exactSumDistances;
+        allocate(size);
+        if (previousExactCounts != null) {
+            allocateExact();
+        }
+        for (int i = 0; i < previousSize; i++) {
+            int row = getCityOrdinal(previousCities.get(i));
+            for (int j = 0; j < previousSize; j++) {
+                int cell = row * size
+                        + getCityOrdinal(previousCities.get(j));
+                int previousCell = i * previousSize + j;
+                counts[cell] = previousCounts[previousCell];
+                minDistances[cell] = previousMinDistances[previousCell];
+                maxDistances[cell] = previousMaxDistances[previousCell];
+                sumDistances[cell] = previousSumDistances[previousCell];
+                if (previousExactCounts != null) {
+                    exactCounts[cell] = previousExactCounts[previousCell];
+                    exactSumDistances[cell] =
+                            previousExactSumDistances[previousCell];
+                }
+            }
+        }
+    }
+
+    private void setCell(int cell, TripAggregate element) {
+        if (element == null) {
+            setExact(cell, BigInteger.ZERO, BigInteger.ZERO);
+            minDistances[cell] = 0;
+            maxDistances[cell] = 0;
+            return;
+        }
+
+        setExact(cell, element.getCount(), element.getSumDistance());
+        minDistances[cell] = element.getMinDistance();
+        maxDistances[cell] = element.getMaxDistance();
+    }
+
+    /**
+     * The routes added since the last build are aggregated onto the elements
+     * built before.
+     */
+    @Override
+    public void build() {
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
+            invalidatePowers();
+            return;
+        }
+
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
+        invalidatePowers();
+
+        int size = getMatrixDimensions();
+        for (Route route : routes) {
+            int cell = getCityOrdinal(route.getSourceCity()) * size
+                    + getCityOrdinal(route.getDestinationCity());
+            setCell(cell, elementAdd(getMatrixElement(cell / size, cell % size),
+                    TripAggregate.valueOf(route)));
+        }
+    }
+
+    @Override
+    protected TripAggregate getMatrixElement(int row, int column) {
+        int cell = row * getMatrixDimensions() + column;
+        if (counts[cell] == 0) {
+            return null;
+        }
+
+        return new TripAggregate(exactCountOf(cell), minDistances[cell],
+                maxDistances[cell], exactSumDistanceOf(cell));
+    }
+
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity,
+            TripAggregate element) {
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+        setCell(getCityOrdinal(rowCity) * getMatrixDimensions()
+                + getCityOrdinal(columnCity), element);
+    }
+
+    private AggregateRouteMatrix newAggregateInstance() {
+        AggregateRouteMatrix matrix = (AggregateRouteMatrix) newMatrixInstance();
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        return matrix;
+    }
+
+    @Override
+    public RouteMatrix<TripAggregate> multiply(
+            RouteMatrix<TripAggregate> routeMatrix) {
+        if (!(routeMatrix instanceof AggregateRouteMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "multiply");
+
+        final AggregateRouteMatrix multiplier = (AggregateRouteMatrix) routeMatrix;
+        final AggregateRouteMatrix product = newAggregateInstance();
+        final int size = getMatrixDimensions();
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                multiplyRows(multiplier, product, size, rowStart, rowEnd);
+            }
+        });
+
+        return product;
+    }
+
+    /**
+     * The row -> cursor -> column loop, the same as the one of
+     * <code>SemiringKernels</code>, on the four aggregates at once. A cell
+     * falls back to <code>BigInteger</code>s once its count or sum overflows,
+     * or either operand of it is exact already.
+     */
+    private void multiplyRows(AggregateRouteMatrix multiplier,
+            AggregateRouteMatrix product, int size, int rowStart, int rowEnd) {
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowOffset = i * size;
+            for (int k = 0; k < size; k++) {
+                long count = counts[rowOffset + k];
+                if (count == 0) {
+                    continue;
+                }
+
+                long minDistance = minDistances[rowOffset + k];
+                long maxDistance = maxDistances[rowOffset + k];
+                long sumDistance = sumDistances[rowOffset + k];
+                boolean exact = isExact(rowOffset + k);
+                int cursorOffset = k * size;
+                for (int j = 0; j < size; j++) {
+                    long multiplierCount = multiplier.counts[cursorOffset + j];
+                    if (multiplierCount == 0) {
+                        continue;
+                    }
+
+                    int cell = rowOffset + j;
+                    long min = minDistance
+                            + multiplier.minDistances[cursorOffset + j];
+                    long max = maxDistance
+                            + multiplier.maxDistances[cursorOffset + j];
+                    if (product.counts[cell] == 0) {
+                        product.minDistances[cell] = min;
+                        product.maxDistances[cell] = max;
+                    } else {
+                        product.minDistances[cell] = Math.min(
+                                product.minDistances[cell], min);
+                        product.maxDistances[cell] = Math.max(
+                                product.maxDistances[cell], max);
+                    }
+
+                    long countTerm = SparseLongRouteMatrix.multiplyCounts(
+                            count, multiplierCount);
+                    long sumTerm = SparseLongRouteMatrix.multiplyCounts(
+                            sumDistance, multiplierCount);
+                    long multiplierSumTerm = SparseLongRouteMatrix
+                            .multiplyCounts(
+                                    multiplier.sumDistances[cursorOffset + j],
+                                    count);
+                    long terms = sumTerm + multiplierSumTerm;
+                    long productCount = product.counts[cell] + countTerm;
+                    long productSum = product.sumDistances[cell] + terms;
+                    if ((countTerm | sumTerm | multiplierSumTerm | terms
+                            | productCount | productSum) < 0
+                            || exact
+                            || multiplier.isExact(cursorOffset + j)
+                            || product.isExact(cell)) {
+                        multiplyExact(multiplier, product, rowOffset + k,
+                                cursorOffset + j, cell);
+                    } else {
+                        product.counts[cell] = productCount;
+                        product.sumDistances[cell] = productSum;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulate the product of two cells into a cell of the product in
+     * <code>BigInteger</code>s.
+     */
+    private void multiplyExact(AggregateRouteMatrix multiplier,
+            AggregateRouteMatrix product, int cell, int multiplierCell,
+            int productCell) {
+        BigInteger count = exactCountOf(cell);
+        BigInteger multiplierCount = multiplier.exactCountOf(multiplierCell);
+        BigInteger sumDistance = exactSumDistanceOf(cell).multiply(
+                multiplierCount).add(
+                multiplier.exactSumDistanceOf(multiplierCell).multiply(count));
+        product.setExact(productCell, product.exactCountOf(productCell).add(
+                count.multiply(multiplierCount)),
+                product.exactSumDistanceOf(productCell).add(sumDistance));
+    }
+
+    @Override
+    public RouteMatrix<TripAggregate> add(RouteMatrix<TripAggregate> routeMatrix) {
+        if (!(routeMatrix instanceof AggregateRouteMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "add");
+
+        AggregateRouteMatrix augend = (AggregateRouteMatrix) routeMatrix;
+        AggregateRouteMatrix sum = newAggregateInstance();
+        for (int cell = 0; cell < counts.length; cell++) {
+            if (counts[cell] == 0 || augend.counts[cell] == 0) {
+                AggregateRouteMatrix source = counts[cell] == 0 ? augend
+                        : this;
+                sum.counts[cell] = source.counts[cell];
+                sum.minDistances[cell] = source.minDistances[cell];
+                sum.maxDistances[cell] = source.maxDistances[cell];
+                sum.sumDistances[cell] = source.sumDistances[cell];
+                if (source.isExact(cell)) {
+                    sum.setExact(cell, source.exactCounts[cell],
+                            source.exactSumDistances[cell]);
+                }
+                continue;
+            }
+
+            sum.minDistances[cell] = Math.min(minDistances[cell],
+                    augend.minDistances[cell]);
+            sum.maxDistances[cell] = Math.max(maxDistances[cell],
+                    augend.maxDistances[cell]);
+            long count = counts[cell] + augend.counts[cell];
+            long sumDistance = sumDistances[cell] + augend.sumDistances[cell];
+            if ((count | sumDistance) < 0 || isExact(cell)
+                    || augend.isExact(cell)) {
+                sum.setExact(cell,
+                        exactCountOf(cell).add(augend.exactCountOf(cell)),
+                        exactSumDistanceOf(cell).add(
+                                augend.exactSumDistanceOf(cell)));
+            } else {
+                sum.counts[cell] = count;
+                sum.sumDistances[cell] = sumDistance;
+            }
+        }
+
+        return sum;
+    }
+
+    @Override
+    public RouteMatrix<TripAggregate> getAdditionIdentify() {
+        return newAggregateInstance();
+    }
+
+    @Override
+    protected TripAggregate elementMultiply(TripAggregate multiplicand,
+            TripAggregate multiplier) {
+        if (multiplicand == null || multiplier == null) {
+            return null;
+        }
+
+        return multiplicand.multiply(multiplier);
+    }
+
+    @Override
+    protected TripAggregate elementAdd(TripAggregate addend,
+            TripAggregate augend) {
+        if (addend == null) {
+            return augend;
+        }
+
+        if (augend == null) {
+            return addend;
+        }
+
+        return addend.add(augend);
+    }
+
+    @Override
+    protected RouteMatrix<TripAggregate> newMatrixInstance() {
+        return AggregateRouteMatrix.newInstance();
+    }
+
+    @Override
+    protected TripAggregate extractMatrixElement(Route route) {
+        return TripAggregate.valueOf(route);
+    }
+
+    @Override
+    protected TripAggregate getIdentifyElement() {
+        return TripAggregate.IDENTIFY;
+    }
+}
@@ -0,0 +1,158 @@
+package org.shizhz.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * The shortest routes between all pairs of cities, computed once by the
+ * Floyd-Warshall algorithm on primitive arrays, blocked and split across
+ * threads for large networks by {@link SemiringKernels}. Only the distances and the
+ * next hop of each shortest route are kept, so the distance is answered in
+ * O(1) and the route itself is rebuilt in O(length of the route) when asked.
+ * <p>
+ * The same as the transitive closure of the other matrices, the routes
+ * contain at least one single route, so the shortest route from a city to
+ * itself is the shortest cycle through it.
+ *
+ * @author shizhz
+ *
+ */
+public final class AllPairsShortestPaths {
+
+    /**
+     * The distance between two cities without any route.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final int NO_HOP = -1;
+
+    private final List<City> cities;
+
+    /**
+     * The ordinals of the cities indexed by their ids, -1 for other cities.
+     */
+    private final int[] cityOrdinals;
+
+    private final int size;
+
+    private final int[] distances;
+
+    private final int[] nextHops;
+
+    /**
+     * The shortest single route between each pair of cities.
+     */
+    private final Route[] singleRoutes;
+
+    private AllPairsShortestPaths(Collection<Route> routes) {
+        cities = new ArrayList<City>(RouteParser.newInstance().parseCities(
+                routes));
+        Collections.sort(cities);
+        size = cities.size();
+        int maxId = -1;
+        for (City city : cities) {
+            maxId = Math.max(maxId, city.getId());
+        }
+        cityOrdinals = new int[maxId + 1];
+        Arrays.fill(cityOrdinals, -1);
+        for (int i = 0; i < size; i++) {
+            cityOrdinals[cities.get(i).getId()] = i;
+        }
+
+        distances = new int[size * size];
+        nextHops = new int[size * size];
+        singleRoutes = new Route[size * size];
+        Arrays.fill(distances, UNREACHABLE);
+        Arrays.fill(nextHops, NO_HOP);
+
+        for (Route route : routes) {
+            int row = getCityOrdinal(route.getSourceCity());
+            int column = getCityOrdinal(route.getDestinationCity());
+            int cell = row * size + column;
+            if (route.getDistance() < distances[cell]) {
+                distances[cell] = route.getDistance();
+                nextHops[cell] = column;
+                singleRoutes[cell] = route;
+            }
+        }
+
+        SemiringKernels.closurePaths(distances, nextHops, size);
+    }
+
+    /**
+     * Build the shortest routes of the given single routes.
+     *
+     * @param routes
+     *            Single routes, whose distances are not negative.
+     * @return
+     */
+    public static AllPairsShortestPaths newInstance(Collection<Route> routes) {
+        return new AllPairsShortestPaths(routes);
+    }
+
+    private int getCityOrdinal(City city) {
+        int id = city.getId();
+        return id < cityOrdinals.length ? cityOrdinals[id] : -1;
+    }
+
+    public List<City> getCities() {
+        return Collections.unmodifiableList(cities);
+    }
+
+    /**
+     * Get the distance of the shortest route between two cities.
+     *
+     * @param from
+     * @param to
+     * @return The shortest distance, or {@link #UNREACHABLE} if there is no
+     *         route.
+     */
+    public int getShortestDistance(City from, City to) {
+        int row = getCityOrdinal(from);
+        int column = getCityOrdinal(to);
+        if (row < 0 || column < 0) {
+            return UNREACHABLE;
+        }
+
+        return distances[row * size + column];
+    }
+
+    /**
+     * Rebuild the shortest route between two cities by following the next
+     * hops.
+     *
+     * @param from
+     * @param to
+     * @return The shortest route, or null if there is no route.
+     */
+    public Route getShortestPath(City from, City to) {
+        if (getShortestDistance(from, to) == UNREACHABLE) {
+            return null;
+        }
+
+        int target = getCityOrdinal(to);
+        int current = getCityOrdinal(from);
+        Route path = null;
+        // A shortest route crosses each city at most once, except the source
+        // city of a cycle.
+        for (int step = 0; step <= size; step++) {
+            int hop = nextHops[current * size + target];
+            Route single = singleRoutes[current * size + hop];
+            path = path == null ? single : path.addInnerRoute(single);
+            current = hop;
+            if (current == target) {
+                return path;
+            }
+        }
+
+        throw new IllegalStateException("The next hops from " + from + " to "
+                + to + " do not reach the destination.");
+    }
+}
@@ -0,0 +1,116 @@
+package org.shizhz.matrix;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.shizhz.route.City;
+
+/**
+ * The sorted cities of a route matrix along with their ordinals, which are
+ * looked up by the ids of the cities in O(1). An index is immutable, so it is
+ * shared by all the matrices derived from one another, such as products, sums
+ * and identities, instead of each of them sorting the cities again. Adding
+ * cities makes a new index.
+ *
+ * @author shizhz
+ *
+ */
+final class CityIndex extends AbstractList<City> implements RandomAccess {
+
+    static final CityIndex EMPTY = new CityIndex(new City[0]);
+
+    private final City[] cities;
+
+    /**
+     * The ordinals indexed by the ids of the cities, -1 for other cities.
+     */
+    private final int[] ordinals;
+
+    private CityIndex(City[] cities) {
+        this.cities = cities;
+
+        int maxId = -1;
+        for (City city : cities) {
+            maxId = Math.max(maxId, city.getId());
+        }
+
+        ordinals = new int[maxId + 1];
+        Arrays.fill(ordinals, -1);
+        for (int i = 0; i < cities.length; i++) {
+            ordinals[cities[i].getId()] = i;
+        }
+    }
+
+    @Override
+    public City get(int ordinal) {
+        return cities[ordinal];
+    }
+
+    @Override
+    public int size() {
+        return cities.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof City ? getOrdinal((City) o) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    /**
+     * Get the ordinal of a city.
+     *
+     * @param city
+     * @return The ordinal, or -1 if the city is not in this index.
+     */
+    int getOrdinal(City city) {
+        int id = city.getId();
+        return id < ordinals.length ? ordinals[id] : -1;
+    }
+
+    /**
+     * Get the index with the given cities added.
+     *
+     * @param added
+     * @return This index if all the cities are in it already, or a new one.
+     */
+    CityIndex with(Collection<City> added) {
+        if (added instanceof CityIndex && isEmpty()) {
+            return (CityIndex) added;
+        }
+
+        List<City> newCities = new ArrayList<City>();
+        BitSet newIds = new BitSet();
+        for (City city : added) {
+            if (getOrdinal(city) < 0 && !newIds.get(city.getId())) {
+                newIds.set(city.getId());
+                newCities.add(city);
+            }
+        }
+
+        if (newCities.isEmpty()) {
+            return this;
+        }
+
+        City[] merged = Arrays.copyOf(cities, cities.length + newCities.size());
+        for (int i = 0; i < newCities.size(); i++) {
+            merged[cities.length + i] = newCities.get(i);
+        }
+        Arrays.sort(merged);
+        return new CityIndex(merged);
+    }
+}
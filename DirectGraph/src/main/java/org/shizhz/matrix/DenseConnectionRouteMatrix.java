@@ -0,0 +1,27 @@
+package org.shizhz.matrix;
+
+/**
+ * Used to represent the connectivities among all cities, the same as
+ * <code>ConnectionRouteMatrix</code>, but the elements are the number of
+ * routes kept in a flat <code>long[]</code>, on the
+ * {@link LongSemiring#COUNTING counting semiring}. 0 means there is no route,
+ * which is returned as <code>null</code> by <code>getMatrixElement</code>.
+ *
+ * @author shizhz
+ *
+ */
+public class DenseConnectionRouteMatrix extends DenseLongRouteMatrix {
+
+    public DenseConnectionRouteMatrix() {
+        super(LongSemiring.COUNTING);
+    }
+
+    public static RouteMatrix<Long> newInstance() {
+        return new DenseConnectionRouteMatrix();
+    }
+
+    @Override
+    protected RouteMatrix<Long> newMatrixInstance() {
+        return DenseConnectionRouteMatrix.newInstance();
+    }
+}
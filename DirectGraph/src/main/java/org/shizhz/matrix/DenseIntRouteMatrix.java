@@ -0,0 +1,224 @@
+package org.shizhz.matrix;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * A route matrix whose elements are defined by an {@link IntSemiring} and kept
+ * in a flat <code>int[]</code> indexed by the ordinals of the sorted cities.
+ * The zero of the semiring stands for no route, which is returned as
+ * <code>null</code> by <code>getMatrixElement</code>.
+ * <p>
+ * Multiplication, addition and transitive closure between two matrices on the
+ * same semiring are computed on the primitive arrays directly, without boxing
+ * any element, so are the powers.
+ *
+ * @author shizhz
+ *
+ */
+public class DenseIntRouteMatrix extends AbstractRouteMatrix<Integer> {
+
+    private final IntSemiring semiring;
+
+    private int[] cells = new int[0];
+
+    public DenseIntRouteMatrix(IntSemiring semiring) {
+        this.semiring = semiring;
+    }
+
+    public static RouteMatrix<Integer> newInstance(IntSemiring semiring) {
+        return new DenseIntRouteMatrix(semiring);
+    }
+
+    public IntSemiring getSemiring() {
+        return semiring;
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        List<City> previousCities = getMatrixRouteCities();
+        super.addMatrixRouteCities(cities);
+
+        int size = getMatrixDimensions();
+        if (previousCities.size() == size) {
+            return;
+        }
+
+        // Cities are kept sorted, so the ordinals of the existing cities may
+        // have been shifted by the new ones.
+        int previousSize = previousCities.size();
+        int[] remapped = new int[size * size];
+        Arrays.fill(remapped, semiring.zero());
+        for (int i = 0; i < previousSize; i++) {
+            int row = getCityOrdinal(previousCities.get(i));
+            for (int j = 0; j < previousSize; j++) {
+                int column = getCityOrdinal(previousCities.get(j));
+                remapped[row * size + column] = cells[i * previousSize + j];
+            }
+        }
+
+        cells = remapped;
+    }
+
+    /**
+     * Multiple routes between the same pair of cities are combined by the
+     * addition of the semiring, so the routes added since the last build are
+     * added onto the elements built before.
+     */
+    @Override
+    public void build() {
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
+            invalidatePowers();
+            return;
+        }
+
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
+        invalidatePowers();
+
+        int size = getMatrixDimensions();
+        for (Route route : routes) {
+            int cell = getCityOrdinal(route.getSourceCity()) * size
+                    + getCityOrdinal(route.getDestinationCity());
+            cells[cell] = semiring.add(cells[cell], semiring.valueOf(route));
+        }
+    }
+
+    @Override
+    protected Integer getMatrixElement(int row, int column) {
+        int value = cells[row * getMatrixDimensions() + column];
+        return value == semiring.zero() ? null : Integer.valueOf(value);
+    }
+
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity, Integer element) {
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+        cells[getCityOrdinal(rowCity) * getMatrixDimensions()
+                + getCityOrdinal(columnCity)] = element == null ? semiring
+                .zero() : element.intValue();
+    }
+
+    @Override
+    protected int nextColumn(int row, int column) {
+        int size = getMatrixDimensions();
+        for (; column < size; column++) {
+            if (cells[row * size + column] != semiring.zero()) {
+                return column;
+            }
+        }
+
+        return -1;
+    }
+
+    private DenseIntRouteMatrix newDenseInstance() {
+        DenseIntRouteMatrix matrix = (DenseIntRouteMatrix) newMatrixInstance();
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        return matrix;
+    }
+
+    /**
+     * Whether the primitive kernels can be applied to this matrix and the
+     * given one.
+     */
+    private boolean isCompatible(RouteMatrix<Integer> routeMatrix) {
+        return routeMatrix instanceof DenseIntRouteMatrix
+                && ((DenseIntRouteMatrix) routeMatrix).semiring == semiring;
+    }
+
+    @Override
+    public RouteMatrix<Integer> multiply(RouteMatrix<Integer> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "multiply");
+
+        // Validated operands share the same sorted cities, hence the same
+        // ordinals.
+        DenseIntRouteMatrix product = newDenseInstance();
+        SemiringKernels.multiply(semiring, cells,
+                ((DenseIntRouteMatrix) routeMatrix).cells, product.cells,
+                getMatrixDimensions());
+
+        return product;
+    }
+
+    @Override
+    public RouteMatrix<Integer> add(RouteMatrix<Integer> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "add");
+
+        DenseIntRouteMatrix sum = newDenseInstance();
+        SemiringKernels.add(semiring, cells,
+                ((DenseIntRouteMatrix) routeMatrix).cells, sum.cells,
+                getMatrixDimensions());
+
+        return sum;
+    }
+
+    @Override
+    public RouteMatrix<Integer> getMatrixTransitiveClosure() {
+        DenseIntRouteMatrix closure = newDenseInstance();
+        System.arraycopy(cells, 0, closure.cells, 0, cells.length);
+        SemiringKernels.closure(semiring, closure.cells, getMatrixDimensions());
+
+        return closure;
+    }
+
+    @Override
+    public RouteMatrix<Integer> getAdditionIdentify() {
+        return newDenseInstance();
+    }
+
+    @Override
+    protected Integer elementMultiply(Integer multiplicand, Integer multiplier) {
+        if (multiplicand == null || multiplier == null) {
+            return null;
+        }
+
+        int product = semiring.multiply(multiplicand, multiplier);
+        return product == semiring.zero() ? null : Integer.valueOf(product);
+    }
+
+    @Override
+    protected Integer elementAdd(Integer addend, Integer augend) {
+        if (addend == null) {
+            return augend;
+        }
+
+        if (augend == null) {
+            return addend;
+        }
+
+        int sum = semiring.add(addend, augend);
+        return sum == semiring.zero() ? null : Integer.valueOf(sum);
+    }
+
+    @Override
+    protected RouteMatrix<Integer> newMatrixInstance() {
+        return new DenseIntRouteMatrix(semiring);
+    }
+
+    @Override
+    protected Integer extractMatrixElement(Route route) {
+        return semiring.valueOf(route);
+    }
+
+    @Override
+    protected Integer getIdentifyElement() {
+        return semiring.one();
+    }
+}
@@ -0,0 +1,356 @@
+package org.shizhz.matrix;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * A route matrix whose elements are defined by a {@link LongSemiring} and kept
+ * in a flat <code>long[]</code> indexed by the ordinals of the sorted cities.
+ * The zero of the semiring stands for no route, which is returned as
+ * <code>null</code> by <code>getMatrixElement</code>.
+ * <p>
+ * Multiplication, addition and transitive closure between two matrices on the
+ * same semiring are computed on the primitive arrays directly, without boxing
+ * any element, so are the powers.
+ * <p>
+ * On the {@link LongSemiring#COUNTING} semiring, products which may overflow
+ * <code>long</code> are computed by the checked kernels of
+ * <code>SemiringKernels</code>, so are all the sums. The overflowing elements
+ * are kept in a <code>BigInteger</code> side table and saturated to
+ * <code>Long.MAX_VALUE</code> in the cells, the same as
+ * <code>SparseLongRouteMatrix</code>, and their exact counts are got by
+ * <code>getExactMatrixElement</code>.
+ *
+ * @author shizhz
+ *
+ */
+public class DenseLongRouteMatrix extends AbstractRouteMatrix<Long> {
+
+    private final LongSemiring semiring;
+
+    private long[] cells = new long[0];
+
+    /**
+     * The exact elements overflowing <code>long</code>, parallel to
+     * <code>cells</code>. It is null unless any element overflows.
+     */
+    private BigInteger[] exactCells;
+
+    public DenseLongRouteMatrix(LongSemiring semiring) {
+        this.semiring = semiring;
+    }
+
+    public static RouteMatrix<Long> newInstance(LongSemiring semiring) {
+        return new DenseLongRouteMatrix(semiring);
+    }
+
+    public LongSemiring getSemiring() {
+        return semiring;
+    }
+
+    /**
+     * Wrap the cells of the given cities into a matrix.
+     *
+     * @param exactCells
+     *            The exact elements overflowing <code>long</code>, or null if
+     *            none.
+     */
+    static DenseLongRouteMatrix fromCells(LongSemiring semiring,
+            List<City> cities, long[] cells, BigInteger[] exactCells) {
+        DenseLongRouteMatrix matrix = new DenseLongRouteMatrix(semiring);
+        matrix.addMatrixRouteCities(cities);
+        matrix.cells = cells;
+        matrix.exactCells = exactCells;
+        return matrix;
+    }
+
+    /**
+     * Copy this matrix into compressed sparse row format, along with the
+     * exact elements.
+     */
+    SparseLongRouteMatrix toSparse() {
+        return SparseLongRouteMatrix.fromCells(semiring,
+                getMatrixRouteCities(), cells, exactCells);
+    }
+
+    /**
+     * Get the number of non-zero elements in this matrix.
+     *
+     * @return
+     */
+    public int getNonZeroElementsAmount() {
+        int amount = 0;
+        for (long value : cells) {
+            if (value != semiring.zero()) {
+                amount++;
+            }
+        }
+
+        return amount;
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        List<City> previousCities = getMatrixRouteCities();
+        super.addMatrixRouteCities(cities);
+
+        int size = getMatrixDimensions();
+        if (previousCities.size() == size) {
+            return;
+        }
+
+        // Cities are kept sorted, so the ordinals of the existing cities may
+        // have been shifted by the new ones.
+        int previousSize = previousCities.size();
+        long[] remapped = new long[size * size];
+        BigInteger[] remappedExactCells = exactCells == null ? null
+                : new BigInteger[size * size];
+        Arrays.fill(remapped, semiring.zero());
+        for (int i = 0; i < previousSize; i++) {
+            int row = getCityOrdinal(previousCities.get(i));
+            for (int j = 0; j < previousSize; j++) {
+                int column = getCityOrdinal(previousCities.get(j));
+                remapped[row * size + column] = cells[i * previousSize + j];
+                if (remappedExactCells != null) {
+                    remappedExactCells[row * size + column] = exactCells[i
+                            * previousSize + j];
+                }
+            }
+        }
+
+        cells = remapped;
+        exactCells = remappedExactCells;
+    }
+
+    /**
+     * Multiple routes between the same pair of cities are combined by the
+     * addition of the semiring, so the routes added since the last build are
+     * added onto the elements built before.
+     */
+    @Override
+    public void build() {
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
+            invalidatePowers();
+            return;
+        }
+
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
+        invalidatePowers();
+
+        int size = getMatrixDimensions();
+        for (Route route : routes) {
+            int cell = getCityOrdinal(route.getSourceCity()) * size
+                    + getCityOrdinal(route.getDestinationCity());
+            long value = semiring.valueOf(route);
+            if (semiring != LongSemiring.COUNTING) {
+                cells[cell] = semiring.add(cells[cell], value);
+            } else if (cells[cell] + value >= 0
+                    && (exactCells == null || exactCells[cell] == null)) {
+                cells[cell] += value;
+            } else {
+                if (exactCells == null) {
+                    exactCells = new BigInteger[cells.length];
+                }
+                exactCells[cell] = (exactCells[cell] == null ? BigInteger
+                        .valueOf(cells[cell]) : exactCells[cell])
+                        .add(BigInteger.valueOf(value));
+                cells[cell] = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    @Override
+    protected Long getMatrixElement(int row, int column) {
+        long value = cells[row * getMatrixDimensions() + column];
+        return value == semiring.zero() ? null : Long.valueOf(value);
+    }
+
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity, Long element) {
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+        int cell = getCityOrdinal(rowCity) * getMatrixDimensions()
+                + getCityOrdinal(columnCity);
+        cells[cell] = element == null ? semiring.zero() : element.longValue();
+        if (exactCells != null) {
+            exactCells[cell] = null;
+        }
+    }
+
+    /**
+     * Get the exact element, which differs from
+     * <code>getMatrixElement</code> only when a count of routes overflows
+     * <code>long</code>.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @return The element, or null if it is the zero of the semiring.
+     */
+    public BigInteger getExactMatrixElement(City rowCity, City columnCity) {
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        if (row < 0 || column < 0) {
+            return null;
+        }
+
+        int cell = row * getMatrixDimensions() + column;
+        if (exactCells != null && exactCells[cell] != null) {
+            return exactCells[cell];
+        }
+
+        return cells[cell] == semiring.zero() ? null : BigInteger
+                .valueOf(cells[cell]);
+    }
+
+    @Override
+    protected int nextColumn(int row, int column) {
+        int size = getMatrixDimensions();
+        for (; column < size; column++) {
+            if (cells[row * size + column] != semiring.zero()) {
+                return column;
+            }
+        }
+
+        return -1;
+    }
+
+    private DenseLongRouteMatrix newDenseInstance() {
+        DenseLongRouteMatrix matrix = (DenseLongRouteMatrix) newMatrixInstance();
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        return matrix;
+    }
+
+    /**
+     * Whether the primitive kernels can be applied to this matrix and the
+     * given one.
+     */
+    private boolean isCompatible(RouteMatrix<Long> routeMatrix) {
+        return routeMatrix instanceof DenseLongRouteMatrix
+                && ((DenseLongRouteMatrix) routeMatrix).semiring == semiring;
+    }
+
+    @Override
+    public RouteMatrix<Long> multiply(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "multiply");
+
+        // Validated operands share the same sorted cities, hence the same
+        // ordinals.
+        DenseLongRouteMatrix multiplier = (DenseLongRouteMatrix) routeMatrix;
+        DenseLongRouteMatrix product = newDenseInstance();
+        int size = getMatrixDimensions();
+        boolean exact = exactCells != null || multiplier.exactCells != null;
+        if (semiring == LongSemiring.COUNTING
+                && (exact || !SemiringKernels.countsFit(cells,
+                        multiplier.cells, size))) {
+            product.exactCells = SemiringKernels.multiplyCounts(cells,
+                    exactCells, multiplier.cells, multiplier.exactCells,
+                    product.cells, size);
+        } else {
+            SemiringKernels.multiply(semiring, cells, multiplier.cells,
+                    product.cells, size);
+        }
+
+        return product;
+    }
+
+    @Override
+    public RouteMatrix<Long> add(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "add");
+
+        DenseLongRouteMatrix augend = (DenseLongRouteMatrix) routeMatrix;
+        DenseLongRouteMatrix sum = newDenseInstance();
+        if (semiring == LongSemiring.COUNTING) {
+            sum.exactCells = SemiringKernels.addCounts(cells, exactCells,
+                    augend.cells, augend.exactCells, sum.cells,
+                    getMatrixDimensions());
+        } else {
+            SemiringKernels.add(semiring, cells, augend.cells, sum.cells,
+                    getMatrixDimensions());
+        }
+
+        return sum;
+    }
+
+    /**
+     * On the counting semiring, the elements overflowing <code>long</code> are
+     * kept exactly, the same as the products.
+     */
+    @Override
+    public RouteMatrix<Long> getMatrixTransitiveClosure() {
+        DenseLongRouteMatrix closure = newDenseInstance();
+        System.arraycopy(cells, 0, closure.cells, 0, cells.length);
+        if (semiring == LongSemiring.COUNTING) {
+            closure.exactCells = SemiringKernels.closureCounts(closure.cells,
+                    exactCells == null ? null : exactCells.clone(),
+                    getMatrixDimensions());
+        } else {
+            SemiringKernels.closure(semiring, closure.cells,
+                    getMatrixDimensions());
+        }
+
+        return closure;
+    }
+
+    @Override
+    public RouteMatrix<Long> getAdditionIdentify() {
+        return newDenseInstance();
+    }
+
+    @Override
+    protected Long elementMultiply(Long multiplicand, Long multiplier) {
+        if (multiplicand == null || multiplier == null) {
+            return null;
+        }
+
+        long product = semiring.multiply(multiplicand, multiplier);
+        return product == semiring.zero() ? null : Long.valueOf(product);
+    }
+
+    @Override
+    protected Long elementAdd(Long addend, Long augend) {
+        if (addend == null) {
+            return augend;
+        }
+
+        if (augend == null) {
+            return addend;
+        }
+
+        long sum = semiring.add(addend, augend);
+        return sum == semiring.zero() ? null : Long.valueOf(sum);
+    }
+
+    @Override
+    protected RouteMatrix<Long> newMatrixInstance() {
+        return new DenseLongRouteMatrix(semiring);
+    }
+
+    @Override
+    protected Long extractMatrixElement(Route route) {
+        return semiring.valueOf(route);
+    }
+
+    @Override
+    protected Long getIdentifyElement() {
+        return semiring.one();
+    }
+}
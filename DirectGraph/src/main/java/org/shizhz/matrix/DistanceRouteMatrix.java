@@ -0,0 +1,39 @@
+package org.shizhz.matrix;
+
+/**
+ * The element in this matrix is the shortest distance between two cities. The
+ * matrix is defined on the {@link IntSemiring#MIN_PLUS min-plus semiring}:
+ * addition takes the minimum of two distances and multiplication sums them
+ * up. So the power of this matrix with exponent k holds the shortest distances
+ * of routes with exactly k stops, and the transitive closure holds the
+ * shortest distances of all routes.
+ * <p>
+ * Elements are kept in a flat <code>int[]</code>, where {@link #UNREACHABLE}
+ * stands for no route, which is returned as <code>null</code> by
+ * <code>getMatrixElement</code>. Multiple routes between the same pair of
+ * cities are reduced to the shortest one.
+ *
+ * @author shizhz
+ *
+ */
+public class DistanceRouteMatrix extends DenseIntRouteMatrix {
+
+    /**
+     * The distance between two cities without any route. Distances are
+     * supposed to be less than it.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    public DistanceRouteMatrix() {
+        super(IntSemiring.MIN_PLUS);
+    }
+
+    public static RouteMatrix<Integer> newInstance() {
+        return new DistanceRouteMatrix();
+    }
+
+    @Override
+    protected RouteMatrix<Integer> newMatrixInstance() {
+        return DistanceRouteMatrix.newInstance();
+    }
+}
@@ -0,0 +1,188 @@
+package org.shizhz.matrix;
+
+import org.shizhz.route.Route;
+
+/**
+ * The algebra of the elements of a primitive <code>int</code> route matrix,
+ * the same as {@link LongSemiring} but with narrower elements. Two of them can
+ * be combined into a {@link LongSemiring#product(IntSemiring, IntSemiring)
+ * product semiring}.
+ *
+ * @author shizhz
+ *
+ */
+public abstract class IntSemiring {
+
+    /**
+     * The number of routes between two cities.
+     */
+    public static final IntSemiring COUNTING = new IntSemiring() {
+        @Override
+        public int zero() {
+            return 0;
+        }
+
+        @Override
+        public int one() {
+            return 1;
+        }
+
+        @Override
+        public int add(int addend, int augend) {
+            return addend + augend;
+        }
+
+        @Override
+        public int multiply(int multiplicand, int multiplier) {
+            return multiplicand * multiplier;
+        }
+
+        @Override
+        public int valueOf(Route route) {
+            return 1;
+        }
+    };
+
+    /**
+     * The shortest distance between two cities.
+     */
+    public static final IntSemiring MIN_PLUS = new IntSemiring() {
+        @Override
+        public int zero() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int one() {
+            return 0;
+        }
+
+        @Override
+        public int add(int addend, int augend) {
+            return Math.min(addend, augend);
+        }
+
+        @Override
+        public int multiply(int multiplicand, int multiplier) {
+            if (multiplicand == Integer.MAX_VALUE
+                    || multiplier == Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+
+            int sum = multiplicand + multiplier;
+            // Distances are not negative, so an overflow turns the sum negative.
+            return sum < 0 ? Integer.MAX_VALUE : sum;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public int valueOf(Route route) {
+            return route.getDistance();
+        }
+    };
+
+    /**
+     * The largest bottleneck between two cities, taking the distance of a
+     * route as its capacity.
+     */
+    public static final IntSemiring MAX_MIN = new IntSemiring() {
+        @Override
+        public int zero() {
+            return Integer.MIN_VALUE;
+        }
+
+        @Override
+        public int one() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int add(int addend, int augend) {
+            return Math.max(addend, augend);
+        }
+
+        @Override
+        public int multiply(int multiplicand, int multiplier) {
+            return Math.min(multiplicand, multiplier);
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public int valueOf(Route route) {
+            return route.getDistance();
+        }
+    };
+
+    /**
+     * Whether there is any route between two cities, 1 for yes and 0 for no.
+     */
+    public static final IntSemiring BOOLEAN = new IntSemiring() {
+        @Override
+        public int zero() {
+            return 0;
+        }
+
+        @Override
+        public int one() {
+            return 1;
+        }
+
+        @Override
+        public int add(int addend, int augend) {
+            return addend | augend;
+        }
+
+        @Override
+        public int multiply(int multiplicand, int multiplier) {
+            return multiplicand & multiplier;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public int valueOf(Route route) {
+            return 1;
+        }
+    };
+
+    /**
+     * The identity of addition, which stands for no route.
+     */
+    public abstract int zero();
+
+    /**
+     * The identity of multiplication.
+     */
+    public abstract int one();
+
+    public abstract int add(int addend, int augend);
+
+    public abstract int multiply(int multiplicand, int multiplier);
+
+    /**
+     * The element of a single route in the adjacency matrix.
+     */
+    public abstract int valueOf(Route route);
+
+    /**
+     * Whether the addition is idempotent, i.e. <code>a + a = a</code>. Along
+     * with <code>one + a = one</code>, which holds for all such semirings
+     * here since distances are not negative, the order in which routes are
+     * relaxed does not change the transitive closure, so it can be computed by
+     * blocks.
+     */
+    public boolean isIdempotent() {
+        return false;
+    }
+}
@@ -0,0 +1,251 @@
+package org.shizhz.matrix;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tuning parameters of the primitive matrix kernels, shared by all matrices.
+ * Defaults can be overridden by system properties:
+ * <ul>
+ * <li><code>org.shizhz.matrix.blockSize</code>: the edge of the square tiles
+ * used by blocked kernels, or <code>auto</code> to measure the fastest one on
+ * the running machine when this class is loaded.</li>
+ * <li><code>org.shizhz.matrix.tilingThreshold</code>: the least dimension of a
+ * matrix to apply blocked kernels to. Smaller matrices fit in cache anyway.</li>
+ * <li><code>org.shizhz.matrix.strassenThreshold</code>: the least dimension
+ * of a counting matrix to multiply by Strassen's algorithm, below which the
+ * recursion falls back to the blocked kernel.</li>
+ * <li><code>org.shizhz.matrix.parallelism</code>: the number of threads to
+ * split the rows of a matrix operation across, the number of available
+ * processors by default. 1 disables parallel operations.</li>
+ * <li><code>org.shizhz.matrix.parallelThreshold</code>: the least dimension of
+ * a matrix to split its operations across threads.</li>
+ * <li><code>org.shizhz.matrix.vectorized</code>: <code>false</code> to run
+ * the generic inner loops on all semirings, instead of the ones of
+ * <code>VectorKernels</code> on the counting, min-plus and boolean
+ * semirings.</li>
+ * </ul>
+ * The kernels yield the same results whatever the parameters are.
+ *
+ * @author shizhz
+ *
+ */
+public final class KernelConfig {
+
+    public static final String BLOCK_SIZE_PROPERTY = "org.shizhz.matrix.blockSize";
+
+    public static final String TILING_THRESHOLD_PROPERTY = "org.shizhz.matrix.tilingThreshold";
+
+    /**
+     * 64 x 64 <code>long</code> elements take 32KB, so a tile of each operand
+     * fits in a typical L2 cache together.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    public static final int DEFAULT_TILING_THRESHOLD = 128;
+
+    public static final String STRASSEN_THRESHOLD_PROPERTY = "org.shizhz.matrix.strassenThreshold";
+
+    public static final int DEFAULT_STRASSEN_THRESHOLD = 512;
+
+    public static final String PARALLELISM_PROPERTY = "org.shizhz.matrix.parallelism";
+
+    public static final String PARALLEL_THRESHOLD_PROPERTY = "org.shizhz.matrix.parallelThreshold";
+
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 256;
+
+    public static final String VECTORIZED_PROPERTY = "org.shizhz.matrix.vectorized";
+
+    private static final int[] BLOCK_SIZE_CANDIDATES = new int[] { 16, 32, 64,
+            128, 256 };
+
+    private static volatile int blockSize = DEFAULT_BLOCK_SIZE;
+
+    private static volatile int tilingThreshold = DEFAULT_TILING_THRESHOLD;
+
+    private static volatile int strassenThreshold = DEFAULT_STRASSEN_THRESHOLD;
+
+    private static volatile int parallelism = Runtime.getRuntime()
+            .availableProcessors();
+
+    private static volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    private static volatile boolean vectorized = true;
+
+    private static ForkJoinPool pool;
+
+    static {
+        String value = System.getProperty(BLOCK_SIZE_PROPERTY);
+        if ("auto".equalsIgnoreCase(value)) {
+            autoTuneBlockSize();
+        } else if (value != null) {
+            setBlockSize(Integer.parseInt(value.trim()));
+        }
+
+        value = System.getProperty(TILING_THRESHOLD_PROPERTY);
+        if (value != null) {
+            setTilingThreshold(Integer.parseInt(value.trim()));
+        }
+
+        value = System.getProperty(STRASSEN_THRESHOLD_PROPERTY);
+        if (value != null) {
+            setStrassenThreshold(Integer.parseInt(value.trim()));
+        }
+
+        value = System.getProperty(PARALLELISM_PROPERTY);
+        if (value != null) {
+            setParallelism(Integer.parseInt(value.trim()));
+        }
+
+        value = System.getProperty(PARALLEL_THRESHOLD_PROPERTY);
+        if (value != null) {
+            setParallelThreshold(Integer.parseInt(value.trim()));
+        }
+
+        value = System.getProperty(VECTORIZED_PROPERTY);
+        if (value != null) {
+            setVectorized(Boolean.parseBoolean(value.trim()));
+        }
+    }
+
+    private KernelConfig() {
+    }
+
+    public static int getBlockSize() {
+        return blockSize;
+    }
+
+    public static void setBlockSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(
+                    "The block size should be a positive integer, but was "
+                            + size);
+        }
+
+        blockSize = size;
+    }
+
+    public static int getTilingThreshold() {
+        return tilingThreshold;
+    }
+
+    public static void setTilingThreshold(int threshold) {
+        tilingThreshold = threshold;
+    }
+
+    public static int getStrassenThreshold() {
+        return strassenThreshold;
+    }
+
+    /**
+     * Set the least dimension to apply Strassen's algorithm. It is not
+     * supposed to be less than 2, which is the least dimension to split.
+     */
+    public static void setStrassenThreshold(int threshold) {
+        strassenThreshold = Math.max(threshold, 2);
+    }
+
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used by parallel matrix operations. The
+     * threads of the previous setting are released.
+     */
+    public static synchronized void setParallelism(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(
+                    "The parallelism should be a positive integer, but was "
+                            + threads);
+        }
+
+        if (pool != null && pool.getParallelism() != threads) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = threads;
+    }
+
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    public static void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    public static boolean isVectorized() {
+        return vectorized;
+    }
+
+    public static void setVectorized(boolean enabled) {
+        vectorized = enabled;
+    }
+
+    /**
+     * Whether the operations on a matrix with the given dimension should be
+     * split across threads.
+     */
+    static boolean isParallel(int size) {
+        return parallelism > 1 && size > 1 && size >= parallelThreshold;
+    }
+
+    /**
+     * The pool running parallel matrix operations, created on first use.
+     */
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        return pool;
+    }
+
+    /**
+     * Whether the blocked kernels should be applied to a matrix with the given
+     * dimension.
+     */
+    static boolean isTiled(int size) {
+        return size >= tilingThreshold && size > blockSize;
+    }
+
+    /**
+     * Measure the blocked multiplication of two 512 x 512 counting matrices
+     * with each candidate block size, and keep the fastest one.
+     *
+     * @return The block size chosen.
+     */
+    public static int autoTuneBlockSize() {
+        int size = 512;
+        Random random = new Random(size);
+        long[] multiplicand = new long[size * size];
+        long[] multiplier = new long[size * size];
+        for (int i = 0; i < multiplicand.length; i++) {
+            multiplicand[i] = random.nextInt(2);
+            multiplier[i] = random.nextInt(2);
+        }
+
+        int fastest = DEFAULT_BLOCK_SIZE;
+        long fastestTime = Long.MAX_VALUE;
+        for (int candidate : BLOCK_SIZE_CANDIDATES) {
+            long time = Long.MAX_VALUE;
+            // The first round warms up the kernel.
+            for (int round = 0; round < 3; round++) {
+                long[] product = new long[size * size];
+                long start = System.nanoTime();
+                SemiringKernels.multiplyTiled(LongSemiring.COUNTING,
+                        multiplicand, multiplier, product, size, candidate);
+                time = Math.min(time, System.nanoTime() - start);
+            }
+
+            if (time < fastestTime) {
+                fastestTime = time;
+                fastest = candidate;
+            }
+        }
+
+        setBlockSize(fastest);
+        return fastest;
+    }
+}
@@ -0,0 +1,235 @@
+package org.shizhz.matrix;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A linear recurrence modulo a prime:
+ * <code>u(t) = c(1) * u(t - 1) + ... + c(L) * u(t - L)</code> for all
+ * <code>t >= L</code>, found from the leading terms of a sequence by the
+ * Berlekamp-Massey algorithm.
+ * <p>
+ * By the Cayley-Hamilton theorem, an element of the powers of an n x n matrix
+ * satisfies such a recurrence of order at most n, and the sums of the powers
+ * of order at most n + 1. So 2n + 2 leading terms, computed by pushing a
+ * vector through the matrix, are enough to find the recurrence, and any term
+ * is then computed by Kitamasa's method: <code>x^t</code> is reduced modulo
+ * the characteristic polynomial of the recurrence by squaring, which costs
+ * O(L^2 log(t)) with schoolbook polynomial multiplication.
+ * <p>
+ * This is a known limit: the reduction does not use FFT-based polynomial
+ * multiplication, so each step costs O(L^2) rather than O(L log(L)), and a
+ * term costs O(L^2 log(t)) rather than O(L log(L) log(t)).
+ *
+ * @author shizhz
+ *
+ */
+public final class LinearRecurrence {
+
+    public static final long DEFAULT_MODULUS = 1000000007L;
+
+    private final long modulus;
+
+    /**
+     * <code>u(0), ..., u(L - 1)</code>.
+     */
+    private final long[] initialTerms;
+
+    /**
+     * <code>c(1), ..., c(L)</code>.
+     */
+    private final long[] coefficients;
+
+    private LinearRecurrence(long modulus, long[] initialTerms,
+            long[] coefficients) {
+        this.modulus = modulus;
+        this.initialTerms = initialTerms;
+        this.coefficients = coefficients;
+    }
+
+    /**
+     * Check whether the modulus is a prime which keeps the products of two
+     * residues in a <code>long</code>.
+     *
+     * @throws IllegalArgumentException
+     *             Thrown if the modulus is not supported.
+     */
+    public static void validateModulus(long modulus) {
+        if (modulus < 2 || modulus > Integer.MAX_VALUE
+                || !BigInteger.valueOf(modulus).isProbablePrime(32)) {
+            throw new IllegalArgumentException(
+                    "The modulus should be a prime not greater than "
+                            + Integer.MAX_VALUE + ", but was " + modulus);
+        }
+    }
+
+    /**
+     * Find the shortest linear recurrence generating the given sequence, by
+     * the Berlekamp-Massey algorithm. The recurrence is unique if the
+     * sequence has at least twice as many terms as its order.
+     *
+     * @param sequence
+     *            The leading terms of the sequence, reduced by the modulus.
+     * @param modulus
+     *            A prime.
+     * @return The recurrence.
+     */
+    public static LinearRecurrence find(long[] sequence, long modulus) {
+        validateModulus(modulus);
+
+        // The connection polynomial C(x) = 1 - c(1)x - ... - c(L)x^L, and the
+        // one before the last change of L.
+        long[] current = new long[sequence.length + 1];
+        long[] previous = new long[sequence.length + 1];
+        current[0] = 1;
+        previous[0] = 1;
+        int order = 0;
+        int shift = 1;
+        long previousDiscrepancy = 1;
+
+        for (int n = 0; n < sequence.length; n++) {
+            long discrepancy = sequence[n] % modulus;
+            for (int i = 1; i <= order; i++) {
+                discrepancy = (discrepancy + current[i] * sequence[n - i])
+                        % modulus;
+            }
+
+            if (discrepancy == 0) {
+                shift++;
+                continue;
+            }
+
+            long factor = discrepancy * inverse(previousDiscrepancy, modulus)
+                    % modulus;
+            long[] last = current.clone();
+            for (int i = 0; i + shift < current.length; i++) {
+                current[i + shift] = (current[i + shift] + modulus - factor
+                        * previous[i] % modulus)
+                        % modulus;
+            }
+
+            if (2 * order <= n) {
+                order = n + 1 - order;
+                previous = last;
+                previousDiscrepancy = discrepancy;
+                shift = 1;
+            } else {
+                shift++;
+            }
+        }
+
+        long[] coefficients = new long[order];
+        for (int i = 1; i <= order; i++) {
+            coefficients[i - 1] = (modulus - current[i]) % modulus;
+        }
+
+        long[] initialTerms = new long[order];
+        for (int i = 0; i < order; i++) {
+            initialTerms[i] = sequence[i] % modulus;
+        }
+
+        return new LinearRecurrence(modulus, initialTerms, coefficients);
+    }
+
+    private static long power(long base, long exponent, long modulus) {
+        long result = 1;
+        base %= modulus;
+        for (; exponent > 0; exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                result = result * base % modulus;
+            }
+            base = base * base % modulus;
+        }
+
+        return result;
+    }
+
+    private static long inverse(long value, long modulus) {
+        // Fermat's little theorem, the modulus is a prime.
+        return power(value, modulus - 2, modulus);
+    }
+
+    public long getModulus() {
+        return modulus;
+    }
+
+    public int getOrder() {
+        return coefficients.length;
+    }
+
+    /**
+     * Multiply two polynomials of degree less than L, and reduce the product
+     * modulo the characteristic polynomial
+     * <code>x^L - c(1)x^(L - 1) - ... - c(L)</code>.
+     */
+    private long[] multiplyReduced(long[] multiplicand, long[] multiplier) {
+        int order = coefficients.length;
+        long[] product = new long[2 * order - 1];
+        for (int i = 0; i < order; i++) {
+            if (multiplicand[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < order; j++) {
+                product[i + j] = (product[i + j] + multiplicand[i]
+                        * multiplier[j])
+                        % modulus;
+            }
+        }
+
+        // x^d = c(1)x^(d - 1) + ... + c(L)x^(d - L) for d >= L.
+        for (int d = product.length - 1; d >= order; d--) {
+            long value = product[d];
+            if (value == 0) {
+                continue;
+            }
+            for (int i = 1; i <= order; i++) {
+                product[d - i] = (product[d - i] + value * coefficients[i - 1])
+                        % modulus;
+            }
+        }
+
+        return Arrays.copyOf(product, order);
+    }
+
+    /**
+     * Get the term <code>u(index)</code> of the sequence.
+     *
+     * @param index
+     *            A non-negative index.
+     * @return The term reduced by the modulus.
+     */
+    public long getTerm(long index) {
+        int order = coefficients.length;
+        if (order == 0) {
+            return 0;
+        }
+
+        if (index < order) {
+            return initialTerms[(int) index];
+        }
+
+        // The remainder of x^index, then u(index) = sum r(i) * u(i).
+        long[] remainder = new long[order];
+        long[] base = new long[order];
+        remainder[0] = 1;
+        if (order == 1) {
+            base[0] = coefficients[0];
+        } else {
+            base[1] = 1;
+        }
+
+        for (long exponent = index; exponent > 0; exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                remainder = multiplyReduced(remainder, base);
+            }
+            base = multiplyReduced(base, base);
+        }
+
+        long term = 0;
+        for (int i = 0; i < order; i++) {
+            term = (term + remainder[i] * initialTerms[i]) % modulus;
+        }
+
+        return term;
+    }
+}
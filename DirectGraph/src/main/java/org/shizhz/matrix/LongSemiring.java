@@ -0,0 +1,301 @@
+package org.shizhz.matrix;
+
+import org.shizhz.route.Route;
+
+/**
+ * The algebra of the elements of a primitive <code>long</code> route matrix.
+ * Matrix multiplication, power and transitive closure are all defined by the
+ * addition and multiplication of the semiring, so a new kind of query can be
+ * answered by defining a new semiring, without a new matrix class.
+ * <p>
+ * The zero element stands for no route between two cities, which has to be
+ * the identity of addition and annihilate any element by multiplication.
+ *
+ * @author shizhz
+ *
+ */
+public abstract class LongSemiring {
+
+    /**
+     * The number of routes between two cities.
+     */
+    public static final LongSemiring COUNTING = new LongSemiring() {
+        @Override
+        public long zero() {
+            return 0;
+        }
+
+        @Override
+        public long one() {
+            return 1;
+        }
+
+        @Override
+        public long add(long addend, long augend) {
+            return addend + augend;
+        }
+
+        @Override
+        public long multiply(long multiplicand, long multiplier) {
+            return multiplicand * multiplier;
+        }
+
+        @Override
+        public long valueOf(Route route) {
+            return 1;
+        }
+    };
+
+    /**
+     * The shortest distance between two cities.
+     */
+    public static final LongSemiring MIN_PLUS = new LongSemiring() {
+        @Override
+        public long zero() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long one() {
+            return 0;
+        }
+
+        @Override
+        public long add(long addend, long augend) {
+            return Math.min(addend, augend);
+        }
+
+        @Override
+        public long multiply(long multiplicand, long multiplier) {
+            if (multiplicand == Long.MAX_VALUE || multiplier == Long.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+
+            long sum = multiplicand + multiplier;
+            // Distances are not negative, so an overflow turns the sum negative.
+            return sum < 0 ? Long.MAX_VALUE : sum;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public long valueOf(Route route) {
+            return route.getDistance();
+        }
+    };
+
+    /**
+     * The largest bottleneck between two cities, taking the distance of a
+     * route as its capacity.
+     */
+    public static final LongSemiring MAX_MIN = new LongSemiring() {
+        @Override
+        public long zero() {
+            return Long.MIN_VALUE;
+        }
+
+        @Override
+        public long one() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long add(long addend, long augend) {
+            return Math.max(addend, augend);
+        }
+
+        @Override
+        public long multiply(long multiplicand, long multiplier) {
+            return Math.min(multiplicand, multiplier);
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public long valueOf(Route route) {
+            return route.getDistance();
+        }
+    };
+
+    /**
+     * Whether there is any route between two cities, 1 for yes and 0 for no.
+     */
+    public static final LongSemiring BOOLEAN = new LongSemiring() {
+        @Override
+        public long zero() {
+            return 0;
+        }
+
+        @Override
+        public long one() {
+            return 1;
+        }
+
+        @Override
+        public long add(long addend, long augend) {
+            return addend | augend;
+        }
+
+        @Override
+        public long multiply(long multiplicand, long multiplier) {
+            return multiplicand & multiplier;
+        }
+
+        @Override
+        public boolean isIdempotent() {
+            return true;
+        }
+
+        @Override
+        public long valueOf(Route route) {
+            return 1;
+        }
+    };
+
+    /**
+     * The number of routes between two cities, reduced modulo a prime. The
+     * counts grow exponentially with the stops, the residues do not overflow.
+     *
+     * @param modulus
+     *            A prime not greater than <code>Integer.MAX_VALUE</code>, so
+     *            the product of two residues fits in a <code>long</code>.
+     * @return The counting semiring modulo the prime.
+     */
+    public static LongSemiring modular(final long modulus) {
+        LinearRecurrence.validateModulus(modulus);
+
+        return new LongSemiring() {
+            @Override
+            public long zero() {
+                return 0;
+            }
+
+            @Override
+            public long one() {
+                return 1;
+            }
+
+            @Override
+            public long add(long addend, long augend) {
+                return (addend + augend) % modulus;
+            }
+
+            @Override
+            public long multiply(long multiplicand, long multiplier) {
+                return multiplicand * multiplier % modulus;
+            }
+
+            @Override
+            public long valueOf(Route route) {
+                return 1;
+            }
+        };
+    }
+
+    /**
+     * The product of two <code>int</code> semirings, whose elements are pairs
+     * packed into one <code>long</code>: the element of the first semiring in
+     * the high 32 bits and the element of the second one in the low 32 bits.
+     * Operations are applied to both parts respectively.
+     *
+     * @param first
+     * @param second
+     * @return The product semiring.
+     */
+    public static LongSemiring product(final IntSemiring first,
+            final IntSemiring second) {
+        return new LongSemiring() {
+            @Override
+            public long zero() {
+                return pack(first.zero(), second.zero());
+            }
+
+            @Override
+            public long one() {
+                return pack(first.one(), second.one());
+            }
+
+            @Override
+            public long add(long addend, long augend) {
+                return pack(first.add(high(addend), high(augend)),
+                        second.add(low(addend), low(augend)));
+            }
+
+            @Override
+            public long multiply(long multiplicand, long multiplier) {
+                return pack(first.multiply(high(multiplicand), high(multiplier)),
+                        second.multiply(low(multiplicand), low(multiplier)));
+            }
+
+            @Override
+            public boolean isIdempotent() {
+                return first.isIdempotent() && second.isIdempotent();
+            }
+
+            @Override
+            public long valueOf(Route route) {
+                return pack(first.valueOf(route), second.valueOf(route));
+            }
+        };
+    }
+
+    /**
+     * Pack two <code>int</code> elements into one element of a product
+     * semiring.
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The element of the first semiring packed in an element of a product
+     * semiring.
+     */
+    public static int high(long element) {
+        return (int) (element >> 32);
+    }
+
+    /**
+     * The element of the second semiring packed in an element of a product
+     * semiring.
+     */
+    public static int low(long element) {
+        return (int) element;
+    }
+
+    /**
+     * The identity of addition, which stands for no route.
+     */
+    public abstract long zero();
+
+    /**
+     * The identity of multiplication.
+     */
+    public abstract long one();
+
+    public abstract long add(long addend, long augend);
+
+    public abstract long multiply(long multiplicand, long multiplier);
+
+    /**
+     * The element of a single route in the adjacency matrix.
+     */
+    public abstract long valueOf(Route route);
+
+    /**
+     * Whether the addition is idempotent, i.e. <code>a + a = a</code>. Along
+     * with <code>one + a = one</code>, which holds for all such semirings
+     * here since distances are not negative, the order in which routes are
+     * relaxed does not change the transitive closure, so it can be computed by
+     * blocks.
+     */
+    public boolean isIdempotent() {
+        return false;
+    }
+}
@@ -0,0 +1,173 @@
+package org.shizhz.matrix;
+
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * A <code>long</code> array kept in direct buffers out of the Java heap, so
+ * it is neither scanned nor copied by the garbage collector, and its length
+ * is not limited by the capacity of one buffer: the elements are split into
+ * chunks of 2^27 elements, 1 GiB each.
+ * <p>
+ * The memory is freed by <code>close</code> at once, instead of waiting for
+ * the buffers to be collected.
+ *
+ * @author shizhz
+ *
+ */
+final class OffHeapLongArray implements Closeable {
+
+    private static final int DEFAULT_CHUNK_BITS = 27;
+
+    /**
+     * <code>sun.misc.Unsafe.invokeCleaner</code> since Java 9, or null.
+     */
+    private static final Method INVOKE_CLEANER;
+
+    private static final Object UNSAFE;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+        }
+
+        INVOKE_CLEANER = invokeCleaner;
+        UNSAFE = unsafe;
+    }
+
+    private final long length;
+
+    private final int chunkBits;
+
+    private final long chunkMask;
+
+    private ByteBuffer[] buffers;
+
+    private LongBuffer[] chunks;
+
+    OffHeapLongArray(long length) {
+        this(length, DEFAULT_CHUNK_BITS);
+    }
+
+    OffHeapLongArray(long length, int chunkBits) {
+        this.length = length;
+        this.chunkBits = chunkBits;
+        this.chunkMask = (1L << chunkBits) - 1;
+
+        int amount = (int) ((length + chunkMask) >>> chunkBits);
+        buffers = new ByteBuffer[amount];
+        chunks = new LongBuffer[amount];
+        for (int i = 0; i < amount; i++) {
+            long chunkLength = Math.min(1L << chunkBits, length
+                    - ((long) i << chunkBits));
+            // Direct buffers are filled with zero when allocated.
+            buffers[i] = ByteBuffer.allocateDirect((int) chunkLength * 8)
+                    .order(ByteOrder.nativeOrder());
+            chunks[i] = buffers[i].asLongBuffer();
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    long get(long index) {
+        return chunks[(int) (index >>> chunkBits)].get((int) (index & chunkMask));
+    }
+
+    void set(long index, long value) {
+        chunks[(int) (index >>> chunkBits)].put((int) (index & chunkMask),
+                value);
+    }
+
+    /**
+     * Copy <code>amount</code> elements from the given index into an array,
+     * in bulk from each chunk. The chunks are not changed, so it may be
+     * invoked by several threads at once.
+     */
+    void get(long index, long[] target, int offset, int amount) {
+        while (amount > 0) {
+            LongBuffer chunk = chunks[(int) (index >>> chunkBits)].duplicate();
+            chunk.position((int) (index & chunkMask));
+            int length = Math.min(amount, chunk.remaining());
+            chunk.get(target, offset, length);
+            index += length;
+            offset += length;
+            amount -= length;
+        }
+    }
+
+    /**
+     * Copy <code>amount</code> elements from an array to the given index, in
+     * bulk into each chunk.
+     */
+    void set(long index, long[] source, int offset, int amount) {
+        while (amount > 0) {
+            LongBuffer chunk = chunks[(int) (index >>> chunkBits)].duplicate();
+            chunk.position((int) (index & chunkMask));
+            int length = Math.min(amount, chunk.remaining());
+            chunk.put(source, offset, length);
+            index += length;
+            offset += length;
+            amount -= length;
+        }
+    }
+
+    void fill(long value) {
+        for (LongBuffer chunk : chunks) {
+            for (int i = 0, capacity = chunk.capacity(); i < capacity; i++) {
+                chunk.put(i, value);
+            }
+        }
+    }
+
+    boolean isClosed() {
+        return chunks == null;
+    }
+
+    @Override
+    public void close() {
+        if (chunks == null) {
+            return;
+        }
+
+        for (ByteBuffer buffer : buffers) {
+            free(buffer);
+        }
+        buffers = null;
+        chunks = null;
+    }
+
+    /**
+     * Free the memory of a direct buffer. If the cleaner is not accessible,
+     * the memory is left to be freed when the buffer is collected.
+     */
+    private static void free(ByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                // Java 7 and 8.
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // Left to the garbage collector.
+        }
+    }
+}
@@ -0,0 +1,502 @@
+package org.shizhz.matrix;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * A dense route matrix on a {@link LongSemiring}, whose elements are kept out
+ * of the Java heap, so matrices of networks too large for the heap do not
+ * make the pauses of the garbage collector grow with them. Use
+ * {@link LongSemiring#COUNTING} for the numbers of routes and
+ * {@link LongSemiring#MIN_PLUS} for the shortest distances.
+ * <p>
+ * Exact counts are not supported off the heap: on the counting semiring, any
+ * sum or product of elements overflowing <code>long</code> throws
+ * <code>ArithmeticException</code> instead of wrapping around. Use
+ * {@link DenseLongRouteMatrix} or {@link SparseLongRouteMatrix} to keep such
+ * counts exactly.
+ * <p>
+ * The memory is held until <code>close</code> is invoked, after which the
+ * matrix can not be used any more. Each matrix returned by an operation owns
+ * its own memory and should be closed by the caller as well. The powers with
+ * exponent 2^k are cached by this matrix and closed along with it, or when it
+ * is changed, so <code>power</code> returns a copy of them instead.
+ *
+ * @author shizhz
+ *
+ */
+public class OffHeapLongRouteMatrix extends AbstractRouteMatrix<Long> implements
+        Closeable {
+
+    private final LongSemiring semiring;
+
+    private OffHeapLongArray cells = new OffHeapLongArray(0);
+
+    public OffHeapLongRouteMatrix(LongSemiring semiring) {
+        this.semiring = semiring;
+    }
+
+    public static OffHeapLongRouteMatrix newInstance(LongSemiring semiring) {
+        return new OffHeapLongRouteMatrix(semiring);
+    }
+
+    public LongSemiring getSemiring() {
+        return semiring;
+    }
+
+    public boolean isClosed() {
+        return cells.isClosed();
+    }
+
+    private void ensureOpen() {
+        if (isClosed()) {
+            throw new IllegalStateException("The matrix has been closed.");
+        }
+    }
+
+    private static long cell(int row, int column, int size) {
+        return (long) row * size + column;
+    }
+
+    private static ArithmeticException overflow() {
+        return new ArithmeticException(
+                "The count of routes overflows long, which is not kept exactly off the heap.");
+    }
+
+    /**
+     * The addition of the semiring, checked for overflows on the counting
+     * semiring.
+     */
+    private long addElements(long addend, long augend) {
+        if (semiring != LongSemiring.COUNTING) {
+            return semiring.add(addend, augend);
+        }
+
+        long sum = addend + augend;
+        if (sum < 0) {
+            throw overflow();
+        }
+
+        return sum;
+    }
+
+    /**
+     * The multiplication of the semiring, checked for overflows on the
+     * counting semiring.
+     */
+    private long multiplyElements(long multiplicand, long multiplier) {
+        if (semiring != LongSemiring.COUNTING) {
+            return semiring.multiply(multiplicand, multiplier);
+        }
+
+        long product = SparseLongRouteMatrix.multiplyCounts(multiplicand,
+                multiplier);
+        if (product < 0) {
+            throw overflow();
+        }
+
+        return product;
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        ensureOpen();
+        List<City> previousCities = getMatrixRouteCities();
+        super.addMatrixRouteCities(cities);
+
+        int size = getMatrixDimensions();
+        if (previousCities.size() == size) {
+            return;
+        }
+
+        // Cities are kept sorted, so the ordinals of the existing cities may
+        // have been shifted by the new ones.
+        int previousSize = previousCities.size();
+        OffHeapLongArray remapped = new OffHeapLongArray((long) size * size);
+        if (semiring.zero() != 0) {
+            remapped.fill(semiring.zero());
+        }
+        for (int i = 0; i < previousSize; i++) {
+            int row = getCityOrdinal(previousCities.get(i));
+            for (int j = 0; j < previousSize; j++) {
+                int column = getCityOrdinal(previousCities.get(j));
+                remapped.set(cell(row, column, size),
+                        cells.get(cell(i, j, previousSize)));
+            }
+        }
+
+        cells.close();
+        cells = remapped;
+    }
+
+    /**
+     * Multiple routes between the same pair of cities are combined by the
+     * addition of the semiring, so the routes added since the last build are
+     * added onto the elements built before.
+     */
+    @Override
+    public void build() {
+        ensureOpen();
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
+            invalidatePowers();
+            return;
+        }
+
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
+        invalidatePowers();
+
+        int size = getMatrixDimensions();
+        for (Route route : routes) {
+            long cell = cell(getCityOrdinal(route.getSourceCity()),
+                    getCityOrdinal(route.getDestinationCity()), size);
+            cells.set(cell,
+                    addElements(cells.get(cell), semiring.valueOf(route)));
+        }
+    }
+
+    @Override
+    protected Long getMatrixElement(int row, int column) {
+        ensureOpen();
+        long value = cells.get(cell(row, column, getMatrixDimensions()));
+        return value == semiring.zero() ? null : Long.valueOf(value);
+    }
+
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity, Long element) {
+        ensureOpen();
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+        cells.set(
+                cell(getCityOrdinal(rowCity), getCityOrdinal(columnCity),
+                        getMatrixDimensions()), element == null ? semiring
+                        .zero() : element.longValue());
+    }
+
+    private OffHeapLongRouteMatrix newOffHeapInstance() {
+        OffHeapLongRouteMatrix matrix = (OffHeapLongRouteMatrix) newMatrixInstance();
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        return matrix;
+    }
+
+    /**
+     * Copy this matrix into its own memory.
+     */
+    private OffHeapLongRouteMatrix copy() {
+        OffHeapLongRouteMatrix copy = newOffHeapInstance();
+        for (long c = 0; c < cells.length(); c++) {
+            copy.cells.set(c, cells.get(c));
+        }
+
+        return copy;
+    }
+
+    private boolean isCompatible(RouteMatrix<Long> routeMatrix) {
+        return routeMatrix instanceof OffHeapLongRouteMatrix
+                && ((OffHeapLongRouteMatrix) routeMatrix).semiring == semiring;
+    }
+
+    /**
+     * The row -> cursor -> column loop of <code>SemiringKernels</code>. Each
+     * row of the product is accumulated on the heap and then written out at
+     * once, and rows are split across threads by {@link ParallelRows}.
+     */
+    @Override
+    public RouteMatrix<Long> multiply(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        ensureOpen();
+        validateOperand(routeMatrix, "multiply");
+
+        final OffHeapLongArray multiplicand = cells;
+        final OffHeapLongArray multiplier = ((OffHeapLongRouteMatrix) routeMatrix).cells;
+        final OffHeapLongRouteMatrix product = newOffHeapInstance();
+        final int size = getMatrixDimensions();
+        final long zero = semiring.zero();
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                long[] row = new long[size];
+                for (int i = rowStart; i < rowEnd; i++) {
+                    Arrays.fill(row, zero);
+                    for (int k = 0; k < size; k++) {
+                        long value = multiplicand.get(cell(i, k, size));
+                        if (value == zero) {
+                            continue;
+                        }
+
+                        long cursorOffset = cell(k, 0, size);
+                        for (int j = 0; j < size; j++) {
+                            long element = multiplier.get(cursorOffset + j);
+                            if (element != zero) {
+                                row[j] = addElements(row[j],
+                                        multiplyElements(value, element));
+                            }
+                        }
+                    }
+
+                    long rowOffset = cell(i, 0, size);
+                    for (int j = 0; j < size; j++) {
+                        product.cells.set(rowOffset + j, row[j]);
+                    }
+                }
+            }
+        });
+
+        return product;
+    }
+
+    @Override
+    public RouteMatrix<Long> add(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        ensureOpen();
+        validateOperand(routeMatrix, "add");
+
+        final OffHeapLongArray addend = cells;
+        final OffHeapLongArray augend = ((OffHeapLongRouteMatrix) routeMatrix).cells;
+        final OffHeapLongRouteMatrix sum = newOffHeapInstance();
+        final int size = getMatrixDimensions();
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                for (long c = cell(rowStart, 0, size); c < cell(rowEnd, 0,
+                        size); c++) {
+                    sum.cells.set(c, addElements(addend.get(c), augend.get(c)));
+                }
+            }
+        });
+
+        return sum;
+    }
+
+    /**
+     * Warshall's algorithm generalized to semirings, the same as the one of
+     * <code>SemiringKernels</code>, applied in place on a copy of this matrix.
+     * For each cursor, its own row is relaxed first, and then the other rows
+     * are relaxed across threads by {@link ParallelRows}, each read and
+     * written in bulk. The rows before the cursor are relaxed through the
+     * cursor row as it was before, and those after it through the relaxed
+     * one, the same as the sequential order, so the result does not depend on
+     * the number of threads even on the counting semiring.
+     */
+    @Override
+    public RouteMatrix<Long> getMatrixTransitiveClosure() {
+        ensureOpen();
+        OffHeapLongRouteMatrix closure = copy();
+        final OffHeapLongArray matrix = closure.cells;
+
+        final int size = getMatrixDimensions();
+        final long zero = semiring.zero();
+        final long[] previousCursorRow = new long[size];
+        final long[] cursorRow = new long[size];
+        for (int k = 0; k < size; k++) {
+            final int cursor = k;
+            matrix.get(cell(k, 0, size), previousCursorRow, 0, size);
+            System.arraycopy(previousCursorRow, 0, cursorRow, 0, size);
+            relax(cursorRow, cursor, cursorRow);
+            matrix.set(cell(k, 0, size), cursorRow, 0, size);
+
+            ParallelRows.run(size, new ParallelRows.Body() {
+                @Override
+                public void compute(int rowStart, int rowEnd) {
+                    long[] row = new long[size];
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        long rowOffset = cell(i, 0, size);
+                        if (i == cursor
+                                || matrix.get(rowOffset + cursor) == zero) {
+                            continue;
+                        }
+
+                        matrix.get(rowOffset, row, 0, size);
+                        relax(row, cursor, i < cursor ? previousCursorRow
+                                : cursorRow);
+                        matrix.set(rowOffset, row, 0, size);
+                    }
+                }
+            });
+        }
+
+        return closure;
+    }
+
+    /**
+     * Relax a row through the cursor, whose row may be the same array.
+     */
+    private void relax(long[] row, int cursor, long[] cursorRow) {
+        long zero = semiring.zero();
+        long value = row[cursor];
+        if (value == zero) {
+            return;
+        }
+
+        for (int j = 0; j < row.length; j++) {
+            if (cursorRow[j] != zero) {
+                row[j] = addElements(row[j],
+                        multiplyElements(value, cursorRow[j]));
+            }
+            if (j == cursor) {
+                // The element (i, k) itself is relaxed in place.
+                value = row[cursor];
+            }
+        }
+    }
+
+    /**
+     * Multiply the binary powers, closing the intermediate products which are
+     * not cached. A cached power is copied, so closing the result never closes
+     * the cache.
+     */
+    @Override
+    public RouteMatrix<Long> power(int exponent) {
+        if (exponent <= 0) {
+            throw new UnsupportedOperationException(
+                    "In current implementation, the exponent should be a positive integer.");
+        }
+
+        ensureOpen();
+        RouteMatrix<Long> result = null;
+        boolean cached = true;
+        for (int index = 0; exponent > 0; index++, exponent >>>= 1) {
+            if ((exponent & 1) != 0) {
+                RouteMatrix<Long> binaryPower = getBinaryPower(index);
+                if (result == null) {
+                    result = binaryPower;
+                    continue;
+                }
+
+                RouteMatrix<Long> product = result.multiply(binaryPower);
+                if (!cached) {
+                    ((OffHeapLongRouteMatrix) result).close();
+                }
+                result = product;
+                cached = false;
+            }
+        }
+
+        return cached ? ((OffHeapLongRouteMatrix) result).copy() : result;
+    }
+
+    /**
+     * The same recursive doubling as <code>AbstractRouteMatrix</code>, closing
+     * the intermediate powers and sums as soon as they are replaced.
+     */
+    @Override
+    public RouteMatrix<Long> powerSum(int exponent) {
+        if (exponent <= 0) {
+            throw new UnsupportedOperationException(
+                    "In current implementation, the exponent should be a positive integer.");
+        }
+
+        ensureOpen();
+        // S(1) = A^1 = A
+        OffHeapLongRouteMatrix sum = this;
+        OffHeapLongRouteMatrix power = this;
+        for (int bit = Integer.highestOneBit(exponent) >>> 1; bit > 0; bit >>>= 1) {
+            OffHeapLongRouteMatrix product = (OffHeapLongRouteMatrix) power
+                    .multiply(sum);
+            sum = replace(sum, sum.add(product));
+            product.close();
+            power = replace(power, power.multiply(power));
+            if ((exponent & bit) != 0) {
+                power = replace(power, power.multiply(this));
+                sum = replace(sum, sum.add(power));
+            }
+        }
+
+        replace(power, null);
+        return sum == this ? copy() : sum;
+    }
+
+    /**
+     * Close an intermediate matrix unless it is this one.
+     *
+     * @return The matrix replacing it.
+     */
+    private OffHeapLongRouteMatrix replace(OffHeapLongRouteMatrix previous,
+            RouteMatrix<Long> next) {
+        if (previous != this) {
+            previous.close();
+        }
+
+        return (OffHeapLongRouteMatrix) next;
+    }
+
+    @Override
+    public RouteMatrix<Long> getAdditionIdentify() {
+        return newOffHeapInstance();
+    }
+
+    @Override
+    protected void releasePower(RouteMatrix<Long> power) {
+        if (power instanceof OffHeapLongRouteMatrix) {
+            ((OffHeapLongRouteMatrix) power).close();
+        }
+    }
+
+    /**
+     * Free the memory of this matrix and its cached powers.
+     */
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+
+        invalidatePowers();
+        cells.close();
+    }
+
+    @Override
+    protected Long elementMultiply(Long multiplicand, Long multiplier) {
+        if (multiplicand == null || multiplier == null) {
+            return null;
+        }
+
+        long product = multiplyElements(multiplicand, multiplier);
+        return product == semiring.zero() ? null : Long.valueOf(product);
+    }
+
+    @Override
+    protected Long elementAdd(Long addend, Long augend) {
+        if (addend == null) {
+            return augend;
+        }
+
+        if (augend == null) {
+            return addend;
+        }
+
+        long sum = addElements(addend, augend);
+        return sum == semiring.zero() ? null : Long.valueOf(sum);
+    }
+
+    @Override
+    protected RouteMatrix<Long> newMatrixInstance() {
+        return new OffHeapLongRouteMatrix(semiring);
+    }
+
+    @Override
+    protected Long extractMatrixElement(Route route) {
+        return semiring.valueOf(route);
+    }
+
+    @Override
+    protected Long getIdentifyElement() {
+        return semiring.one();
+    }
+}
@@ -0,0 +1,78 @@
+package org.shizhz.matrix;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Split the rows of a matrix operation into blocks, which are run on the pool
+ * of {@link KernelConfig} if the matrix is large enough, or on the calling
+ * thread otherwise. Each row is computed by exactly one block in the same
+ * order as a sequential run, so the result does not depend on the number of
+ * threads.
+ *
+ * @author shizhz
+ *
+ */
+final class ParallelRows {
+
+    /**
+     * The computation of a range of rows, which must not write any row out of
+     * the range.
+     */
+    interface Body {
+        void compute(int rowStart, int rowEnd);
+    }
+
+    private static class RowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Body body;
+
+        private final int rowStart;
+
+        private final int rowEnd;
+
+        private final int grain;
+
+        RowsTask(Body body, int rowStart, int rowEnd, int grain) {
+            this.body = body;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (rowEnd - rowStart <= grain) {
+                body.compute(rowStart, rowEnd);
+                return;
+            }
+
+            int middle = (rowStart + rowEnd) >>> 1;
+            invokeAll(new RowsTask(body, rowStart, middle, grain),
+                    new RowsTask(body, middle, rowEnd, grain));
+        }
+    }
+
+    private ParallelRows() {
+    }
+
+    static void run(int size, Body body) {
+        run(size, size, body);
+    }
+
+    /**
+     * Split the given amount of independent tasks of an operation on a matrix
+     * with the given dimension, such as the blocks of a tiled matrix. The
+     * body is invoked with ranges of task indexes instead of rows.
+     */
+    static void run(int size, int amount, Body body) {
+        if (!KernelConfig.isParallel(size) || amount <= 1) {
+            body.compute(0, amount);
+            return;
+        }
+
+        // A few blocks per thread to balance rows of different density.
+        int grain = Math.max(1, amount / (KernelConfig.getParallelism() * 4));
+        KernelConfig.getPool().invoke(new RowsTask(body, 0, amount, grain));
+    }
+}
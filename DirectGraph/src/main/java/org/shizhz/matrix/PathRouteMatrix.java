@@ -2,7 +2,7 @@ package org.shizhz.matrix;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -73,7 +73,10 @@ public class PathRouteMatrix extends AbstractRouteMatrix<List<Route>> {
             }
         }
 
-        Set<Route> result = new HashSet<Route>();
+        // Keep the order of the routes, so the result does not depend on
+        // their hash codes.
+        Set<Route> result = new LinkedHashSet<Route>(
+                (addend.size() + augend.size()) * 4 / 3 + 1);
         result.addAll(addend);
         result.addAll(augend);
 
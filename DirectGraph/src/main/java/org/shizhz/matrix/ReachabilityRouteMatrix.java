@@ -0,0 +1,261 @@
+package org.shizhz.matrix;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * The element in this matrix tells whether there is any route between two
+ * cities: <code>Boolean.TRUE</code> for yes and <code>null</code> for no.
+ * <p>
+ * Each row is kept as a bitset in a <code>long[]</code>, indexed by the
+ * ordinals of the sorted cities. Multiplication and transitive closure merge
+ * whole rows by OR-ing 64 elements at a time, so the transitive closure costs
+ * O(n^3 / 64).
+ *
+ * @author shizhz
+ *
+ */
+public class ReachabilityRouteMatrix extends AbstractRouteMatrix<Boolean> {
+
+    private long[][] rows = new long[0][];
+
+    public ReachabilityRouteMatrix() {
+    }
+
+    public static RouteMatrix<Boolean> newInstance() {
+        return new ReachabilityRouteMatrix();
+    }
+
+    private static int words(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    private static boolean get(long[] row, int column) {
+        return (row[column >>> 6] & (1L << column)) != 0;
+    }
+
+    private static void set(long[] row, int column) {
+        row[column >>> 6] |= 1L << column;
+    }
+
+    private static void or(long[] target, long[] source) {
+        for (int w = 0; w < target.length; w++) {
+            target[w] |= source[w];
+        }
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        List<City> previousCities = getMatrixRouteCities();
+        super.addMatrixRouteCities(cities);
+
+        int size = getMatrixDimensions();
+        if (previousCities.size() == size) {
+            return;
+        }
+
+        // Cities are kept sorted, so the ordinals of the existing cities may
+        // have been shifted by the new ones.
+        int previousSize = previousCities.size();
+        long[][] remapped = new long[size][words(size)];
+        for (int i = 0; i < previousSize; i++) {
+            long[] target = remapped[getCityOrdinal(previousCities.get(i))];
+            for (int j = 0; j < previousSize; j++) {
+                if (get(rows[i], j)) {
+                    set(target, getCityOrdinal(previousCities.get(j)));
+                }
+            }
+        }
+
+        rows = remapped;
+    }
+
+    /**
+     * The routes added since the last build are set onto the rows built
+     * before.
+     */
+    @Override
+    public void build() {
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
+            invalidatePowers();
+            return;
+        }
+
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
+        invalidatePowers();
+
+        for (Route route : routes) {
+            set(rows[getCityOrdinal(route.getSourceCity())],
+                    getCityOrdinal(route.getDestinationCity()));
+        }
+    }
+
+    /**
+     * Whether there is any route from one city to the other in this matrix.
+     */
+    public boolean isReachable(City rowCity, City columnCity) {
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        return row >= 0 && column >= 0 && get(rows[row], column);
+    }
+
+    @Override
+    protected Boolean getMatrixElement(int row, int column) {
+        return get(rows[row], column) ? Boolean.TRUE : null;
+    }
+
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity, Boolean element) {
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+        int column = getCityOrdinal(columnCity);
+        long[] row = rows[getCityOrdinal(rowCity)];
+        if (Boolean.TRUE.equals(element)) {
+            set(row, column);
+        } else {
+            row[column >>> 6] &= ~(1L << column);
+        }
+    }
+
+    @Override
+    protected int nextColumn(int row, int column) {
+        long[] bits = rows[row];
+        int word = column >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+
+        // Skip the bits before the column in its word.
+        long remaining = bits[word] & (-1L << column);
+        while (remaining == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            remaining = bits[word];
+        }
+
+        return (word << 6) + Long.numberOfTrailingZeros(remaining);
+    }
+
+    private ReachabilityRouteMatrix newReachabilityInstance() {
+        ReachabilityRouteMatrix matrix = (ReachabilityRouteMatrix) newMatrixInstance();
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        return matrix;
+    }
+
+    @Override
+    public RouteMatrix<Boolean> multiply(RouteMatrix<Boolean> routeMatrix) {
+        if (!(routeMatrix instanceof ReachabilityRouteMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "multiply");
+
+        // Row i of the product is the union of the rows k of the multiplier,
+        // for all k reachable from i.
+        long[][] multiplier = ((ReachabilityRouteMatrix) routeMatrix).rows;
+        ReachabilityRouteMatrix product = newReachabilityInstance();
+        for (int i = 0; i < rows.length; i++) {
+            long[] row = rows[i];
+            for (int w = 0; w < row.length; w++) {
+                for (long word = row[w]; word != 0; word &= word - 1) {
+                    int k = (w << 6) + Long.numberOfTrailingZeros(word);
+                    or(product.rows[i], multiplier[k]);
+                }
+            }
+        }
+
+        return product;
+    }
+
+    @Override
+    public RouteMatrix<Boolean> add(RouteMatrix<Boolean> routeMatrix) {
+        if (!(routeMatrix instanceof ReachabilityRouteMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "add");
+
+        long[][] augend = ((ReachabilityRouteMatrix) routeMatrix).rows;
+        ReachabilityRouteMatrix sum = newReachabilityInstance();
+        for (int i = 0; i < rows.length; i++) {
+            or(sum.rows[i], rows[i]);
+            or(sum.rows[i], augend[i]);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Warshall's algorithm on bitsets: once k is reachable from i, all cities
+     * reachable from k are reachable from i as well. For each k, the rows are
+     * split across threads by {@link ParallelRows}: the row k itself is not
+     * changed by its own step, so the other rows read it safely.
+     */
+    @Override
+    public RouteMatrix<Boolean> getMatrixTransitiveClosure() {
+        ReachabilityRouteMatrix closure = newReachabilityInstance();
+        for (int i = 0; i < rows.length; i++) {
+            or(closure.rows[i], rows[i]);
+        }
+
+        final long[][] closureRows = closure.rows;
+        for (int k = 0; k < closureRows.length; k++) {
+            final int cursorOrdinal = k;
+            final long[] cursor = closureRows[k];
+            ParallelRows.run(closureRows.length, new ParallelRows.Body() {
+                @Override
+                public void compute(int rowStart, int rowEnd) {
+                    for (int i = rowStart; i < rowEnd; i++) {
+                        if (get(closureRows[i], cursorOrdinal)) {
+                            or(closureRows[i], cursor);
+                        }
+                    }
+                }
+            });
+        }
+
+        return closure;
+    }
+
+    @Override
+    public RouteMatrix<Boolean> getAdditionIdentify() {
+        return newReachabilityInstance();
+    }
+
+    @Override
+    protected Boolean elementMultiply(Boolean multiplicand, Boolean multiplier) {
+        return multiplicand != null && multiplier != null ? Boolean.TRUE
+                : null;
+    }
+
+    @Override
+    protected Boolean elementAdd(Boolean addend, Boolean augend) {
+        return addend != null || augend != null ? Boolean.TRUE : null;
+    }
+
+    @Override
+    protected RouteMatrix<Boolean> newMatrixInstance() {
+        return ReachabilityRouteMatrix.newInstance();
+    }
+
+    @Override
+    protected Boolean extractMatrixElement(Route route) {
+        return Boolean.TRUE;
+    }
+
+    @Override
+    protected Boolean getIdentifyElement() {
+        return Boolean.TRUE;
+    }
+}
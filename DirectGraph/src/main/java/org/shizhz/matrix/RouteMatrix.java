@@ -42,16 +42,27 @@ public interface RouteMatrix<T> {
      */
     RouteMatrix<T> power(int exponent);
 
+    /**
+     * The sum of the powers of RouteMatrix with exponents from 1 to the given
+     * one, i.e. <code>A + A^2 + ... + A^exponent</code>.
+     * <p>
+     * The exponent should be a positive integer currently.
+     * 
+     * @param exponent
+     * @return The sum of powers.
+     */
+    RouteMatrix<T> powerSum(int exponent);
+
     /**
      * Get row from matrix for the specified city, which contains all routes
      * starting from the specified city.
      * 
      * @param city
      *            Source city
-     * @return A map of Route list. All routes contained in the result list have
-     *         the same source city.
+     * @return A read-only map of Route list. All routes contained in the
+     *         result list have the same source city.
      *         <p>
-     *         null if the city is not in the matrix.
+     *         empty if the city is not in the matrix.
      */
     Map<City, T> getMatrixRow(City city);
 
@@ -61,10 +72,10 @@ public interface RouteMatrix<T> {
      * 
      * @param city
      *            Destination city
-     * @return A map of Route list. All routes contained in the result list have
-     *         the same destination city.
+     * @return A read-only map of Route list. All routes contained in the
+     *         result list have the same destination city.
      *         <p>
-     *         null if the city is not in the matrix.
+     *         empty if the city is not in the matrix.
      */
     Map<City, T> getMatrixColumn(City city);
 
@@ -105,7 +116,8 @@ public interface RouteMatrix<T> {
     void setMatrixElement(City rowCity, City columnCity, T element);
 
     /**
-     * Trigger to build this matrix.
+     * Trigger to build this matrix, applying the routes added since the last
+     * build.
      */
     void build();
 
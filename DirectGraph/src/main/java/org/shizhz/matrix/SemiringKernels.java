@@ -0,0 +1,929 @@
+package org.shizhz.matrix;
+
+import java.math.BigInteger;
+
+/**
+ * Matrix kernels written once against {@link IntSemiring} and
+ * {@link LongSemiring}. Matrices are square and kept in row-major arrays.
+ * <p>
+ * The zero of a semiring annihilates by multiplication and is the identity of
+ * addition, so the kernels skip it in the outer loops. The loop order of
+ * multiplication is row -> cursor -> column, to scan both the product row and
+ * the multiplier row sequentially.
+ * <p>
+ * Matrices large enough according to {@link KernelConfig} are processed by
+ * square tiles, so that the rows of a tile of the multiplier are still in
+ * cache when they are scanned again for the next row of the product. Rows of
+ * the product and the sum are split across threads by {@link ParallelRows}.
+ * <p>
+ * The inner loops on the counting, min-plus and boolean semirings are
+ * replaced by the ones of {@link VectorKernels}, which are vectorized by the
+ * JIT compiler.
+ * <p>
+ * Counts may overflow <code>long</code>, which the generic kernels do not
+ * detect. Callers check <code>countsFit</code> first, and go through the
+ * checked counting kernels otherwise, which keep the overflowing elements in
+ * <code>BigInteger</code> side tables, the same as
+ * <code>SparseLongRouteMatrix</code>.
+ *
+ * @author shizhz
+ *
+ */
+final class SemiringKernels {
+
+    private SemiringKernels() {
+    }
+
+    /**
+     * Accumulate the product of two matrices into <code>product</code>, which
+     * is supposed to be filled with the zero of the semiring. Counts are
+     * supposed to fit in <code>long</code> by <code>countsFit</code>, which is
+     * left to the callers so that the operands are not scanned twice, or they
+     * wrap around. Strassen's algorithm is exact modulo 2^64, so it wraps
+     * around the same as the classical kernel.
+     */
+    static void multiply(LongSemiring semiring, long[] multiplicand,
+            long[] multiplier, long[] product, int size) {
+        if (semiring == LongSemiring.COUNTING
+                && size >= KernelConfig.getStrassenThreshold()) {
+            long[] result = strassen(multiplicand, multiplier, size);
+            // The product is filled with zero, so it's the same to
+            // accumulate or copy.
+            System.arraycopy(result, 0, product, 0, result.length);
+            return;
+        }
+
+        multiplyClassical(semiring, multiplicand, multiplier, product, size);
+    }
+
+    private static void multiplyClassical(final LongSemiring semiring,
+            final long[] multiplicand, final long[] multiplier,
+            final long[] product, final int size) {
+        final boolean tiled = KernelConfig.isTiled(size);
+        final int blockSize = KernelConfig.getBlockSize();
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                if (tiled) {
+                    multiplyTiled(semiring, multiplicand, multiplier, product,
+                            size, blockSize, rowStart, rowEnd);
+                } else {
+                    multiplyRows(semiring, multiplicand, multiplier, product,
+                            size, rowStart, rowEnd);
+                }
+            }
+        });
+    }
+
+    static void multiplyRows(LongSemiring semiring, long[] multiplicand,
+            long[] multiplier, long[] product, int size) {
+        multiplyRows(semiring, multiplicand, multiplier, product, size, 0,
+                size);
+    }
+
+    private static void multiplyRows(LongSemiring semiring, long[] multiplicand,
+            long[] multiplier, long[] product, int size, int rowStart,
+            int rowEnd) {
+        long zero = semiring.zero();
+        boolean vectorized = VectorKernels.supports(semiring);
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowOffset = i * size;
+            for (int k = 0; k < size; k++) {
+                long value = multiplicand[rowOffset + k];
+                if (value == zero) {
+                    continue;
+                }
+
+                int cursorOffset = k * size;
+                if (vectorized) {
+                    VectorKernels.multiplyAccumulate(semiring, value,
+                            multiplier, cursorOffset, product, rowOffset, size);
+                    continue;
+                }
+
+                for (int j = 0; j < size; j++) {
+                    product[rowOffset + j] = semiring.add(product[rowOffset
+                            + j], semiring.multiply(value,
+                            multiplier[cursorOffset + j]));
+                }
+            }
+        }
+    }
+
+    /**
+     * The same as <code>multiplyRows</code>, but the row, cursor and column
+     * ranges are split into blocks of the given size.
+     */
+    static void multiplyTiled(LongSemiring semiring, long[] multiplicand,
+            long[] multiplier, long[] product, int size, int blockSize) {
+        multiplyTiled(semiring, multiplicand, multiplier, product, size,
+                blockSize, 0, size);
+    }
+
+    private static void multiplyTiled(LongSemiring semiring, long[] multiplicand,
+            long[] multiplier, long[] product, int size, int blockSize,
+            int rowStart, int rowEnd) {
+        long zero = semiring.zero();
+        boolean vectorized = VectorKernels.supports(semiring);
+        for (int rowBlock = rowStart; rowBlock < rowEnd; rowBlock += blockSize) {
+            int rowBlockEnd = Math.min(rowBlock + blockSize, rowEnd);
+            for (int cursorBlock = 0; cursorBlock < size; cursorBlock += blockSize) {
+                int cursorEnd = Math.min(cursorBlock + blockSize, size);
+                for (int columnBlock = 0; columnBlock < size; columnBlock += blockSize) {
+                    int columnEnd = Math.min(columnBlock + blockSize, size);
+                    for (int i = rowBlock; i < rowBlockEnd; i++) {
+                        int rowOffset = i * size;
+                        for (int k = cursorBlock; k < cursorEnd; k++) {
+                            long value = multiplicand[rowOffset + k];
+                            if (value == zero) {
+                                continue;
+                            }
+
+                            int cursorOffset = k * size;
+                            if (vectorized) {
+                                VectorKernels.multiplyAccumulate(semiring,
+                                        value, multiplier, cursorOffset
+                                                + columnBlock, product,
+                                        rowOffset + columnBlock, columnEnd
+                                                - columnBlock);
+                                continue;
+                            }
+
+                            for (int j = columnBlock; j < columnEnd; j++) {
+                                product[rowOffset + j] = semiring.add(
+                                        product[rowOffset + j],
+                                        semiring.multiply(value,
+                                                multiplier[cursorOffset + j]));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static void add(final LongSemiring semiring, final long[] addend,
+            final long[] augend, final long[] sum, final int size) {
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                for (int i = rowStart * size; i < rowEnd * size; i++) {
+                    sum[i] = semiring.add(addend[i], augend[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Whether no element of the counting product of two matrices may overflow
+     * <code>long</code>. Each element of the product is bounded by the largest
+     * row sum of the multiplicand times the largest element of the
+     * multiplier. Negative elements never fit.
+     */
+    static boolean countsFit(long[] multiplicand, long[] multiplier, int size) {
+        long maxRowSum = 0;
+        for (int i = 0; i < size; i++) {
+            long rowSum = 0;
+            for (int k = i * size; k < (i + 1) * size; k++) {
+                rowSum += multiplicand[k];
+                if (multiplicand[k] < 0 || rowSum < 0) {
+                    return false;
+                }
+            }
+            maxRowSum = Math.max(maxRowSum, rowSum);
+        }
+
+        long maxElement = 0;
+        for (long element : multiplier) {
+            if (element < 0) {
+                return false;
+            }
+            maxElement = Math.max(maxElement, element);
+        }
+
+        return SparseLongRouteMatrix.multiplyCounts(maxRowSum, maxElement) >= 0;
+    }
+
+    private static boolean isExact(BigInteger[] exactElements, int index) {
+        return exactElements != null && exactElements[index] != null;
+    }
+
+    private static BigInteger exactOf(long element, BigInteger[] exactElements,
+            int index) {
+        return isExact(exactElements, index) ? exactElements[index]
+                : BigInteger.valueOf(element);
+    }
+
+    /**
+     * Join the exact rows computed by each thread into one side table.
+     *
+     * @return The side table, or null if no element overflows.
+     */
+    private static BigInteger[] join(BigInteger[][] exactRows, int size) {
+        BigInteger[] exactElements = null;
+        for (int i = 0; i < size; i++) {
+            if (exactRows[i] == null) {
+                continue;
+            }
+
+            if (exactElements == null) {
+                exactElements = new BigInteger[size * size];
+            }
+            System.arraycopy(exactRows[i], 0, exactElements, i * size, size);
+        }
+
+        return exactElements;
+    }
+
+    /**
+     * The classical kernel on the counting semiring, which detects overflows
+     * of <code>long</code>. The overflowing elements of the product are
+     * saturated to <code>Long.MAX_VALUE</code>, and their exact values are
+     * returned in a side table, so are those of the operands taken.
+     *
+     * @param exactMultiplicand
+     *            The exact elements of the multiplicand, or null if none.
+     * @param exactMultiplier
+     *            The exact elements of the multiplier, or null if none.
+     * @return The exact elements of the product, or null if none overflows.
+     */
+    static BigInteger[] multiplyCounts(final long[] multiplicand,
+            final BigInteger[] exactMultiplicand, final long[] multiplier,
+            final BigInteger[] exactMultiplier, final long[] product,
+            final int size) {
+        // Each row of the side table is only written by the thread computing
+        // the same row of the product.
+        final BigInteger[][] exactRows = new BigInteger[size][];
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                for (int i = rowStart; i < rowEnd; i++) {
+                    int rowOffset = i * size;
+                    BigInteger[] exactRow = null;
+                    for (int k = 0; k < size; k++) {
+                        long value = multiplicand[rowOffset + k];
+                        if (value == 0) {
+                            continue;
+                        }
+
+                        boolean exact = isExact(exactMultiplicand, rowOffset
+                                + k);
+                        int cursorOffset = k * size;
+                        for (int j = 0; j < size; j++) {
+                            long element = multiplier[cursorOffset + j];
+                            if (element == 0) {
+                                continue;
+                            }
+
+                            long term = SparseLongRouteMatrix.multiplyCounts(
+                                    value, element);
+                            long sum = product[rowOffset + j] + term;
+                            if (term >= 0 && sum >= 0 && !exact
+                                    && !isExact(exactMultiplier, cursorOffset
+                                            + j) && !isExact(exactRow, j)) {
+                                product[rowOffset + j] = sum;
+                                continue;
+                            }
+
+                            if (exactRow == null) {
+                                exactRow = new BigInteger[size];
+                            }
+                            exactRow[j] = exactOf(product[rowOffset + j],
+                                    exactRow, j).add(
+                                    exactOf(value, exactMultiplicand,
+                                            rowOffset + k).multiply(
+                                            exactOf(element, exactMultiplier,
+                                                    cursorOffset + j)));
+                            product[rowOffset + j] = Long.MAX_VALUE;
+                        }
+                    }
+                    exactRows[i] = exactRow;
+                }
+            }
+        });
+
+        return join(exactRows, size);
+    }
+
+    /**
+     * Addition on the counting semiring, which detects overflows the same as
+     * <code>multiplyCounts</code>.
+     *
+     * @return The exact elements of the sum, or null if none overflows.
+     */
+    static BigInteger[] addCounts(final long[] addend,
+            final BigInteger[] exactAddend, final long[] augend,
+            final BigInteger[] exactAugend, final long[] sum, final int size) {
+        final BigInteger[][] exactRows = new BigInteger[size][];
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                for (int i = rowStart; i < rowEnd; i++) {
+                    BigInteger[] exactRow = null;
+                    for (int j = 0; j < size; j++) {
+                        int cell = i * size + j;
+                        sum[cell] = addend[cell] + augend[cell];
+                        if (sum[cell] >= 0 && !isExact(exactAddend, cell)
+                                && !isExact(exactAugend, cell)) {
+                            continue;
+                        }
+
+                        if (exactRow == null) {
+                            exactRow = new BigInteger[size];
+                        }
+                        exactRow[j] = exactOf(addend[cell], exactAddend, cell)
+                                .add(exactOf(augend[cell], exactAugend, cell));
+                        sum[cell] = Long.MAX_VALUE;
+                    }
+                    exactRows[i] = exactRow;
+                }
+            }
+        });
+
+        return join(exactRows, size);
+    }
+
+    /**
+     * The relaxation of the elements in the given rows and columns through the
+     * given cursors, in the order of Warshall's algorithm.
+     */
+    private interface Relaxation {
+        void relax(int cursorStart, int cursorEnd, int rowStart, int rowEnd,
+                int columnStart, int columnEnd);
+    }
+
+    /**
+     * Blocked Warshall's algorithm. For each block of cursors, the diagonal
+     * block is closed first, then the blocks in the same row and column as it,
+     * and at last all the other blocks, each of which only depends on the
+     * blocks of the former two phases.
+     * <p>
+     * The blocks of the second phase, and those of the third one, do not
+     * depend on each other, so each phase is split across threads by
+     * {@link ParallelRows}. Each block is still relaxed in the same order,
+     * so the result does not depend on the number of threads.
+     */
+    private static void closureBlocked(final int size, final int blockSize,
+            final Relaxation relaxation) {
+        final int blocks = (size + blockSize - 1) / blockSize;
+        for (int cursorBlock = 0; cursorBlock < size; cursorBlock += blockSize) {
+            final int cursorStart = cursorBlock;
+            final int cursorEnd = Math.min(cursorBlock + blockSize, size);
+
+            relaxation.relax(cursorStart, cursorEnd, cursorStart, cursorEnd,
+                    cursorStart, cursorEnd);
+
+            // Task 2b is the block b in the row of the diagonal block, and
+            // task 2b + 1 is the block b in its column.
+            ParallelRows.run(size, 2 * blocks, new ParallelRows.Body() {
+                @Override
+                public void compute(int taskStart, int taskEnd) {
+                    for (int task = taskStart; task < taskEnd; task++) {
+                        int block = (task >>> 1) * blockSize;
+                        if (block == cursorStart) {
+                            continue;
+                        }
+
+                        int blockEnd = Math.min(block + blockSize, size);
+                        if ((task & 1) == 0) {
+                            relaxation.relax(cursorStart, cursorEnd,
+                                    cursorStart, cursorEnd, block, blockEnd);
+                        } else {
+                            relaxation.relax(cursorStart, cursorEnd,
+                                    block, blockEnd, cursorStart, cursorEnd);
+                        }
+                    }
+                }
+            });
+
+            ParallelRows.run(size, blocks * blocks, new ParallelRows.Body() {
+                @Override
+                public void compute(int taskStart, int taskEnd) {
+                    for (int task = taskStart; task < taskEnd; task++) {
+                        int rowBlock = task / blocks * blockSize;
+                        int columnBlock = task % blocks * blockSize;
+                        if (rowBlock == cursorStart
+                                || columnBlock == cursorStart) {
+                            continue;
+                        }
+
+                        relaxation.relax(cursorStart, cursorEnd, rowBlock,
+                                Math.min(rowBlock + blockSize, size),
+                                columnBlock,
+                                Math.min(columnBlock + blockSize, size));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Floyd-Warshall's algorithm on distances, applied in place, which also
+     * keeps the next hop of each shortest route: when the route through a
+     * cursor is shorter, its next hop becomes the one towards the cursor.
+     * Distances are not negative, and <code>Integer.MAX_VALUE</code> stands
+     * for no route. Large matrices go through the blocked phases across
+     * threads, which yield the same distances.
+     */
+    static void closurePaths(final int[] distances, final int[] nextHops,
+            final int size) {
+        Relaxation relaxation = new Relaxation() {
+            @Override
+            public void relax(int cursorStart, int cursorEnd, int rowStart,
+                    int rowEnd, int columnStart, int columnEnd) {
+                relaxPaths(distances, nextHops, size, cursorStart, cursorEnd,
+                        rowStart, rowEnd, columnStart, columnEnd);
+            }
+        };
+
+        if (KernelConfig.isTiled(size)) {
+            closureBlocked(size, KernelConfig.getBlockSize(), relaxation);
+        } else {
+            relaxation.relax(0, size, 0, size, 0, size);
+        }
+    }
+
+    private static void relaxPaths(int[] distances, int[] nextHops, int size,
+            int cursorStart, int cursorEnd, int rowStart, int rowEnd,
+            int columnStart, int columnEnd) {
+        for (int k = cursorStart; k < cursorEnd; k++) {
+            int cursorOffset = k * size;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int rowOffset = i * size;
+                int toCursor = distances[rowOffset + k];
+                if (toCursor == Integer.MAX_VALUE) {
+                    continue;
+                }
+
+                int hop = nextHops[rowOffset + k];
+                for (int j = columnStart; j < columnEnd; j++) {
+                    int fromCursor = distances[cursorOffset + j];
+                    if (fromCursor == Integer.MAX_VALUE) {
+                        continue;
+                    }
+
+                    // Distances are not negative, so an overflow turns the
+                    // sum negative.
+                    int distance = toCursor + fromCursor;
+                    if (distance >= 0 && distance < distances[rowOffset + j]) {
+                        distances[rowOffset + j] = distance;
+                        nextHops[rowOffset + j] = hop;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Warshall's algorithm generalized to semirings, applied in place. The
+     * blocked version is used for large matrices on idempotent semirings,
+     * where it yields the same closure.
+     */
+    static void closure(LongSemiring semiring, long[] matrix, int size) {
+        if (semiring.isIdempotent() && KernelConfig.isTiled(size)) {
+            closureBlocked(semiring, matrix, size, KernelConfig.getBlockSize());
+        } else {
+            relax(semiring, matrix, size, 0, size, 0, size, 0, size);
+        }
+    }
+
+    /**
+     * Warshall's algorithm on the counting semiring, applied in place, which
+     * detects overflows of <code>long</code> the same as
+     * <code>multiplyCounts</code>. The counting semiring is not idempotent, so
+     * the elements are relaxed one by one in the order of
+     * <code>closure</code>. On a cycle through a cursor the counts roughly
+     * square, so the exact elements of cyclic networks grow large quickly.
+     *
+     * @param exactMatrix
+     *            The exact elements of the matrix, or null if none, which is
+     *            updated in place as well.
+     * @return The exact elements of the closure, or null if none overflows.
+     */
+    static BigInteger[] closureCounts(long[] matrix, BigInteger[] exactMatrix,
+            int size) {
+        BigInteger[] exactElements = exactMatrix;
+        for (int k = 0; k < size; k++) {
+            int cursorOffset = k * size;
+            for (int i = 0; i < size; i++) {
+                int rowOffset = i * size;
+                if (matrix[rowOffset + k] == 0) {
+                    continue;
+                }
+
+                for (int j = 0; j < size; j++) {
+                    long value = matrix[rowOffset + k];
+                    long element = matrix[cursorOffset + j];
+                    if (element == 0) {
+                        continue;
+                    }
+
+                    long term = SparseLongRouteMatrix.multiplyCounts(value,
+                            element);
+                    long sum = matrix[rowOffset + j] + term;
+                    if (term >= 0 && sum >= 0
+                            && !isExact(exactElements, rowOffset + k)
+                            && !isExact(exactElements, cursorOffset + j)
+                            && !isExact(exactElements, rowOffset + j)) {
+                        matrix[rowOffset + j] = sum;
+                        continue;
+                    }
+
+                    if (exactElements == null) {
+                        exactElements = new BigInteger[size * size];
+                    }
+                    exactElements[rowOffset + j] = exactOf(
+                            matrix[rowOffset + j], exactElements,
+                            rowOffset + j).add(
+                            exactOf(value, exactElements, rowOffset + k)
+                                    .multiply(
+                                            exactOf(element, exactElements,
+                                                    cursorOffset + j)));
+                    matrix[rowOffset + j] = Long.MAX_VALUE;
+                }
+            }
+        }
+
+        return exactElements;
+    }
+
+    /**
+     * Blocked Warshall's algorithm on a semiring, in the phases of the
+     * <code>closureBlocked</code> shared by all the closures.
+     */
+    static void closureBlocked(final LongSemiring semiring, final long[] matrix,
+            final int size, final int blockSize) {
+        closureBlocked(size, blockSize, new Relaxation() {
+            @Override
+            public void relax(int cursorStart, int cursorEnd, int rowStart,
+                    int rowEnd, int columnStart, int columnEnd) {
+                SemiringKernels.relax(semiring, matrix, size, cursorStart,
+                        cursorEnd, rowStart, rowEnd, columnStart, columnEnd);
+            }
+        });
+    }
+
+    /**
+     * Relax the elements in the given rows and columns through the given
+     * cursors, in the order of Warshall's algorithm.
+     */
+    private static void relax(LongSemiring semiring, long[] matrix, int size,
+            int cursorStart, int cursorEnd, int rowStart, int rowEnd,
+            int columnStart, int columnEnd) {
+        long zero = semiring.zero();
+        // Relaxing (i, k) through k keeps it unchanged on idempotent
+        // semirings, so the whole row is relaxed with the same value.
+        boolean vectorized = semiring.isIdempotent()
+                && VectorKernels.supports(semiring);
+        for (int k = cursorStart; k < cursorEnd; k++) {
+            int cursorOffset = k * size;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int rowOffset = i * size;
+                long value = matrix[rowOffset + k];
+                if (value == zero) {
+                    continue;
+                }
+
+                if (vectorized) {
+                    VectorKernels.multiplyAccumulate(semiring, value, matrix,
+                            cursorOffset + columnStart, matrix, rowOffset
+                                    + columnStart, columnEnd - columnStart);
+                    continue;
+                }
+
+                for (int j = columnStart; j < columnEnd; j++) {
+                    matrix[rowOffset + j] = semiring.add(matrix[rowOffset + j],
+                            semiring.multiply(value, matrix[cursorOffset + j]));
+                    if (j == k) {
+                        // The element (i, k) itself is relaxed in place.
+                        value = matrix[rowOffset + k];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Strassen's algorithm on counting matrices, which takes 7 instead of 8
+     * multiplications of the half matrices in each recursion. Matrices of odd
+     * dimension are padded with zero. The recursion stops at the Strassen
+     * threshold of {@link KernelConfig}, where it goes on with the blocked
+     * kernel.
+     * <p>
+     * Subtraction is involved, so intermediate elements may be negative or
+     * wrap around. Arithmetic on <code>long</code> is exact modulo 2^64 for
+     * addition, subtraction and multiplication alike, so each element of the
+     * result is exact as long as it is bounded by <code>Long.MAX_VALUE</code>,
+     * which <code>countsFit</code> checks first. Operands failing the check
+     * go through the checked classical kernel instead.
+     *
+     * @throws ArithmeticException
+     *             If any element of the product overflows <code>long</code>,
+     *             whose exact value is got by <code>multiplyCounts</code>.
+     */
+    static long[] multiplyStrassen(long[] multiplicand, long[] multiplier,
+            int size) {
+        if (countsFit(multiplicand, multiplier, size)) {
+            return strassen(multiplicand, multiplier, size);
+        }
+
+        long[] product = new long[size * size];
+        BigInteger[] exactProduct = multiplyCounts(multiplicand, null,
+                multiplier, null, product, size);
+        if (exactProduct != null) {
+            throw new ArithmeticException(
+                    "The counting product overflows long.");
+        }
+
+        return product;
+    }
+
+    private static long[] strassen(long[] multiplicand, long[] multiplier,
+            int size) {
+        if (size < KernelConfig.getStrassenThreshold()) {
+            long[] product = new long[size * size];
+            multiplyClassical(LongSemiring.COUNTING, multiplicand, multiplier,
+                    product, size);
+            return product;
+        }
+
+        if ((size & 1) != 0) {
+            long[] product = strassen(pad(multiplicand, size),
+                    pad(multiplier, size), size + 1);
+            return unpad(product, size + 1);
+        }
+
+        int half = size >>> 1;
+        long[] a11 = quadrant(multiplicand, size, 0, 0);
+        long[] a12 = quadrant(multiplicand, size, 0, half);
+        long[] a21 = quadrant(multiplicand, size, half, 0);
+        long[] a22 = quadrant(multiplicand, size, half, half);
+        long[] b11 = quadrant(multiplier, size, 0, 0);
+        long[] b12 = quadrant(multiplier, size, 0, half);
+        long[] b21 = quadrant(multiplier, size, half, 0);
+        long[] b22 = quadrant(multiplier, size, half, half);
+
+        long[] m1 = strassen(sum(a11, a22), sum(b11, b22), half);
+        long[] m2 = strassen(sum(a21, a22), b11, half);
+        long[] m3 = strassen(a11, difference(b12, b22), half);
+        long[] m4 = strassen(a22, difference(b21, b11), half);
+        long[] m5 = strassen(sum(a11, a12), b22, half);
+        long[] m6 = strassen(difference(a21, a11), sum(b11, b12), half);
+        long[] m7 = strassen(difference(a12, a22), sum(b21, b22), half);
+
+        long[] product = new long[size * size];
+        for (int i = 0; i < half; i++) {
+            int rowOffset = i * size;
+            for (int j = 0; j < half; j++) {
+                int cell = i * half + j;
+                product[rowOffset + j] = m1[cell] + m4[cell] - m5[cell]
+                        + m7[cell];
+                product[rowOffset + half + j] = m3[cell] + m5[cell];
+                product[rowOffset + half * size + j] = m2[cell] + m4[cell];
+                product[rowOffset + half * size + half + j] = m1[cell]
+                        - m2[cell] + m3[cell] + m6[cell];
+            }
+        }
+
+        return product;
+    }
+
+    private static long[] quadrant(long[] matrix, int size, int rowStart,
+            int columnStart) {
+        int half = size >>> 1;
+        long[] quadrant = new long[half * half];
+        for (int i = 0; i < half; i++) {
+            System.arraycopy(matrix, (rowStart + i) * size + columnStart,
+                    quadrant, i * half, half);
+        }
+
+        return quadrant;
+    }
+
+    private static long[] sum(long[] addend, long[] augend) {
+        long[] sum = new long[addend.length];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = addend[i] + augend[i];
+        }
+
+        return sum;
+    }
+
+    private static long[] difference(long[] minuend, long[] subtrahend) {
+        long[] difference = new long[minuend.length];
+        for (int i = 0; i < difference.length; i++) {
+            difference[i] = minuend[i] - subtrahend[i];
+        }
+
+        return difference;
+    }
+
+    private static long[] pad(long[] matrix, int size) {
+        long[] padded = new long[(size + 1) * (size + 1)];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(matrix, i * size, padded, i * (size + 1), size);
+        }
+
+        return padded;
+    }
+
+    private static long[] unpad(long[] matrix, int paddedSize) {
+        int size = paddedSize - 1;
+        long[] unpadded = new long[size * size];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(matrix, i * paddedSize, unpadded, i * size, size);
+        }
+
+        return unpadded;
+    }
+
+    /**
+     * Accumulate the product of two matrices into <code>product</code>, which
+     * is supposed to be filled with the zero of the semiring.
+     */
+    static void multiply(final IntSemiring semiring, final int[] multiplicand,
+            final int[] multiplier, final int[] product, final int size) {
+        final boolean tiled = KernelConfig.isTiled(size);
+        final int blockSize = KernelConfig.getBlockSize();
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                if (tiled) {
+                    multiplyTiled(semiring, multiplicand, multiplier, product,
+                            size, blockSize, rowStart, rowEnd);
+                } else {
+                    multiplyRows(semiring, multiplicand, multiplier, product,
+                            size, rowStart, rowEnd);
+                }
+            }
+        });
+    }
+
+    static void multiplyRows(IntSemiring semiring, int[] multiplicand,
+            int[] multiplier, int[] product, int size) {
+        multiplyRows(semiring, multiplicand, multiplier, product, size, 0,
+                size);
+    }
+
+    private static void multiplyRows(IntSemiring semiring, int[] multiplicand,
+            int[] multiplier, int[] product, int size, int rowStart,
+            int rowEnd) {
+        int zero = semiring.zero();
+        boolean vectorized = VectorKernels.supports(semiring);
+        for (int i = rowStart; i < rowEnd; i++) {
+            int rowOffset = i * size;
+            for (int k = 0; k < size; k++) {
+                int value = multiplicand[rowOffset + k];
+                if (value == zero) {
+                    continue;
+                }
+
+                int cursorOffset = k * size;
+                if (vectorized) {
+                    VectorKernels.multiplyAccumulate(semiring, value,
+                            multiplier, cursorOffset, product, rowOffset, size);
+                    continue;
+                }
+
+                for (int j = 0; j < size; j++) {
+                    product[rowOffset + j] = semiring.add(product[rowOffset
+                            + j], semiring.multiply(value,
+                            multiplier[cursorOffset + j]));
+                }
+            }
+        }
+    }
+
+    /**
+     * The same as <code>multiplyRows</code>, but the row, cursor and column
+     * ranges are split into blocks of the given size.
+     */
+    static void multiplyTiled(IntSemiring semiring, int[] multiplicand,
+            int[] multiplier, int[] product, int size, int blockSize) {
+        multiplyTiled(semiring, multiplicand, multiplier, product, size,
+                blockSize, 0, size);
+    }
+
+    private static void multiplyTiled(IntSemiring semiring, int[] multiplicand,
+            int[] multiplier, int[] product, int size, int blockSize,
+            int rowStart, int rowEnd) {
+        int zero = semiring.zero();
+        boolean vectorized = VectorKernels.supports(semiring);
+        for (int rowBlock = rowStart; rowBlock < rowEnd; rowBlock += blockSize) {
+            int rowBlockEnd = Math.min(rowBlock + blockSize, rowEnd);
+            for (int cursorBlock = 0; cursorBlock < size; cursorBlock += blockSize) {
+                int cursorEnd = Math.min(cursorBlock + blockSize, size);
+                for (int columnBlock = 0; columnBlock < size; columnBlock += blockSize) {
+                    int columnEnd = Math.min(columnBlock + blockSize, size);
+                    for (int i = rowBlock; i < rowBlockEnd; i++) {
+                        int rowOffset = i * size;
+                        for (int k = cursorBlock; k < cursorEnd; k++) {
+                            int value = multiplicand[rowOffset + k];
+                            if (value == zero) {
+                                continue;
+                            }
+
+                            int cursorOffset = k * size;
+                            if (vectorized) {
+                                VectorKernels.multiplyAccumulate(semiring,
+                                        value, multiplier, cursorOffset
+                                                + columnBlock, product,
+                                        rowOffset + columnBlock, columnEnd
+                                                - columnBlock);
+                                continue;
+                            }
+
+                            for (int j = columnBlock; j < columnEnd; j++) {
+                                product[rowOffset + j] = semiring.add(
+                                        product[rowOffset + j],
+                                        semiring.multiply(value,
+                                                multiplier[cursorOffset + j]));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    static void add(final IntSemiring semiring, final int[] addend,
+            final int[] augend, final int[] sum, final int size) {
+        ParallelRows.run(size, new ParallelRows.Body() {
+            @Override
+            public void compute(int rowStart, int rowEnd) {
+                for (int i = rowStart * size; i < rowEnd * size; i++) {
+                    sum[i] = semiring.add(addend[i], augend[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Warshall's algorithm generalized to semirings, applied in place. The
+     * blocked version is used for large matrices on idempotent semirings,
+     * where it yields the same closure.
+     */
+    static void closure(IntSemiring semiring, int[] matrix, int size) {
+        if (semiring.isIdempotent() && KernelConfig.isTiled(size)) {
+            closureBlocked(semiring, matrix, size, KernelConfig.getBlockSize());
+        } else {
+            relax(semiring, matrix, size, 0, size, 0, size, 0, size);
+        }
+    }
+
+    /**
+     * Blocked Warshall's algorithm on a semiring, in the phases of the
+     * <code>closureBlocked</code> shared by all the closures.
+     */
+    static void closureBlocked(final IntSemiring semiring, final int[] matrix,
+            final int size, final int blockSize) {
+        closureBlocked(size, blockSize, new Relaxation() {
+            @Override
+            public void relax(int cursorStart, int cursorEnd, int rowStart,
+                    int rowEnd, int columnStart, int columnEnd) {
+                SemiringKernels.relax(semiring, matrix, size, cursorStart,
+                        cursorEnd, rowStart, rowEnd, columnStart, columnEnd);
+            }
+        });
+    }
+
+    /**
+     * Relax the elements in the given rows and columns through the given
+     * cursors, in the order of Warshall's algorithm.
+     */
+    private static void relax(IntSemiring semiring, int[] matrix, int size,
+            int cursorStart, int cursorEnd, int rowStart, int rowEnd,
+            int columnStart, int columnEnd) {
+        int zero = semiring.zero();
+        // Relaxing (i, k) through k keeps it unchanged on idempotent
+        // semirings, so the whole row is relaxed with the same value.
+        boolean vectorized = semiring.isIdempotent()
+                && VectorKernels.supports(semiring);
+        for (int k = cursorStart; k < cursorEnd; k++) {
+            int cursorOffset = k * size;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int rowOffset = i * size;
+                int value = matrix[rowOffset + k];
+                if (value == zero) {
+                    continue;
+                }
+
+                if (vectorized) {
+                    VectorKernels.multiplyAccumulate(semiring, value, matrix,
+                            cursorOffset + columnStart, matrix, rowOffset
+                                    + columnStart, columnEnd - columnStart);
+                    continue;
+                }
+
+                for (int j = columnStart; j < columnEnd; j++) {
+                    matrix[rowOffset + j] = semiring.add(matrix[rowOffset + j],
+                            semiring.multiply(value, matrix[cursorOffset + j]));
+                    if (j == k) {
+                        // The element (i, k) itself is relaxed in place.
+                        value = matrix[rowOffset + k];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.shizhz.matrix;
+
+/**
+ * Used to represent the connectivities among all cities, the same as
+ * <code>DenseConnectionRouteMatrix</code>, but only the non-zero numbers of
+ * routes are kept, in compressed sparse row format.
+ *
+ * @author shizhz
+ *
+ */
+public class SparseConnectionRouteMatrix extends SparseLongRouteMatrix {
+
+    public SparseConnectionRouteMatrix() {
+        super(LongSemiring.COUNTING);
+    }
+
+    public static RouteMatrix<Long> newInstance() {
+        return new SparseConnectionRouteMatrix();
+    }
+
+    @Override
+    protected RouteMatrix<Long> newMatrixInstance() {
+        return SparseConnectionRouteMatrix.newInstance();
+    }
+}
@@ -0,0 +1,937 @@
+package org.shizhz.matrix;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+/**
+ * A route matrix whose elements are defined by a {@link LongSemiring}, with
+ * only the non-zero elements kept, in compressed sparse row (CSR) format: the
+ * columns and values of row <code>i</code> are stored in
+ * <code>[rowPointers[i], rowPointers[i + 1])</code> of
+ * <code>columnIndices</code> and <code>values</code>, sorted by column.
+ * <p>
+ * Multiplication of two sparse matrices uses Gustavson's algorithm, which
+ * only visits the non-zero elements of both operands. It suits route networks
+ * where each city only has a handful of routes to others.
+ * <p>
+ * Counts of routes grow exponentially with the stops, so with the
+ * {@link LongSemiring#COUNTING} semiring, multiplication and addition detect
+ * overflows of <code>long</code>, and only the overflowing elements are
+ * promoted to <code>BigInteger</code>, kept in a side table. Those elements
+ * are saturated to <code>Long.MAX_VALUE</code> in the primitive values, and
+ * their exact counts are got by <code>getExactMatrixElement</code>.
+ *
+ * @author shizhz
+ *
+ */
+public class SparseLongRouteMatrix extends AbstractRouteMatrix<Long> {
+
+    private final LongSemiring semiring;
+
+    private int[] rowPointers = new int[1];
+
+    private int[] columnIndices = new int[0];
+
+    private long[] values = new long[0];
+
+    /**
+     * The exact elements overflowing <code>long</code>, parallel to
+     * <code>values</code>. It is null unless any element overflows.
+     */
+    private BigInteger[] exactValues;
+
+    public SparseLongRouteMatrix(LongSemiring semiring) {
+        this.semiring = semiring;
+    }
+
+    public static RouteMatrix<Long> newInstance(LongSemiring semiring) {
+        return new SparseLongRouteMatrix(semiring);
+    }
+
+    public LongSemiring getSemiring() {
+        return semiring;
+    }
+
+    /**
+     * Build a matrix of the given cities from dense cells, indexed by the
+     * ordinals of the cities.
+     *
+     * @param exactCells
+     *            The exact elements overflowing <code>long</code>, or null if
+     *            none.
+     */
+    static SparseLongRouteMatrix fromCells(LongSemiring semiring,
+            List<City> cities, long[] cells, BigInteger[] exactCells) {
+        SparseLongRouteMatrix matrix = new SparseLongRouteMatrix(semiring);
+        matrix.addMatrixRouteCities(cities);
+
+        int size = matrix.getMatrixDimensions();
+        int amount = 0;
+        for (long value : cells) {
+            if (value != semiring.zero()) {
+                amount++;
+            }
+        }
+
+        matrix.rowPointers = new int[size + 1];
+        matrix.columnIndices = new int[amount];
+        matrix.values = new long[amount];
+        BigInteger[] exactElements = exactCells == null ? null
+                : new BigInteger[amount];
+        amount = 0;
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                long value = cells[i * size + j];
+                if (value != semiring.zero()) {
+                    matrix.columnIndices[amount] = j;
+                    matrix.values[amount] = value;
+                    if (exactElements != null) {
+                        exactElements[amount] = exactCells[i * size + j];
+                    }
+                    amount++;
+                }
+            }
+            matrix.rowPointers[i + 1] = amount;
+        }
+        matrix.exactValues = exactElements;
+
+        return matrix;
+    }
+
+    /**
+     * Copy this matrix into dense storage, along with the exact values of the
+     * counts overflowing <code>long</code>.
+     */
+    DenseLongRouteMatrix toDense() {
+        int size = getMatrixDimensions();
+        long[] cells = new long[size * size];
+        BigInteger[] exactCells = exactValues == null ? null
+                : new BigInteger[size * size];
+        Arrays.fill(cells, semiring.zero());
+        for (int i = 0; i < size; i++) {
+            for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                cells[i * size + columnIndices[p]] = values[p];
+                if (exactCells != null) {
+                    exactCells[i * size + columnIndices[p]] = exactValues[p];
+                }
+            }
+        }
+
+        return DenseLongRouteMatrix.fromCells(semiring, getMatrixRouteCities(),
+                cells, exactCells);
+    }
+
+    /**
+     * Get the number of non-zero elements kept in this matrix.
+     *
+     * @return
+     */
+    public int getNonZeroElementsAmount() {
+        return rowPointers[rowPointers.length - 1];
+    }
+
+    private boolean isCounting() {
+        return semiring == LongSemiring.COUNTING;
+    }
+
+    /**
+     * Multiply two counts of routes.
+     *
+     * @return The product, or -1 if it overflows <code>long</code>.
+     */
+    static long multiplyCounts(long multiplicand, long multiplier) {
+        if (((multiplicand | multiplier) >>> 31) == 0) {
+            return multiplicand * multiplier;
+        }
+
+        if (multiplicand == 0) {
+            return 0;
+        }
+
+        return multiplier > Long.MAX_VALUE / multiplicand ? -1 : multiplicand
+                * multiplier;
+    }
+
+    private static boolean isExact(BigInteger[] exactElements, int index) {
+        return exactElements != null && exactElements[index] != null;
+    }
+
+    private static BigInteger exactOf(long element, BigInteger[] exactElements,
+            int index) {
+        return isExact(exactElements, index) ? exactElements[index]
+                : BigInteger.valueOf(element);
+    }
+
+    /**
+     * Find the position of an element in <code>columnIndices</code>.
+     *
+     * @return The position of the element if found, otherwise
+     *         <code>(-(insertion point) - 1)</code>.
+     */
+    private int positionOf(int row, int column) {
+        return Arrays.binarySearch(columnIndices, rowPointers[row],
+                rowPointers[row + 1], column);
+    }
+
+    @Override
+    public void addMatrixRouteCities(Collection<City> cities) {
+        List<City> previousCities = getMatrixRouteCities();
+        super.addMatrixRouteCities(cities);
+
+        int size = getMatrixDimensions();
+        if (previousCities.size() == size) {
+            return;
+        }
+
+        // The ordinals of existing cities may have been shifted by the new
+        // ones. Cities are kept sorted, so the shifted ordinals keep their
+        // relative order and the columns of each row stay sorted.
+        int[] previousRowPointers = rowPointers;
+        int[] ordinals = new int[previousCities.size()];
+        int[] counts = new int[size];
+        for (int i = 0; i < previousCities.size(); i++) {
+            ordinals[i] = getCityOrdinal(previousCities.get(i));
+            counts[ordinals[i]] = previousRowPointers[i + 1]
+                    - previousRowPointers[i];
+        }
+
+        int[] remappedRowPointers = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            remappedRowPointers[i + 1] = remappedRowPointers[i] + counts[i];
+        }
+
+        int[] remappedColumns = new int[columnIndices.length];
+        long[] remappedValues = new long[values.length];
+        BigInteger[] remappedExactValues = exactValues == null ? null
+                : new BigInteger[exactValues.length];
+        for (int i = 0; i < previousCities.size(); i++) {
+            int target = remappedRowPointers[ordinals[i]];
+            for (int p = previousRowPointers[i]; p < previousRowPointers[i + 1]; p++, target++) {
+                remappedColumns[target] = ordinals[columnIndices[p]];
+                remappedValues[target] = values[p];
+                if (remappedExactValues != null) {
+                    remappedExactValues[target] = exactValues[p];
+                }
+            }
+        }
+
+        rowPointers = remappedRowPointers;
+        columnIndices = remappedColumns;
+        values = remappedValues;
+        exactValues = remappedExactValues;
+    }
+
+    /**
+     * Multiple routes between the same pair of cities are combined by the
+     * addition of the semiring. The routes added since the last build are
+     * sorted into rows of their own, which are merged into the rows built
+     * before.
+     */
+    @Override
+    public void build() {
+        List<Route> routes = takeNewMatrixRoutes();
+        if (routes.isEmpty()) {
+            invalidatePowers();
+            return;
+        }
+
+        addMatrixRouteCities(RouteParser.newInstance().parseCities(routes));
+
+        SparseLongRouteMatrix added = newSparseInstance();
+        added.setRows(routes);
+        copyRows(getNonZeroElementsAmount() == 0 ? added
+                : (SparseLongRouteMatrix) add(added));
+        invalidatePowers();
+    }
+
+    /**
+     * Take the rows of another matrix of the same cities.
+     */
+    private void copyRows(SparseLongRouteMatrix matrix) {
+        rowPointers = matrix.rowPointers;
+        columnIndices = matrix.columnIndices;
+        values = matrix.values;
+        exactValues = matrix.exactValues;
+    }
+
+    /**
+     * Set the rows to the given routes, all of whose cities are in this
+     * matrix.
+     */
+    private void setRows(List<Route> routes) {
+        // Sort the routes by their cells, the cell of a route is encoded in
+        // the high bits and its index in the low bits.
+        int size = getMatrixDimensions();
+        int indexBits = 64 - Long.numberOfLeadingZeros(routes.size());
+        long[] elements = new long[routes.size()];
+        for (int i = 0; i < elements.length; i++) {
+            Route route = routes.get(i);
+            long cell = (long) getCityOrdinal(route.getSourceCity()) * size
+                    + getCityOrdinal(route.getDestinationCity());
+            elements[i] = (cell << indexBits) | i;
+        }
+        Arrays.sort(elements);
+
+        rowPointers = new int[size + 1];
+        columnIndices = new int[elements.length];
+        values = new long[elements.length];
+        long indexMask = (1L << indexBits) - 1;
+        long previousCell = -1;
+        int amount = 0;
+        for (int i = 0; i < elements.length; i++) {
+            long cell = elements[i] >>> indexBits;
+            long value = semiring.valueOf(routes
+                    .get((int) (elements[i] & indexMask)));
+            if (cell == previousCell) {
+                values[amount - 1] = semiring.add(values[amount - 1], value);
+                continue;
+            }
+
+            rowPointers[(int) (cell / size) + 1]++;
+            columnIndices[amount] = (int) (cell % size);
+            values[amount] = value;
+            previousCell = cell;
+            amount++;
+        }
+
+        for (int i = 0; i < size; i++) {
+            rowPointers[i + 1] += rowPointers[i];
+        }
+        columnIndices = Arrays.copyOf(columnIndices, amount);
+        values = Arrays.copyOf(values, amount);
+        exactValues = null;
+    }
+
+    @Override
+    protected Long getMatrixElement(int row, int column) {
+        int position = positionOf(row, column);
+        return position < 0 ? null : Long.valueOf(values[position]);
+    }
+
+    /**
+     * Get the exact element, which differs from
+     * <code>getMatrixElement</code> only when a count of routes overflows
+     * <code>long</code>.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @return The element, or null if it is the zero of the semiring.
+     */
+    public BigInteger getExactMatrixElement(City rowCity, City columnCity) {
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        if (row < 0 || column < 0) {
+            return null;
+        }
+
+        int position = positionOf(row, column);
+        return position < 0 ? null : exactOf(values[position], exactValues,
+                position);
+    }
+
+    /**
+     * Setting an element of a CSR matrix shifts all elements behind it, use
+     * <code>addRoutes</code> and <code>build</code> to fill the matrix in bulk.
+     */
+    @Override
+    public void setMatrixElement(City rowCity, City columnCity, Long element) {
+        if (getCityOrdinal(rowCity) < 0 || getCityOrdinal(columnCity) < 0) {
+            addMatrixRouteCities(Arrays.asList(new City[] { rowCity,
+                    columnCity }));
+        }
+
+        invalidatePowers();
+
+        int row = getCityOrdinal(rowCity);
+        int position = positionOf(row, getCityOrdinal(columnCity));
+        long value = element == null ? semiring.zero() : element.longValue();
+
+        if (position >= 0) {
+            if (exactValues != null) {
+                exactValues[position] = null;
+            }
+
+            if (value != semiring.zero()) {
+                values[position] = value;
+                return;
+            }
+
+            int amount = getNonZeroElementsAmount();
+            System.arraycopy(columnIndices, position + 1, columnIndices,
+                    position, amount - position - 1);
+            System.arraycopy(values, position + 1, values, position, amount
+                    - position - 1);
+            columnIndices = Arrays.copyOf(columnIndices, amount - 1);
+            values = Arrays.copyOf(values, amount - 1);
+            if (exactValues != null) {
+                System.arraycopy(exactValues, position + 1, exactValues,
+                        position, amount - position - 1);
+                exactValues = Arrays.copyOf(exactValues, amount - 1);
+            }
+            for (int i = row + 1; i < rowPointers.length; i++) {
+                rowPointers[i]--;
+            }
+        } else if (value != semiring.zero()) {
+            position = -position - 1;
+            int amount = getNonZeroElementsAmount();
+            int[] columns = new int[amount + 1];
+            long[] elements = new long[amount + 1];
+            System.arraycopy(columnIndices, 0, columns, 0, position);
+            System.arraycopy(values, 0, elements, 0, position);
+            columns[position] = getCityOrdinal(columnCity);
+            elements[position] = value;
+            System.arraycopy(columnIndices, position, columns, position + 1,
+                    amount - position);
+            System.arraycopy(values, position, elements, position + 1, amount
+                    - position);
+            columnIndices = columns;
+            values = elements;
+            if (exactValues != null) {
+                BigInteger[] exactElements = new BigInteger[amount + 1];
+                System.arraycopy(exactValues, 0, exactElements, 0, position);
+                System.arraycopy(exactValues, position, exactElements,
+                        position + 1, amount - position);
+                exactValues = exactElements;
+            }
+            for (int i = row + 1; i < rowPointers.length; i++) {
+                rowPointers[i]++;
+            }
+        }
+    }
+
+    @Override
+    protected int nextColumn(int row, int column) {
+        int position = positionOf(row, column);
+        if (position < 0) {
+            position = -position - 1;
+        }
+
+        return position < rowPointers[row + 1] ? columnIndices[position] : -1;
+    }
+
+    /**
+     * Multiply a row vector by this matrix, which only visits the rows of the
+     * non-zero elements of the vector, so it costs O(n + E) at most.
+     *
+     * @param vector
+     *            The row vector indexed by the ordinals of cities, whose zero
+     *            elements are the zero of the semiring.
+     * @return A new vector of the product.
+     */
+    public long[] multiplyVector(long[] vector) {
+        long zero = semiring.zero();
+        long[] product = new long[vector.length];
+        Arrays.fill(product, zero);
+
+        for (int i = 0; i < vector.length; i++) {
+            long value = vector[i];
+            if (value == zero) {
+                continue;
+            }
+
+            for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                int column = columnIndices[p];
+                product[column] = semiring.add(product[column],
+                        semiring.multiply(value, values[p]));
+            }
+        }
+
+        return product;
+    }
+
+    /**
+     * Get an element of a power of this matrix, without computing the power.
+     * The row of the city is pushed through this matrix by
+     * <code>multiplyVector</code> for <code>exponent</code> times, which costs
+     * O(exponent * E) time and O(n) memory.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param exponent
+     *            A positive integer.
+     * @return The same element as
+     *         <code>power(exponent).getMatrixElement(rowCity, columnCity)</code>
+     *         .
+     */
+    public Long getPowerElement(City rowCity, City columnCity, int exponent) {
+        return getPowerElement(rowCity, columnCity, exponent, false);
+    }
+
+    /**
+     * Get an element of the sum of the powers of this matrix with exponents
+     * from 1 to <code>exponent</code>, accumulated while the row of the city
+     * is pushed through this matrix as <code>getPowerElement</code> does.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param exponent
+     *            A positive integer.
+     * @return The element of the sum.
+     */
+    public Long getPowerSumElement(City rowCity, City columnCity, int exponent) {
+        return getPowerElement(rowCity, columnCity, exponent, true);
+    }
+
+    /**
+     * Get an element of the powers of this matrix with exponents from 1 to
+     * <code>amount</code>, collected while the row of the city is pushed
+     * through this matrix as <code>getPowerElement</code> does.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param amount
+     *            The number of powers.
+     * @return The elements indexed by <code>exponent - 1</code>, whose zero
+     *         elements are the zero of the semiring.
+     */
+    public long[] getPowerElements(City rowCity, City columnCity, int amount) {
+        long zero = semiring.zero();
+        long[] elements = new long[amount];
+        Arrays.fill(elements, zero);
+
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        if (row < 0 || column < 0) {
+            return elements;
+        }
+
+        long[] vector = new long[getMatrixDimensions()];
+        Arrays.fill(vector, zero);
+        vector[row] = semiring.one();
+        for (int i = 0; i < amount; i++) {
+            vector = multiplyVector(vector);
+            elements[i] = vector[column];
+        }
+
+        return elements;
+    }
+
+    private Long getPowerElement(City rowCity, City columnCity, int exponent,
+            boolean accumulated) {
+        if (exponent <= 0) {
+            throw new UnsupportedOperationException(
+                    "In current implementation, the exponent should be a positive integer.");
+        }
+
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        if (row < 0 || column < 0) {
+            return null;
+        }
+
+        long zero = semiring.zero();
+        long[] vector = new long[getMatrixDimensions()];
+        Arrays.fill(vector, zero);
+        vector[row] = semiring.one();
+
+        long element = zero;
+        for (int i = 1; i <= exponent; i++) {
+            vector = multiplyVector(vector);
+            element = accumulated ? semiring.add(element, vector[column])
+                    : vector[column];
+        }
+
+        return element == zero ? null : Long.valueOf(element);
+    }
+
+    /**
+     * Get the exact count of routes with exactly <code>exponent</code> stops,
+     * the same as <code>getPowerElement</code> does, but the counts
+     * overflowing <code>long</code> are promoted to <code>BigInteger</code>.
+     * Only for the {@link LongSemiring#COUNTING} semiring.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param exponent
+     *            A positive integer.
+     * @return The count, or null if there is no such route.
+     */
+    public BigInteger getExactPowerElement(City rowCity, City columnCity,
+            int exponent) {
+        return getExactPowerElement(rowCity, columnCity, exponent, false);
+    }
+
+    /**
+     * Get the exact count of routes with at most <code>exponent</code> stops,
+     * the same as <code>getPowerSumElement</code> does. Only for the
+     * {@link LongSemiring#COUNTING} semiring.
+     *
+     * @param rowCity
+     * @param columnCity
+     * @param exponent
+     *            A positive integer.
+     * @return The count, or null if there is no such route.
+     */
+    public BigInteger getExactPowerSumElement(City rowCity, City columnCity,
+            int exponent) {
+        return getExactPowerElement(rowCity, columnCity, exponent, true);
+    }
+
+    private BigInteger getExactPowerElement(City rowCity, City columnCity,
+            int exponent, boolean accumulated) {
+        if (!isCounting()) {
+            throw new UnsupportedOperationException(
+                    "Exact elements are only kept for the counting semiring.");
+        }
+
+        if (exponent <= 0) {
+            throw new UnsupportedOperationException(
+                    "In current implementation, the exponent should be a positive integer.");
+        }
+
+        int row = getCityOrdinal(rowCity);
+        int column = getCityOrdinal(columnCity);
+        if (row < 0 || column < 0) {
+            return null;
+        }
+
+        int size = getMatrixDimensions();
+        long[] vector = new long[size];
+        BigInteger[] exactVector = null;
+        vector[row] = 1;
+
+        long element = 0;
+        BigInteger exactElement = null;
+        for (int e = 1; e <= exponent; e++) {
+            long[] product = new long[size];
+            BigInteger[] exactProduct = null;
+            for (int i = 0; i < size; i++) {
+                long value = vector[i];
+                if (value == 0) {
+                    continue;
+                }
+
+                for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                    int target = columnIndices[p];
+                    long term = multiplyCounts(value, values[p]);
+                    long sum = product[target] + term;
+                    if (term < 0 || sum < 0 || isExact(exactVector, i)
+                            || isExact(exactValues, p)
+                            || isExact(exactProduct, target)) {
+                        if (exactProduct == null) {
+                            exactProduct = new BigInteger[size];
+                        }
+                        exactProduct[target] = exactOf(product[target],
+                                exactProduct, target).add(
+                                exactOf(value, exactVector, i).multiply(
+                                        exactOf(values[p], exactValues, p)));
+                        product[target] = Long.MAX_VALUE;
+                    } else {
+                        product[target] = sum;
+                    }
+                }
+            }
+            vector = product;
+            exactVector = exactProduct;
+
+            if (!accumulated) {
+                element = vector[column];
+                exactElement = isExact(exactVector, column) ? exactVector[column]
+                        : null;
+            } else if (exactElement != null || isExact(exactVector, column)
+                    || element + vector[column] < 0) {
+                exactElement = (exactElement == null ? BigInteger
+                        .valueOf(element) : exactElement).add(exactOf(
+                        vector[column], exactVector, column));
+            } else {
+                element += vector[column];
+            }
+        }
+
+        if (exactElement != null) {
+            return exactElement;
+        }
+
+        return element == 0 ? null : BigInteger.valueOf(element);
+    }
+
+    private SparseLongRouteMatrix newSparseInstance() {
+        SparseLongRouteMatrix matrix = (SparseLongRouteMatrix) newMatrixInstance();
+        matrix.addMatrixRouteCities(getMatrixRouteCities());
+        return matrix;
+    }
+
+    /**
+     * Whether the sparse kernels can be applied to this matrix and the given
+     * one.
+     */
+    private boolean isCompatible(RouteMatrix<Long> routeMatrix) {
+        return routeMatrix instanceof SparseLongRouteMatrix
+                && ((SparseLongRouteMatrix) routeMatrix).semiring == semiring;
+    }
+
+    /**
+     * Gustavson's row-by-row multiplication. The products contributing to one
+     * row of the result are accumulated in a dense accumulator, and the touched
+     * columns are tracked so that only they are visited when the row is
+     * gathered.
+     */
+    @Override
+    public RouteMatrix<Long> multiply(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.multiply(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "multiply");
+
+        // Validated operands share the same sorted cities, hence the same
+        // ordinals.
+        SparseLongRouteMatrix multiplier = (SparseLongRouteMatrix) routeMatrix;
+        int size = getMatrixDimensions();
+        long[] accumulator = new long[size];
+        int[] touchedMarks = new int[size];
+        Arrays.fill(touchedMarks, -1);
+        int[] touchedColumns = new int[size];
+
+        SparseLongRouteMatrix product = newSparseInstance();
+        int[] productRowPointers = new int[size + 1];
+        int[] productColumns = new int[Math.max(getNonZeroElementsAmount(),
+                multiplier.getNonZeroElementsAmount())];
+        long[] productValues = new long[productColumns.length];
+        int amount = 0;
+
+        boolean counting = isCounting();
+        BigInteger[] exactAccumulator = null;
+        BigInteger[] productExactValues = null;
+
+        for (int i = 0; i < size; i++) {
+            int touched = 0;
+            for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+                int cursor = columnIndices[p];
+                long value = values[p];
+                for (int q = multiplier.rowPointers[cursor]; q < multiplier.rowPointers[cursor + 1]; q++) {
+                    int column = multiplier.columnIndices[q];
+                    if (touchedMarks[column] != i) {
+                        touchedMarks[column] = i;
+                        touchedColumns[touched++] = column;
+                        accumulator[column] = semiring.zero();
+                        if (exactAccumulator != null) {
+                            exactAccumulator[column] = null;
+                        }
+                    }
+
+                    if (!counting) {
+                        accumulator[column] = semiring.add(
+                                accumulator[column],
+                                semiring.multiply(value, multiplier.values[q]));
+                        continue;
+                    }
+
+                    long term = multiplyCounts(value, multiplier.values[q]);
+                    long sum = accumulator[column] + term;
+                    if (term < 0 || sum < 0 || isExact(exactValues, p)
+                            || isExact(multiplier.exactValues, q)
+                            || isExact(exactAccumulator, column)) {
+                        if (exactAccumulator == null) {
+                            exactAccumulator = new BigInteger[size];
+                        }
+                        exactAccumulator[column] = exactOf(accumulator[column],
+                                exactAccumulator, column).add(
+                                exactOf(value, exactValues, p).multiply(
+                                        exactOf(multiplier.values[q],
+                                                multiplier.exactValues, q)));
+                        accumulator[column] = Long.MAX_VALUE;
+                    } else {
+                        accumulator[column] = sum;
+                    }
+                }
+            }
+
+            Arrays.sort(touchedColumns, 0, touched);
+            if (amount + touched > productColumns.length) {
+                int capacity = Math.max(amount + touched,
+                        productColumns.length * 2);
+                productColumns = Arrays.copyOf(productColumns, capacity);
+                productValues = Arrays.copyOf(productValues, capacity);
+                if (productExactValues != null) {
+                    productExactValues = Arrays.copyOf(productExactValues,
+                            capacity);
+                }
+            }
+            for (int t = 0; t < touched; t++) {
+                int column = touchedColumns[t];
+                if (accumulator[column] != semiring.zero()) {
+                    productColumns[amount] = column;
+                    productValues[amount] = accumulator[column];
+                    if (isExact(exactAccumulator, column)) {
+                        if (productExactValues == null) {
+                            productExactValues = new BigInteger[productColumns.length];
+                        }
+                        productExactValues[amount] = exactAccumulator[column];
+                    }
+                    amount++;
+                }
+            }
+            productRowPointers[i + 1] = amount;
+        }
+
+        product.rowPointers = productRowPointers;
+        product.columnIndices = Arrays.copyOf(productColumns, amount);
+        product.values = Arrays.copyOf(productValues, amount);
+        if (productExactValues != null) {
+            product.exactValues = Arrays.copyOf(productExactValues, amount);
+        }
+        return product;
+    }
+
+    /**
+     * Merge the sorted rows of two sparse matrices.
+     */
+    @Override
+    public RouteMatrix<Long> add(RouteMatrix<Long> routeMatrix) {
+        if (!isCompatible(routeMatrix)) {
+            return super.add(routeMatrix);
+        }
+
+        validateOperand(routeMatrix, "add");
+
+        SparseLongRouteMatrix augend = (SparseLongRouteMatrix) routeMatrix;
+        int size = getMatrixDimensions();
+        int capacity = getNonZeroElementsAmount()
+                + augend.getNonZeroElementsAmount();
+
+        SparseLongRouteMatrix sum = newSparseInstance();
+        int[] sumRowPointers = new int[size + 1];
+        int[] sumColumns = new int[capacity];
+        long[] sumValues = new long[capacity];
+        BigInteger[] sumExactValues = null;
+        int amount = 0;
+
+        for (int i = 0; i < size; i++) {
+            int p = rowPointers[i];
+            int q = augend.rowPointers[i];
+            while (p < rowPointers[i + 1] || q < augend.rowPointers[i + 1]) {
+                int column;
+                long value;
+                BigInteger exactValue = null;
+                if (q == augend.rowPointers[i + 1]
+                        || (p < rowPointers[i + 1] && columnIndices[p] < augend.columnIndices[q])) {
+                    column = columnIndices[p];
+                    exactValue = isExact(exactValues, p) ? exactValues[p]
+                            : null;
+                    value = values[p++];
+                } else if (p == rowPointers[i + 1]
+                        || augend.columnIndices[q] < columnIndices[p]) {
+                    column = augend.columnIndices[q];
+                    exactValue = isExact(augend.exactValues, q) ? augend.exactValues[q]
+                            : null;
+                    value = augend.values[q++];
+                } else if (isCounting()
+                        && (values[p] + augend.values[q] < 0
+                                || isExact(exactValues, p) || isExact(
+                                    augend.exactValues, q))) {
+                    column = columnIndices[p];
+                    exactValue = exactOf(values[p], exactValues, p).add(
+                            exactOf(augend.values[q], augend.exactValues, q));
+                    value = Long.MAX_VALUE;
+                    p++;
+                    q++;
+                } else {
+                    column = columnIndices[p];
+                    value = semiring.add(values[p++], augend.values[q++]);
+                }
+
+                if (value != semiring.zero()) {
+                    sumColumns[amount] = column;
+                    sumValues[amount] = value;
+                    if (exactValue != null) {
+                        if (sumExactValues == null) {
+                            sumExactValues = new BigInteger[capacity];
+                        }
+                        sumExactValues[amount] = exactValue;
+                    }
+                    amount++;
+                }
+            }
+            sumRowPointers[i + 1] = amount;
+        }
+
+        sum.rowPointers = sumRowPointers;
+        sum.columnIndices = Arrays.copyOf(sumColumns, amount);
+        sum.values = Arrays.copyOf(sumValues, amount);
+        if (sumExactValues != null) {
+            sum.exactValues = Arrays.copyOf(sumExactValues, amount);
+        }
+        return sum;
+    }
+
+    /**
+     * The transitive closure of a connected network is dense, so it is
+     * computed by the primitive kernel of {@link DenseLongRouteMatrix} and
+     * converted back, instead of the generic loop over elements.
+     */
+    @Override
+    public RouteMatrix<Long> getMatrixTransitiveClosure() {
+        SparseLongRouteMatrix closure = newSparseInstance();
+        closure.copyRows(((DenseLongRouteMatrix) toDense()
+                .getMatrixTransitiveClosure()).toSparse());
+        return closure;
+    }
+
+    @Override
+    public RouteMatrix<Long> getAdditionIdentify() {
+        return newSparseInstance();
+    }
+
+    @Override
+    public RouteMatrix<Long> getMultiplyIdentify() {
+        SparseLongRouteMatrix identify = newSparseInstance();
+        int size = getMatrixDimensions();
+
+        identify.rowPointers = new int[size + 1];
+        identify.columnIndices = new int[size];
+        identify.values = new long[size];
+        for (int i = 0; i < size; i++) {
+            identify.rowPointers[i + 1] = i + 1;
+            identify.columnIndices[i] = i;
+            identify.values[i] = semiring.one();
+        }
+
+        return identify;
+    }
+
+    @Override
+    protected Long elementMultiply(Long multiplicand, Long multiplier) {
+        if (multiplicand == null || multiplier == null) {
+            return null;
+        }
+
+        long product = semiring.multiply(multiplicand, multiplier);
+        return product == semiring.zero() ? null : Long.valueOf(product);
+    }
+
+    @Override
+    protected Long elementAdd(Long addend, Long augend) {
+        if (addend == null) {
+            return augend;
+        }
+
+        if (augend == null) {
+            return addend;
+        }
+
+        long sum = semiring.add(addend, augend);
+        return sum == semiring.zero() ? null : Long.valueOf(sum);
+    }
+
+    @Override
+    protected RouteMatrix<Long> newMatrixInstance() {
+        return new SparseLongRouteMatrix(semiring);
+    }
+
+    @Override
+    protected Long extractMatrixElement(Route route) {
+        return semiring.valueOf(route);
+    }
+
+    @Override
+    protected Long getIdentifyElement() {
+        return semiring.one();
+    }
+}
@@ -0,0 +1,140 @@
+package org.shizhz.matrix;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Locale;
+
+import org.shizhz.route.Route;
+
+/**
+ * The aggregates of a set of trips between two cities: the number of trips,
+ * and the minimum, maximum and sum of their distances. They form a product
+ * semiring, so the aggregates of the trips with k stops are got by the power
+ * of the matrix of single routes, without enumerating any trip:
+ * <ul>
+ * <li>Adding two sets of trips adds the numbers and the sums up, and takes the
+ * minimum of the minimums and the maximum of the maximums.</li>
+ * <li>Multiplying two sets of trips joins each trip of the first with each
+ * one of the second, so the numbers are multiplied, the minimums and the
+ * maximums are added up, and each distance of one set is summed up as many
+ * times as the number of trips of the other set.</li>
+ * </ul>
+ * The empty set is <code>null</code>, the same as other elements of route
+ * matrices. Numbers and sums grow exponentially with the stops, so they are
+ * kept in <code>BigInteger</code>s and never wrap around. The minimums and
+ * maximums are sums of as many distances as the stops, which are both of
+ * <code>int</code>, so they fit in <code>long</code>.
+ *
+ * @author shizhz
+ *
+ */
+public final class TripAggregate {
+
+    /**
+     * The trip of no stop, the identity of multiplication.
+     */
+    public static final TripAggregate IDENTIFY = new TripAggregate(1, 0, 0, 0);
+
+    private final BigInteger count;
+
+    private final long minDistance;
+
+    private final long maxDistance;
+
+    private final BigInteger sumDistance;
+
+    public TripAggregate(long count, long minDistance, long maxDistance,
+            long sumDistance) {
+        this(BigInteger.valueOf(count), minDistance, maxDistance, BigInteger
+                .valueOf(sumDistance));
+    }
+
+    public TripAggregate(BigInteger count, long minDistance, long maxDistance,
+            BigInteger sumDistance) {
+        this.count = count;
+        this.minDistance = minDistance;
+        this.maxDistance = maxDistance;
+        this.sumDistance = sumDistance;
+    }
+
+    public static TripAggregate valueOf(Route route) {
+        return new TripAggregate(1, route.getDistance(), route.getDistance(),
+                route.getDistance());
+    }
+
+    public BigInteger getCount() {
+        return count;
+    }
+
+    public long getMinDistance() {
+        return minDistance;
+    }
+
+    public long getMaxDistance() {
+        return maxDistance;
+    }
+
+    public BigInteger getSumDistance() {
+        return sumDistance;
+    }
+
+    public double getAverageDistance() {
+        return new BigDecimal(sumDistance).divide(new BigDecimal(count),
+                MathContext.DECIMAL64).doubleValue();
+    }
+
+    /**
+     * The aggregates of the trips of both sets.
+     */
+    public TripAggregate add(TripAggregate augend) {
+        return new TripAggregate(count.add(augend.count), Math.min(
+                minDistance, augend.minDistance), Math.max(maxDistance,
+                augend.maxDistance), sumDistance.add(augend.sumDistance));
+    }
+
+    /**
+     * The aggregates of the trips made of a trip of this set followed by a
+     * trip of the other.
+     */
+    public TripAggregate multiply(TripAggregate multiplier) {
+        return new TripAggregate(count.multiply(multiplier.count), minDistance
+                + multiplier.minDistance, maxDistance + multiplier.maxDistance,
+                sumDistance.multiply(multiplier.count).add(
+                        multiplier.sumDistance.multiply(count)));
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + count.hashCode();
+        result = prime * result + (int) (minDistance ^ (minDistance >>> 32));
+        result = prime * result + (int) (maxDistance ^ (maxDistance >>> 32));
+        result = prime * result + sumDistance.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof TripAggregate)) {
+            return false;
+        }
+
+        TripAggregate other = (TripAggregate) obj;
+        return count.equals(other.count) && minDistance == other.minDistance
+                && maxDistance == other.maxDistance
+                && sumDistance.equals(other.sumDistance);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "%d trips, shortest %d, longest %d, average %.2f", count,
+                minDistance, maxDistance, getAverageDistance());
+    }
+}
@@ -0,0 +1,92 @@
+package org.shizhz.matrix;
+
+/**
+ * The inner loops of {@link SemiringKernels} specialized for the counting,
+ * min-plus and boolean semirings. Each one is a loop over a row without calls
+ * to a semiring and without branches, which the JIT compiler turns into SIMD
+ * instructions on the running machine, while the generic loop calls
+ * <code>add</code> and <code>multiply</code> of several semirings from the
+ * same site and is not vectorized.
+ * <p>
+ * All of them accumulate <code>value * source[j]</code> into
+ * <code>target[j]</code> by the semiring, the same as the generic loop. The
+ * min-plus loops rely on distances not being negative: the sum of two
+ * distances turns negative exactly when it overflows or either of them stands
+ * for no route, and is then saturated to the zero of the semiring without a
+ * branch.
+ * <p>
+ * Whether they are used is set by {@link KernelConfig}, and other semirings
+ * always go through the generic loops.
+ *
+ * @author shizhz
+ *
+ */
+final class VectorKernels {
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Whether the inner loops on the given semiring should be specialized.
+     */
+    static boolean supports(LongSemiring semiring) {
+        return KernelConfig.isVectorized()
+                && (semiring == LongSemiring.COUNTING
+                        || semiring == LongSemiring.MIN_PLUS || semiring == LongSemiring.BOOLEAN);
+    }
+
+    static boolean supports(IntSemiring semiring) {
+        return KernelConfig.isVectorized()
+                && (semiring == IntSemiring.COUNTING
+                        || semiring == IntSemiring.MIN_PLUS || semiring == IntSemiring.BOOLEAN);
+    }
+
+    /**
+     * Accumulate <code>value * source[sourceOffset + j]</code> into
+     * <code>target[targetOffset + j]</code> for j from 0 until
+     * <code>length</code>. The value is not the zero of the semiring, which is
+     * supposed to be one of those supported.
+     */
+    static void multiplyAccumulate(LongSemiring semiring, long value,
+            long[] source, int sourceOffset, long[] target, int targetOffset,
+            int length) {
+        if (semiring == LongSemiring.COUNTING) {
+            for (int j = 0; j < length; j++) {
+                target[targetOffset + j] += value * source[sourceOffset + j];
+            }
+        } else if (semiring == LongSemiring.MIN_PLUS) {
+            for (int j = 0; j < length; j++) {
+                long sum = value + source[sourceOffset + j];
+                // All ones for a negative sum, or all zeros.
+                long overflow = sum >> 63;
+                target[targetOffset + j] = Math.min(target[targetOffset + j],
+                        (sum & ~overflow) | (overflow >>> 1));
+            }
+        } else {
+            for (int j = 0; j < length; j++) {
+                target[targetOffset + j] |= value & source[sourceOffset + j];
+            }
+        }
+    }
+
+    static void multiplyAccumulate(IntSemiring semiring, int value,
+            int[] source, int sourceOffset, int[] target, int targetOffset,
+            int length) {
+        if (semiring == IntSemiring.COUNTING) {
+            for (int j = 0; j < length; j++) {
+                target[targetOffset + j] += value * source[sourceOffset + j];
+            }
+        } else if (semiring == IntSemiring.MIN_PLUS) {
+            for (int j = 0; j < length; j++) {
+                int sum = value + source[sourceOffset + j];
+                int overflow = sum >> 31;
+                target[targetOffset + j] = Math.min(target[targetOffset + j],
+                        (sum & ~overflow) | (overflow >>> 1));
+            }
+        } else {
+            for (int j = 0; j < length; j++) {
+                target[targetOffset + j] |= value & source[sourceOffset + j];
+            }
+        }
+    }
+}
@@ -2,24 +2,45 @@ package org.shizhz.route;
 
 /**
  * This class used to present a city. The name is supposed to be unique as a city code.
+ * <p>
+ * Cities are immutable and interned by {@link CityRegistry}, so there is only
+ * one instance of each city: cities are equal only if they are the same
+ * instance, and the hash code is the id of the city.
  * 
  * @author shizhz
  *
  */
-public class City implements Comparable<City> {
+public final class City implements Comparable<City> {
 
-    private String name;
+    private final String name;
 
-    public City(String name) {
-        this.name = name == null ? "" : name;
+    private final int id;
+
+    City(String name, int id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * Get the city of the given name.
+     * 
+     * @param name
+     *            The name of the city, null for the empty name.
+     * @return The only city of the name.
+     */
+    public static City valueOf(String name) {
+        return CityRegistry.getInstance().intern(name);
     }
 
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
+    /**
+     * The dense id assigned to this city by {@link CityRegistry}.
+     */
+    public int getId() {
+        return id;
     }
 
     @Override
@@ -29,23 +50,16 @@ public class City implements Comparable<City> {
 
     @Override
     public boolean equals(Object obj) {
-        if (obj == null) {
-            return false;
-        }
-        if (!(obj instanceof City)) {
-            return false;
-        }
-
-        return name.equals(obj.toString());
+        return this == obj;
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return id;
     }
 
     @Override
     public int compareTo(City o) {
-        return getName().compareTo(o.getName());
+        return this == o ? 0 : getName().compareTo(o.getName());
     }
 }
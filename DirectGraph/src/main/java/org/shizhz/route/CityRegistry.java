@@ -0,0 +1,77 @@
+package org.shizhz.route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The registry of all cities, which interns each name to one immutable
+ * {@link City}. Cities get dense ids in the order of registration, from 0 on,
+ * so the same city is always the same instance, and a city can index arrays
+ * by its id instead of looking up its name.
+ * <p>
+ * Cities are never unregistered, the same as interned strings.
+ * 
+ * @author shizhz
+ * 
+ */
+public final class CityRegistry {
+
+    private static final CityRegistry INSTANCE = new CityRegistry();
+
+    private final ConcurrentMap<String, City> cities = new ConcurrentHashMap<String, City>();
+
+    private final List<City> citiesById = new ArrayList<City>();
+
+    private CityRegistry() {
+    }
+
+    public static CityRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the city of the given name, registering it on the first time.
+     * 
+     * @param name
+     *            The name of the city, null for the empty name.
+     * @return The only city of the name.
+     */
+    public City intern(String name) {
+        String key = name == null ? "" : name;
+        City city = cities.get(key);
+        if (city != null) {
+            return city;
+        }
+
+        synchronized (this) {
+            city = cities.get(key);
+            if (city == null) {
+                city = new City(key, citiesById.size());
+                citiesById.add(city);
+                cities.put(key, city);
+            }
+
+            return city;
+        }
+    }
+
+    /**
+     * Get a registered city by its id.
+     * 
+     * @param id
+     * @return The city, or null if no city has the id.
+     */
+    public synchronized City getCity(int id) {
+        return id >= 0 && id < citiesById.size() ? citiesById.get(id) : null;
+    }
+
+    /**
+     * The number of cities registered, which is greater than the id of each
+     * of them.
+     */
+    public int size() {
+        return cities.size();
+    }
+}
@@ -1,8 +1,9 @@
 package org.shizhz.route;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 
 import org.shizhz.exception.UnconnectedRouteException;
@@ -12,6 +13,19 @@ import org.shizhz.util.Joiner;
  * This class use to present a route between cities. Single route means this
  * route connects two cities directly, Composite type route means a path
  * connects two cities by crossing other city or cities.
+ * <p>
+ * Routes are immutable, so a composite route only keeps the two routes it is
+ * made of, which are shared by all the routes extended from them, instead of
+ * copying their inner routes. Extending a route takes O(1) time and memory,
+ * and the inner routes are only listed when asked. The distance and the
+ * fingerprint are computed once on creation.
+ * <p>
+ * The fingerprint is a 64-bit polynomial hash of the sequence of single
+ * routes, so it depends on their order but not on how the route was
+ * concatenated, and the fingerprint of a concatenation is computed from those
+ * of its parts. Routes with different fingerprints are never equal, so
+ * <code>equals</code> only walks the single routes of two routes which are
+ * very likely to be equal.
  * 
  * @author shizhz
  * 
@@ -23,25 +37,93 @@ public class Route implements Comparable<Route> {
 
     private static final String ROUTE_CITY_DELIMITER = "-";
 
-    private City sourceCity;
+    /**
+     * An odd base, so its powers do not vanish modulo 2^64.
+     */
+    private static final long FINGERPRINT_BASE = 0x9E3779B97F4A7C15L;
+
+    private final City sourceCity;
+
+    private final City destinationCity;
+
+    private final int distance;
+
+    /**
+     * The first and the second part of a composite route, both null for a
+     * single route.
+     */
+    private final Route head;
+
+    private final Route tail;
+
+    /**
+     * The number of single routes this route is made of.
+     */
+    private final int length;
 
-    private City destinationCity;
+    private final long fingerprint;
 
-    private int distance;
+    /**
+     * The base raised to the length of this route, which shifts the
+     * fingerprint of this route past the one of another route appended to
+     * it.
+     */
+    private final long fingerprintShift;
 
-    private List<Route> innerRoutes = new ArrayList<>();
+    private final int hashCode;
 
-    private Type type;
+    private final Type type;
 
     public Route(City sourceCity, City destinationCity, int distance) {
         this.sourceCity = sourceCity;
         this.destinationCity = destinationCity;
         this.distance = distance;
+        this.head = null;
+        this.tail = null;
+        this.length = 1;
+        long cities = (long) sourceCity.hashCode() << 32
+                | (destinationCity.hashCode() & 0xFFFFFFFFL);
+        this.fingerprint = mix(cities ^ mix(distance));
+        this.fingerprintShift = FINGERPRINT_BASE;
+        this.hashCode = hashOf(fingerprint);
         this.type = Type.SIGNLE;
     }
 
     public Route(String sourceCityName, String destinationCityName, int distance) {
-        this(new City(sourceCityName), new City(destinationCityName), distance);
+        this(City.valueOf(sourceCityName), City.valueOf(destinationCityName),
+                distance);
+    }
+
+    private Route(Route head, Route tail) {
+        this.sourceCity = head.sourceCity;
+        this.destinationCity = tail.destinationCity;
+        this.distance = head.distance + tail.distance;
+        this.head = head;
+        this.tail = tail;
+        this.length = head.length + tail.length;
+        this.fingerprint = head.fingerprint * tail.fingerprintShift
+                + tail.fingerprint;
+        this.fingerprintShift = head.fingerprintShift * tail.fingerprintShift;
+        this.hashCode = hashOf(fingerprint);
+        this.type = Type.COMPOSITE;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads each bit of the input over
+     * all bits of the output.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE53E1A85L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static int hashOf(long fingerprint) {
+        long mixed = mix(fingerprint);
+        return (int) (mixed ^ (mixed >>> 32));
     }
 
     public Type getType() {
@@ -60,18 +142,42 @@ public class Route implements Comparable<Route> {
         return distance;
     }
 
+    /**
+     * The 64-bit fingerprint of the sequence of single routes. Equal routes
+     * have the same fingerprint.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * The number of single routes this route is made of.
+     */
+    public int getInnerRoutesAmount() {
+        return length;
+    }
+
     public List<Route> getInnerRoutes() {
         if (type == Type.SIGNLE) {
-            return Collections.unmodifiableList(Arrays
-                    .asList(new Route[] { this }));
-        } else {
-            return Collections.unmodifiableList(innerRoutes);
+            return Collections.singletonList(this);
         }
-    }
 
-    private void addRoutes(List<Route> routes) {
-        innerRoutes.addAll(routes);
-        type = Type.COMPOSITE;
+        List<Route> innerRoutes = new ArrayList<Route>(length);
+        // Walk the parts iteratively, routes extended one by one make deep
+        // chains of parts.
+        Deque<Route> parts = new ArrayDeque<Route>();
+        parts.push(this);
+        while (!parts.isEmpty()) {
+            Route part = parts.pop();
+            if (part.type == Type.SIGNLE) {
+                innerRoutes.add(part);
+            } else {
+                parts.push(part.tail);
+                parts.push(part.head);
+            }
+        }
+
+        return Collections.unmodifiableList(innerRoutes);
     }
 
     /**
@@ -135,12 +241,7 @@ public class Route implements Comparable<Route> {
                     + this.toString() + "'");
         }
 
-        Route newRoute = new Route(sourceCity, route.getDestinationCity(),
-                distance + route.getDistance());
-        newRoute.addRoutes(getInnerRoutes());
-        newRoute.addRoutes(route.getInnerRoutes());
-
-        return newRoute;
+        return new Route(this, route);
     }
 
     /**
@@ -185,20 +286,16 @@ public class Route implements Comparable<Route> {
     }
 
     private boolean compareCompositeRoute(Route r1, Route r2) {
-        List<Route> innerRoutesR1 = r1.getInnerRoutes();
-        List<Route> innerRoutesR2 = r2.getInnerRoutes();
-
-        if (innerRoutesR1.size() != innerRoutesR2.size()) {
+        if (r1.fingerprint != r2.fingerprint || r1.length != r2.length
+                || r1.distance != r2.distance) {
             return false;
         }
 
-        for (int i = 0; i < innerRoutesR1.size(); i++) {
-            if (!innerRoutesR1.get(i).equals(innerRoutesR2.get(i))) {
-                return false;
-            }
+        if (r1.head == r2.head && r1.tail == r2.tail) {
+            return true;
         }
 
-        return true;
+        return r1.getInnerRoutes().equals(r2.getInnerRoutes());
     }
 
     /**
@@ -217,6 +314,10 @@ public class Route implements Comparable<Route> {
             return false;
         }
 
+        if (this == obj) {
+            return true;
+        }
+
         Route route = Route.class.cast(obj);
 
         if (getType() != route.getType()) {
@@ -232,14 +333,6 @@ public class Route implements Comparable<Route> {
 
     @Override
     public int hashCode() {
-        int code = 1;
-
-        for (Route route : getInnerRoutes()) {
-            code = (int) route.getSourceCity().hashCode()
-                    * route.getDestinationCity().hashCode() * route.distance
-                    * code;
-        }
-
-        return code;
+        return hashCode;
     }
 }
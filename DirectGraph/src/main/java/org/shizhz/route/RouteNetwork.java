@@ -1,16 +1,29 @@
 package org.shizhz.route;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.shizhz.exception.IllegalInputException;
 import org.shizhz.exception.NoRouteExistingException;
-import org.shizhz.matrix.ConnectionRouteMatrix;
+import org.shizhz.matrix.AdaptiveLongRouteMatrix;
+import org.shizhz.matrix.AggregateRouteMatrix;
+import org.shizhz.matrix.AllPairsShortestPaths;
+import org.shizhz.matrix.DistanceRouteMatrix;
+import org.shizhz.matrix.LinearRecurrence;
+import org.shizhz.matrix.LongSemiring;
 import org.shizhz.matrix.PathRouteMatrix;
+import org.shizhz.matrix.ReachabilityRouteMatrix;
 import org.shizhz.matrix.RouteMatrix;
+import org.shizhz.matrix.SparseLongRouteMatrix;
+import org.shizhz.matrix.TripAggregate;
 
 /**
  * The class <code>RouteNetwork</code> represents the network of filled routes.
@@ -32,12 +45,53 @@ public final class RouteNetwork {
     private RouteMatrix<List<Route>> pathMatrix = PathRouteMatrix
             .newInstance();
 
-    private RouteMatrix<Integer> connectedMatrix = ConnectionRouteMatrix
-            .newInstance();
+    /**
+     * Starts on sparse rows, and the powers of it switch to dense storage
+     * once they fill in.
+     */
+    private AdaptiveLongRouteMatrix connectedMatrix = AdaptiveLongRouteMatrix
+            .newConnectionInstance();
 
-    private RouteMatrix<List<Route>> trasitiveClosure = PathRouteMatrix
+    private RouteMatrix<Boolean> reachabilityMatrix = ReachabilityRouteMatrix
             .newInstance();
 
+    private List<Route> routes = new ArrayList<Route>();
+
+    /**
+     * The same routes as <code>routes</code>, to drop the ones added again in
+     * O(1).
+     */
+    private Set<Route> routeSet = new HashSet<Route>();
+
+    /**
+     * Transitive closures and shortest paths are computed on demand, and
+     * dropped when new routes are added.
+     */
+    private AllPairsShortestPaths shortestPaths;
+
+    private ReachabilityRouteMatrix reachabilityClosure;
+
+    /**
+     * The matrix of trip aggregates keeps four dense arrays, so it is only
+     * built for the queries on aggregates, and dropped when new routes are
+     * added.
+     */
+    private RouteMatrix<TripAggregate> aggregateMatrix;
+
+    /**
+     * The dense min-plus matrix of distances, only built for the queries on
+     * the shortest distances with exact stops.
+     */
+    private RouteMatrix<Integer> distanceMatrix;
+
+    /**
+     * The counting matrices modulo each prime, and the recurrences of the
+     * trips amounts of each city pair found on them.
+     */
+    private final Map<Long, SparseLongRouteMatrix> modularMatrices = new HashMap<Long, SparseLongRouteMatrix>();
+
+    private final Map<String, LinearRecurrence> recurrences = new HashMap<String, LinearRecurrence>();
+
     public RouteNetwork() {
     }
 
@@ -63,18 +117,143 @@ public final class RouteNetwork {
     }
 
     private City getSourceCity(String routes) {
-        return new City(routes.split(ROUTE_DELIMITER)[0]);
+        return City.valueOf(routes.split(ROUTE_DELIMITER)[0]);
     }
 
     private City getDestCity(String routes) {
         String[] array = routes.split(ROUTE_DELIMITER);
-        return new City(array[array.length - 1]);
+        return City.valueOf(array[array.length - 1]);
     }
 
     private int getStops(String routes) {
         return routes.split(ROUTE_DELIMITER).length - 1;
     }
 
+    /**
+     * Check whether there is any route from one city to the other, which is
+     * cheap compared with counting or enumerating the routes, so queries on
+     * unreachable pairs can fail fast.
+     * 
+     * @throws NoRouteExistingException
+     *             Thrown if the destination is not reachable.
+     */
+    private void validateReachable(City from, City to)
+            throws NoRouteExistingException {
+        if (reachabilityClosure == null) {
+            reachabilityClosure = (ReachabilityRouteMatrix) reachabilityMatrix
+                    .getMatrixTransitiveClosure();
+        }
+
+        if (!reachabilityClosure.isReachable(from, to)) {
+            throw new NoRouteExistingException(MESSAGE_NO_SUCH_ROUTE);
+        }
+    }
+
+    private AllPairsShortestPaths getShortestPaths() {
+        if (shortestPaths == null) {
+            shortestPaths = AllPairsShortestPaths.newInstance(routes);
+        }
+
+        return shortestPaths;
+    }
+
+    private RouteMatrix<Integer> getDistanceMatrix() {
+        if (distanceMatrix == null) {
+            distanceMatrix = DistanceRouteMatrix.newInstance();
+            distanceMatrix.addRoutes(routes);
+            distanceMatrix.build();
+        }
+
+        return distanceMatrix;
+    }
+
+    private RouteMatrix<TripAggregate> getAggregateMatrix() {
+        if (aggregateMatrix == null) {
+            aggregateMatrix = AggregateRouteMatrix.newInstance();
+            aggregateMatrix.addRoutes(routes);
+            aggregateMatrix.build();
+        }
+
+        return aggregateMatrix;
+    }
+
+    /**
+     * Whether it is cheaper to compute the sum of powers of the whole
+     * connection matrix for a query with the given stops, rather than pushing
+     * the row of the source city through the routes once for each stop. The
+     * former costs O(log(stops)) multiplications of matrices, which turn to
+     * dense storage after a few stops. The latter costs
+     * O(stops * (n + E)).
+     */
+    private boolean isPowerSumCheaper(int stops) {
+        long size = connectedMatrix.getMatrixDimensions();
+        long vectorCost = stops
+                * (size + connectedMatrix.getNonZeroElementsAmount());
+        long powerSumCost = 3 * (32 - Integer.numberOfLeadingZeros(stops))
+                * size * size * size;
+        return powerSumCost < vectorCost;
+    }
+
+    /**
+     * Find the linear recurrence of the trips amounts between two cities
+     * modulo a prime, indexed by <code>stops - 1</code>. The recurrence of an
+     * element of the powers of the connection matrix has an order of at most
+     * n, and the one of their sums at most n + 1, so it is found from the
+     * first 2n + 2 amounts.
+     */
+    private LinearRecurrence getRecurrence(City from, City to, long modulus,
+            boolean accumulated) {
+        String key = from.getName() + ROUTE_DELIMITER + to.getName() + ":"
+                + modulus + (accumulated ? ":sum" : "");
+        LinearRecurrence recurrence = recurrences.get(key);
+        if (recurrence != null) {
+            return recurrence;
+        }
+
+        SparseLongRouteMatrix matrix = modularMatrices.get(modulus);
+        if (matrix == null) {
+            matrix = new SparseLongRouteMatrix(LongSemiring.modular(modulus));
+            matrix.addRoutes(routes);
+            matrix.build();
+            modularMatrices.put(modulus, matrix);
+        }
+
+        long[] amounts = matrix.getPowerElements(from, to,
+                2 * matrix.getMatrixDimensions() + 2);
+        if (accumulated) {
+            for (int i = 1; i < amounts.length; i++) {
+                amounts[i] = (amounts[i - 1] + amounts[i]) % modulus;
+            }
+        }
+
+        recurrence = LinearRecurrence.find(amounts, modulus);
+        recurrences.put(key, recurrence);
+        return recurrence;
+    }
+
+    private long tripsAmountModulo(String route, long stops, long modulus,
+            boolean accumulated) throws IllegalInputException,
+            NoRouteExistingException {
+        validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
+
+        if (stops < 1) {
+            throw new IllegalInputException(
+                    "The number of stops can not less than 1.");
+        }
+
+        try {
+            LinearRecurrence.validateModulus(modulus);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalInputException(e.getMessage());
+        }
+
+        City from = getSourceCity(route);
+        City to = getDestCity(route);
+        validateReachable(from, to);
+
+        return getRecurrence(from, to, modulus, accumulated).getTerm(stops - 1);
+    }
+
     private List<Route> findRoutes(City from, City to, int stops) {
         List<Route> result = pathMatrix.power(stops).getMatrixElement(from,
                 to);
@@ -110,16 +289,37 @@ public final class RouteNetwork {
     }
 
     /**
-     * Add routes to this route network.
+     * Add routes to this route network. Routes added before are ignored, and
+     * only the new ones are built into the matrices.
      * 
      * @param routes
      */
     public void addRoutes(Collection<Route> routes) {
-        pathMatrix.addRoutes(routes);
+        List<Route> newRoutes = new ArrayList<Route>();
+        if (routes != null) {
+            for (Route route : routes) {
+                if (routeSet.add(route)) {
+                    newRoutes.add(route);
+                }
+            }
+        }
+        if (newRoutes.isEmpty()) {
+            return;
+        }
+
+        this.routes.addAll(newRoutes);
+        shortestPaths = null;
+        pathMatrix.addRoutes(newRoutes);
         pathMatrix.build();
-        trasitiveClosure = pathMatrix.getMatrixTransitiveClosure();
-        connectedMatrix.addRoutes(routes);
+        connectedMatrix.addRoutes(newRoutes);
         connectedMatrix.build();
+        reachabilityMatrix.addRoutes(newRoutes);
+        reachabilityMatrix.build();
+        reachabilityClosure = null;
+        aggregateMatrix = null;
+        distanceMatrix = null;
+        modularMatrices.clear();
+        recurrences.clear();
     }
 
     /**
@@ -164,13 +364,14 @@ public final class RouteNetwork {
      *            The route pair.
      * @param stops
      *            Exact stops the route crossed.
-     * @return The amount number of different trips.
+     * @return The exact amount number of different trips, however large it
+     *         is.
      * @throws IllegalInputException
      *             Thrown if the input is not valid.
      * @throws NoRouteExistingException
      *             Thrown if no trip found.
      */
-    public int tripsAmountWithStops(String route, int stops)
+    public BigInteger tripsAmountWithStops(String route, int stops)
             throws IllegalInputException, NoRouteExistingException {
         validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
 
@@ -179,9 +380,14 @@ public final class RouteNetwork {
                     "The number of stops can not less than 1.");
         }
 
-        RouteMatrix<Integer> power = connectedMatrix.power(stops);
-        Integer tripsAmount = power.getMatrixElement(getSourceCity(route),
-                getDestCity(route));
+        City from = getSourceCity(route);
+        City to = getDestCity(route);
+        validateReachable(from, to);
+
+        // Only the row of the source city is needed, so it is pushed through
+        // the routes instead of computing the power of the whole matrix.
+        BigInteger tripsAmount = connectedMatrix.getExactPowerElement(from, to,
+                stops);
 
         if (tripsAmount == null) {
             throw new NoRouteExistingException(MESSAGE_NO_SUCH_ROUTE);
@@ -198,13 +404,14 @@ public final class RouteNetwork {
      *            The route pair.
      * @param stops
      *            The maximum stops each trip crossed.
-     * @return The amount number of different trips.
+     * @return The exact amount number of different trips, however large it
+     *         is.
      * @throws IllegalInputException
      *             Thrown if the input is not valid.
      * @throws NoRouteExistingException
      *             Thrown if no trip found.
      */
-    public int tripsAmountWithMaximumStops(String route, int stops)
+    public BigInteger tripsAmountWithMaximumStops(String route, int stops)
             throws IllegalInputException, NoRouteExistingException {
         validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
 
@@ -215,19 +422,102 @@ public final class RouteNetwork {
 
         City from = getSourceCity(route);
         City to = getDestCity(route);
+        validateReachable(from, to);
 
-        Integer tripsAmount = 0;
+        BigInteger tripsAmount = isPowerSumCheaper(stops) ? ((AdaptiveLongRouteMatrix) connectedMatrix
+                .powerSum(stops)).getExactMatrixElement(from, to)
+                : connectedMatrix.getExactPowerSumElement(from, to, stops);
 
-        for (int i = 1; i <= stops; i++) {
-            RouteMatrix<Integer> power = connectedMatrix.power(i);
-            Integer trips = power.getMatrixElement(from, to);
-            tripsAmount += (trips == null ? 0 : trips);
+        if (tripsAmount == null) {
+            throw new NoRouteExistingException(MESSAGE_NO_SUCH_ROUTE);
         }
+        return tripsAmount;
+    }
 
-        if (tripsAmount == 0) {
+    /**
+     * Find the number of trips with exact stops, along with the shortest,
+     * longest and average distances of them, by one power of the matrix of
+     * trip aggregates.
+     * 
+     * @param route
+     *            The route pair.
+     * @param stops
+     *            Exact stops the route crossed.
+     * @return The aggregates of the trips.
+     * @throws IllegalInputException
+     *             Thrown if the input is not valid.
+     * @throws NoRouteExistingException
+     *             Thrown if no trip found.
+     */
+    public TripAggregate tripsAggregateWithStops(String route, int stops)
+            throws IllegalInputException, NoRouteExistingException {
+        validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
+
+        if (stops < 1) {
+            throw new IllegalInputException(
+                    "The number of stops can not less than 1.");
+        }
+
+        City from = getSourceCity(route);
+        City to = getDestCity(route);
+        validateReachable(from, to);
+
+        TripAggregate aggregate = getAggregateMatrix().power(stops)
+                .getMatrixElement(from, to);
+
+        if (aggregate == null) {
             throw new NoRouteExistingException(MESSAGE_NO_SUCH_ROUTE);
         }
-        return tripsAmount;
+
+        return aggregate;
+    }
+
+    /**
+     * Find the amount number of trips with exact stops modulo a prime, for
+     * stops too many to count the trips one stop after another. The linear
+     * recurrence of the amounts is found once for each city pair, then the
+     * amount is computed in O(n^2 log(stops)).
+     * 
+     * @param route
+     *            The route pair.
+     * @param stops
+     *            Exact stops the route crossed.
+     * @param modulus
+     *            A prime not greater than <code>Integer.MAX_VALUE</code>, e.g.
+     *            {@link LinearRecurrence#DEFAULT_MODULUS}.
+     * @return The amount number of different trips modulo the prime, which
+     *         may be 0 although there are trips.
+     * @throws IllegalInputException
+     *             Thrown if the input is not valid.
+     * @throws NoRouteExistingException
+     *             Thrown if the destination is not reachable.
+     */
+    public long tripsAmountWithStops(String route, long stops, long modulus)
+            throws IllegalInputException, NoRouteExistingException {
+        return tripsAmountModulo(route, stops, modulus, false);
+    }
+
+    /**
+     * Find the amount number of trips with at most the specified stops modulo
+     * a prime, the same as <code>tripsAmountWithStops(route, stops,
+     * modulus)</code> does.
+     * 
+     * @param route
+     *            The route pair.
+     * @param stops
+     *            The maximum stops each trip crossed.
+     * @param modulus
+     *            A prime not greater than <code>Integer.MAX_VALUE</code>.
+     * @return The amount number of different trips modulo the prime.
+     * @throws IllegalInputException
+     *             Thrown if the input is not valid.
+     * @throws NoRouteExistingException
+     *             Thrown if the destination is not reachable.
+     */
+    public long tripsAmountWithMaximumStops(String route, long stops,
+            long modulus) throws IllegalInputException,
+            NoRouteExistingException {
+        return tripsAmountModulo(route, stops, modulus, true);
     }
 
     /**
@@ -251,11 +541,13 @@ public final class RouteNetwork {
                     "The distance threshold should be a positive number.");
         }
 
+        City from = getSourceCity(route);
+        City to = getDestCity(route);
+        validateReachable(from, to);
+
         List<Route> candidates = new ArrayList<>();
         int dimension = pathMatrix.getMatrixDimensions();
         RouteMatrix<List<Route>> product = pathMatrix.getMultiplyIdentify();
-        City from = getSourceCity(route);
-        City to = getDestCity(route);
 
         while (true) {
             List<Route> loopResult = new ArrayList<Route>();
@@ -320,22 +612,73 @@ public final class RouteNetwork {
     public Route shortestPath(String route) throws IllegalInputException,
             NoRouteExistingException {
         validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
-        List<Route> routes = trasitiveClosure.getMatrixElement(
+        validateReachable(getSourceCity(route), getDestCity(route));
+
+        return getShortestPaths().getShortestPath(getSourceCity(route),
+                getDestCity(route));
+    }
+
+    /**
+     * Find the distance of the shortest route between two cities.
+     * 
+     * @param route
+     *            The input city pair.
+     * @return The shortest distance.
+     * @throws IllegalInputException
+     *             Thrown if the input is not valid.
+     * @throws NoRouteExistingException
+     *             Thrown if no route found.
+     */
+    public int shortestDistance(String route) throws IllegalInputException,
+            NoRouteExistingException {
+        validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
+        validateReachable(getSourceCity(route), getDestCity(route));
+
+        int distance = getShortestPaths().getShortestDistance(
                 getSourceCity(route), getDestCity(route));
 
-        if (routes == null) {
+        if (distance == AllPairsShortestPaths.UNREACHABLE) {
             throw new NoRouteExistingException(MESSAGE_NO_SUCH_ROUTE);
         }
 
-        Collections.sort(routes, new Comparator<Route>() {
+        return distance;
+    }
 
-            @Override
-            public int compare(Route o1, Route o2) {
-                return o1.getDistance() - o2.getDistance();
-            }
-        });
+    /**
+     * Find the distance of the shortest route between two cities, which
+     * crosses exactly the specified number of stops.
+     * 
+     * @param route
+     *            The input city pair.
+     * @param stops
+     *            Exact stops the route crossed.
+     * @return The shortest distance.
+     * @throws IllegalInputException
+     *             Thrown if the input is not valid.
+     * @throws NoRouteExistingException
+     *             Thrown if no route found.
+     */
+    public int shortestDistanceWithStops(String route, int stops)
+            throws IllegalInputException, NoRouteExistingException {
+        validateRoute(route, ROUTE_PAIR_INPUT_PATTERN);
+
+        if (stops < 1) {
+            throw new IllegalInputException(
+                    "The number of stops can not less than 1.");
+        }
+
+        City from = getSourceCity(route);
+        City to = getDestCity(route);
+        validateReachable(from, to);
+
+        Integer distance = getDistanceMatrix().power(stops).getMatrixElement(
+                from, to);
+
+        if (distance == null) {
+            throw new NoRouteExistingException(MESSAGE_NO_SUCH_ROUTE);
+        }
 
-        return routes.get(0);
+        return distance;
     }
 
     /**
@@ -354,7 +697,7 @@ public final class RouteNetwork {
         for (City row : cities) {
             result.append(String.format("%4s", row.getName()));
             for (City column : cities) {
-                Integer element = connectedMatrix.getMatrixElement(row, column);
+                Long element = connectedMatrix.getMatrixElement(row, column);
                 result.append(String.format("%4s", element == null ? 0
                         : element));
             }
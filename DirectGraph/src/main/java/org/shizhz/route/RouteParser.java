@@ -105,14 +105,14 @@ public class RouteParser {
         String name = getSubstringListByPattern(route, CITY_LEGAL_PATTERN).get(
                 0);
 
-        return new City(name);
+        return City.valueOf(name);
     }
 
     private City parseDestinationCity(String route) {
         String name = getSubstringListByPattern(route, CITY_LEGAL_PATTERN).get(
                 1);
 
-        return new City(name);
+        return City.valueOf(name);
     }
 
     private int parseDistance(String route) {
@@ -151,15 +151,18 @@ public class RouteParser {
      * @throws IllegalInputException
      */
     public List<Route> parse(String routesInput, String delimiter) throws IllegalInputException {
-        Map<String, Route> routes = new LinkedHashMap<>();
+        // Keyed by the ids of the source city and the destination city.
+        Map<Long, Route> routes = new LinkedHashMap<>();
 
         for (String route : splitRoutes(routesInput, delimiter)) {
             Route r = parseRoute(route);
+            Long key = ((long) r.getSourceCity().getId() << 32)
+                    | r.getDestinationCity().getId();
 
-            if (routes.containsKey(r.shortRouteRepr())) {
+            if (routes.containsKey(key)) {
                 throw new IllegalInputException(
                         "Duplicate routes are not permitted: " + route + ", "
-                                + routes.get(r.shortRouteRepr()).toString());
+                                + routes.get(key).toString());
             }
 
             if (r.getSourceCity().equals(r.getDestinationCity())) {
@@ -168,7 +171,7 @@ public class RouteParser {
                                 + r.toString());
             }
 
-            routes.put(r.shortRouteRepr(), r);
+            routes.put(key, r);
         }
         return new ArrayList<Route>(routes.values());
     }
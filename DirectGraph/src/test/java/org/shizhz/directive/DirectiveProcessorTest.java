@@ -2,6 +2,7 @@ package org.shizhz.directive;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,6 +11,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.shizhz.exception.DirectiveException;
 import org.shizhz.exception.UnRecognizedDirectiveException;
+import org.shizhz.route.RouteNetwork;
 import org.shizhz.util.Logger;
 
 public class DirectiveProcessorTest {
@@ -132,6 +134,21 @@ public class DirectiveProcessorTest {
                 processor.process("ts a-c, 4"));
     }
 
+    @Test
+    public void testProcessTripsAggregateWithStops() throws DirectiveException {
+        processor.process(parser.parse("g " + routesInput));
+        assertEquals(DirectiveInfo.DirectiveType.TSA.getDesc()
+                + " A-C : 3 trips, shortest 18, longest 29, average 24.00",
+                processor.process("tsa a-c, 4"));
+    }
+
+    @Test(expected = DirectiveException.class)
+    public void testProcessTripsAggregateWithStopsException()
+            throws DirectiveException {
+        processor.process(parser.parse("g " + routesInput));
+        processor.process(parser.parse("tsa A-C"));
+    }
+
     @Test(expected = DirectiveException.class)
     public void testProcessTripsWithMaximumStopsException()
             throws DirectiveException {
@@ -176,6 +193,38 @@ public class DirectiveProcessorTest {
                 processor.process("tms c-c, 3"));
     }
 
+    @Test
+    public void testProcessTripsModuloPrime() throws Exception {
+        processor.process(parser.parse("g " + routesInput));
+        assertEquals(DirectiveInfo.DirectiveType.TS.getDesc() + " A-C : 3",
+                processor.process("ts a-c, 4, 1000000007"));
+        assertEquals(DirectiveInfo.DirectiveType.TMS.getDesc() + " C-C : 2",
+                processor.process("tms c-c, 3, 7"));
+
+        RouteNetwork network = new RouteNetwork(routesInput);
+        assertEquals(DirectiveInfo.DirectiveType.TS.getDesc() + " A-C : "
+                + network.tripsAmountWithStops("A-C", 100000000000L, 1000000007L),
+                processor.process("ts a-c, 100000000000, 1000000007"));
+        assertEquals(DirectiveInfo.DirectiveType.TMS.getDesc() + " C-C : "
+                + network.tripsAmountWithMaximumStops("C-C", 100000000000L, 1000000007L),
+                processor.process("tms c-c, 100000000000, 1000000007"));
+    }
+
+    @Test
+    public void testProcessTripsModuloPrimeException()
+            throws DirectiveException {
+        processor.process(parser.parse("g " + routesInput));
+        for (String directive : new String[] { "ts a-c, 100000000000",
+                "tms c-c, 3, 8", "ts a-c, 4, a", "ts a-c, 4, 7, 1" }) {
+            try {
+                processor.process(directive);
+                fail("Expected an exception for " + directive);
+            } catch (Exception e) {
+                assertEquals(DirectiveException.class, e.getClass());
+            }
+        }
+    }
+
     @Test(expected = DirectiveException.class)
     public void testProcessTripsLessThanDistanceException()
             throws DirectiveException {
@@ -250,6 +299,21 @@ public class DirectiveProcessorTest {
                 processor.process(parser.parse("sd A-C,B-B, a-a")));
     }
 
+    @Test
+    public void testProcessShortestDistanceWithStops()
+            throws DirectiveException {
+        processor.process(parser.parse("g " + routesInput));
+        assertEquals(DirectiveInfo.DirectiveType.SDS.getDesc() + " A-C : 18",
+                processor.process("sds a-c, 4"));
+    }
+
+    @Test(expected = DirectiveException.class)
+    public void testProcessShortestDistanceWithStopsException()
+            throws DirectiveException {
+        processor.process(parser.parse("g " + routesInput));
+        processor.process(parser.parse("sds A-C"));
+    }
+
     @Test
     public void testPrintNetwork() throws DirectiveException {
         String expectedMatrix = "Print Route Network \n       A   B   C   D   E\n"
@@ -0,0 +1,212 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+
+public class AdaptiveLongRouteMatrixTest {
+
+    private static RouteMatrix<Long> build(RouteMatrix<Long> matrix,
+            List<Route> routes) {
+        matrix.addRoutes(routes);
+        matrix.build();
+        return matrix;
+    }
+
+    /**
+     * A random network of 26 cities, where each city has about the given
+     * number of routes to the others.
+     */
+    private static List<Route> randomRoutes(long seed, int routesPerCity) {
+        Random random = new Random(seed);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 26 * routesPerCity; i++) {
+            String from = String.valueOf((char) ('A' + random.nextInt(26)));
+            String to = String.valueOf((char) ('A' + random.nextInt(26)));
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+
+        return routes;
+    }
+
+    private void assertMatrixEqual(RouteMatrix<Long> expected,
+            RouteMatrix<Long> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertArrayEquals(cities.toArray(), actual.getMatrixRouteCities()
+                .toArray());
+
+        for (City row : cities) {
+            assertEquals(expected.getMatrixRow(row), actual.getMatrixRow(row));
+            assertEquals(expected.getMatrixColumn(row),
+                    actual.getMatrixColumn(row));
+            for (City column : cities) {
+                assertEquals(expected.getMatrixElement(row, column),
+                        actual.getMatrixElement(row, column));
+            }
+        }
+    }
+
+    @Test
+    public void testPowerChainTurnsDense() {
+        List<Route> routes = randomRoutes(20140705, 2);
+        for (LongSemiring semiring : new LongSemiring[] {
+                LongSemiring.COUNTING, LongSemiring.MIN_PLUS }) {
+            RouteMatrix<Long> reference = build(
+                    DenseLongRouteMatrix.newInstance(semiring), routes);
+            AdaptiveLongRouteMatrix matrix = (AdaptiveLongRouteMatrix) build(
+                    AdaptiveLongRouteMatrix.newInstance(semiring), routes);
+
+            assertFalse(matrix.isDense());
+            assertMatrixEqual(reference, matrix);
+
+            for (int i = 2; i <= 12; i++) {
+                assertMatrixEqual(reference.power(i), matrix.power(i));
+            }
+            assertTrue(((AdaptiveLongRouteMatrix) matrix.power(12)).isDense());
+
+            // Mixed representations.
+            assertMatrixEqual(reference.add(reference.power(12)),
+                    matrix.add(matrix.power(12)));
+            assertMatrixEqual(reference.multiply(reference.power(12)),
+                    matrix.multiply(matrix.power(12)));
+        }
+    }
+
+    @Test
+    public void testExactCountsBeyondLong() {
+        // The complete network of 8 cities, whose counts exceed long after
+        // about 22 stops.
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                if (i != j) {
+                    routes.add(new Route(String.valueOf((char) ('A' + i)),
+                            String.valueOf((char) ('A' + j)), 3));
+                }
+            }
+        }
+        SparseLongRouteMatrix reference = (SparseLongRouteMatrix) build(
+                SparseConnectionRouteMatrix.newInstance(), routes);
+        AdaptiveLongRouteMatrix matrix = AdaptiveLongRouteMatrix
+                .newConnectionInstance();
+        build(matrix, routes);
+        assertTrue(matrix.isDense());
+
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        BigInteger expected = reference.getExactPowerElement(a, b, 30);
+        assertTrue(expected.bitLength() > 63);
+        assertEquals(expected, matrix.getExactPowerElement(a, b, 30));
+        assertEquals(expected,
+                ((AdaptiveLongRouteMatrix) matrix.power(30))
+                        .getExactMatrixElement(a, b));
+
+        expected = reference.getExactPowerSumElement(a, b, 30);
+        assertEquals(expected, matrix.getExactPowerSumElement(a, b, 30));
+        assertEquals(expected,
+                ((AdaptiveLongRouteMatrix) matrix.powerSum(30))
+                        .getExactMatrixElement(a, b));
+    }
+
+    @Test
+    public void testIncrementalBuild() {
+        List<Route> routes = randomRoutes(20140708, 8);
+        RouteMatrix<Long> reference = build(
+                DenseLongRouteMatrix.newInstance(LongSemiring.COUNTING),
+                routes);
+
+        // Built on sparse rows first, then turning dense with the rest.
+        AdaptiveLongRouteMatrix matrix = AdaptiveLongRouteMatrix
+                .newConnectionInstance();
+        build(matrix, routes.subList(0, 10));
+        assertFalse(matrix.isDense());
+        build(matrix, routes.subList(10, routes.size()));
+        assertTrue(matrix.isDense());
+        assertMatrixEqual(reference, matrix);
+        assertMatrixEqual(reference.power(3), matrix.power(3));
+    }
+
+    @Test
+    public void testTransitiveClosure() {
+        List<Route> routes = randomRoutes(20140706, 1);
+        RouteMatrix<Long> reference = build(
+                DenseLongRouteMatrix.newInstance(LongSemiring.MIN_PLUS),
+                routes);
+        RouteMatrix<Long> matrix = build(
+                AdaptiveLongRouteMatrix.newInstance(LongSemiring.MIN_PLUS),
+                routes);
+
+        assertMatrixEqual(reference.getMatrixTransitiveClosure(),
+                matrix.getMatrixTransitiveClosure());
+    }
+
+    @Test
+    public void testHysteresis() {
+        // 8 cities in a cycle, so the k-th power has exactly 8 elements,
+        // with the fill ratio of 1/8.
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 8; i++) {
+            routes.add(new Route(String.valueOf((char) ('A' + i)), String
+                    .valueOf((char) ('A' + (i + 1) % 8)), 1));
+        }
+        AdaptiveLongRouteMatrix cycle = (AdaptiveLongRouteMatrix) build(
+                AdaptiveLongRouteMatrix.newInstance(LongSemiring.BOOLEAN),
+                routes);
+        assertFalse(cycle.isDense());
+        assertFalse(((AdaptiveLongRouteMatrix) cycle.power(5)).isDense());
+
+        // Sum of the first 3 powers, 3/8 of the elements, turns dense.
+        AdaptiveLongRouteMatrix sum = (AdaptiveLongRouteMatrix) cycle
+                .powerSum(3);
+        assertTrue(sum.isDense());
+
+        // Keeping the column of A only leaves 3 of 64 elements, which turns
+        // sparse, while keeping the columns of A and B leaves 6 of them, which
+        // is not sparse enough to switch back.
+        AdaptiveLongRouteMatrix columns = (AdaptiveLongRouteMatrix) AdaptiveLongRouteMatrix
+                .newInstance(LongSemiring.BOOLEAN);
+        columns.addMatrixRouteCities(cycle.getMatrixRouteCities());
+        columns.setMatrixElement(City.valueOf("A"), City.valueOf("A"), 1L);
+        AdaptiveLongRouteMatrix product = (AdaptiveLongRouteMatrix) sum
+                .multiply(columns);
+        assertFalse(product.isDense());
+
+        columns.setMatrixElement(City.valueOf("B"), City.valueOf("B"), 1L);
+        product = (AdaptiveLongRouteMatrix) sum.multiply(columns);
+        assertTrue(product.isDense());
+        assertEquals(Long.valueOf(1),
+                product.getMatrixElement(City.valueOf("G"), City.valueOf("A")));
+
+        // The identify has a fill ratio of 1/8 as well, but starts sparse.
+        assertFalse(((AdaptiveLongRouteMatrix) cycle.getMultiplyIdentify())
+                .isDense());
+    }
+
+    @Test
+    public void testSetMatrixElement() {
+        RouteMatrix<Long> matrix = build(
+                AdaptiveLongRouteMatrix.newInstance(LongSemiring.COUNTING),
+                randomRoutes(20140707, 3));
+        matrix.setMatrixElement(City.valueOf("0"), City.valueOf("A"), 5L);
+        assertEquals(Long.valueOf(5),
+                matrix.getMatrixElement(City.valueOf("0"), City.valueOf("A")));
+        assertEquals(27, matrix.getMatrixDimensions());
+
+        RouteMatrix<Long> square = matrix.power(2);
+        for (City city : matrix.getMatrixRouteCities()) {
+            Long element = matrix.getMatrixElement(City.valueOf("A"), city);
+            assertEquals(element == null ? null : element * 5,
+                    square.getMatrixElement(City.valueOf("0"), city));
+        }
+    }
+}
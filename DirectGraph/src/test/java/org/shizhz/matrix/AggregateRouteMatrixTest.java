@@ -0,0 +1,143 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class AggregateRouteMatrixTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private RouteMatrix<TripAggregate> matrix;
+
+    private RouteMatrix<List<Route>> paths;
+
+    @Before
+    public void setup() throws IllegalInputException {
+        List<Route> routes = RouteParser.newInstance().parse(ROUTES_INPUT);
+        matrix = AggregateRouteMatrix.newInstance();
+        matrix.addRoutes(routes);
+        matrix.build();
+
+        paths = PathRouteMatrix.newInstance();
+        paths.addRoutes(routes);
+        paths.build();
+    }
+
+    private TripAggregate aggregate(List<Route> trips) {
+        if (trips == null || trips.isEmpty()) {
+            return null;
+        }
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long sum = 0;
+        for (Route trip : trips) {
+            min = Math.min(min, trip.getDistance());
+            max = Math.max(max, trip.getDistance());
+            sum += trip.getDistance();
+        }
+
+        return new TripAggregate(trips.size(), min, max, sum);
+    }
+
+    @Test
+    public void testBuild() {
+        assertEquals(new TripAggregate(1, 5, 5, 5),
+                matrix.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+        assertNull(matrix.getMatrixElement(City.valueOf("B"), City.valueOf("A")));
+
+        // Multiple routes between the same pair of cities are all kept.
+        RouteMatrix<TripAggregate> multiple = AggregateRouteMatrix
+                .newInstance();
+        multiple.addRoutes(Arrays.asList(new Route("A", "B", 5), new Route(
+                "A", "B", 2)));
+        multiple.build();
+        assertEquals(new TripAggregate(2, 2, 5, 7),
+                multiple.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+    }
+
+    @Test
+    public void testIncrementalBuild() {
+        RouteMatrix<TripAggregate> incremental = AggregateRouteMatrix
+                .newInstance();
+        incremental.addRoutes(Arrays.asList(new Route("A", "B", 5), new Route(
+                "B", "C", 4)));
+        incremental.build();
+        incremental.addRoutes(Arrays.asList(new Route("A", "B", 5), new Route(
+                "A", "B", 2), new Route("D", "A", 1)));
+        incremental.build();
+
+        assertEquals(new TripAggregate(2, 2, 5, 7),
+                incremental.getMatrixElement(City.valueOf("A"),
+                        City.valueOf("B")));
+        assertEquals(new TripAggregate(1, 4, 4, 4),
+                incremental.getMatrixElement(City.valueOf("B"),
+                        City.valueOf("C")));
+        assertEquals(new TripAggregate(2, 3, 6, 9), incremental.power(2)
+                .getMatrixElement(City.valueOf("D"), City.valueOf("B")));
+    }
+
+    @Test
+    public void testPower() {
+        List<City> cities = matrix.getMatrixRouteCities();
+        for (int stops = 1; stops <= 6; stops++) {
+            RouteMatrix<TripAggregate> power = matrix.power(stops);
+            RouteMatrix<List<Route>> pathPower = paths.power(stops);
+            for (City row : cities) {
+                for (City column : cities) {
+                    assertEquals(
+                            aggregate(pathPower.getMatrixElement(row, column)),
+                            power.getMatrixElement(row, column));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAdd() {
+        RouteMatrix<TripAggregate> sum = matrix.add(matrix.power(2));
+        City a = City.valueOf("A");
+
+        // A-B-C and A-D-C.
+        assertEquals(new TripAggregate(2, 9, 13, 22),
+                sum.getMatrixElement(a, City.valueOf("C")));
+        // A-E, and A-D-E.
+        assertEquals(new TripAggregate(2, 7, 11, 18),
+                sum.getMatrixElement(a, City.valueOf("E")));
+    }
+
+    @Test
+    public void testSetMatrixElement() {
+        TripAggregate element = new TripAggregate(4, 1, 9, 20);
+        matrix.setMatrixElement(City.valueOf("B"), City.valueOf("A"), element);
+        assertEquals(element,
+                matrix.getMatrixElement(City.valueOf("B"), City.valueOf("A")));
+
+        matrix.setMatrixElement(City.valueOf("B"), City.valueOf("A"), null);
+        assertNull(matrix.getMatrixElement(City.valueOf("B"), City.valueOf("A")));
+
+        matrix.setMatrixElement(City.valueOf("0"), City.valueOf("A"), element);
+        assertEquals(element,
+                matrix.getMatrixElement(City.valueOf("0"), City.valueOf("A")));
+        assertEquals(new TripAggregate(1, 5, 5, 5),
+                matrix.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+    }
+
+    @Test
+    public void testMultiplyIdentify() {
+        RouteMatrix<TripAggregate> product = matrix.multiply(matrix
+                .getMultiplyIdentify());
+        for (City row : matrix.getMatrixRouteCities()) {
+            assertEquals(matrix.getMatrixRow(row), product.getMatrixRow(row));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class AllPairsShortestPathsTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private AllPairsShortestPaths shortestPaths;
+
+    private int parallelism = KernelConfig.getParallelism();
+
+    @After
+    public void restoreKernelConfig() {
+        KernelConfig.setBlockSize(KernelConfig.DEFAULT_BLOCK_SIZE);
+        KernelConfig.setTilingThreshold(KernelConfig.DEFAULT_TILING_THRESHOLD);
+        KernelConfig.setParallelism(parallelism);
+        KernelConfig.setParallelThreshold(KernelConfig.DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    @Before
+    public void setup() throws IllegalInputException {
+        shortestPaths = AllPairsShortestPaths.newInstance(RouteParser
+                .newInstance().parse(ROUTES_INPUT));
+    }
+
+    private void assertPath(String expected, int distance, String from,
+            String to) {
+        Route path = shortestPaths.getShortestPath(City.valueOf(from), City.valueOf(
+                to));
+        assertEquals(expected, path.fullRouteRepr());
+        assertEquals(distance, path.getDistance());
+        assertEquals(distance, shortestPaths.getShortestDistance(
+                City.valueOf(from), City.valueOf(to)));
+    }
+
+    @Test
+    public void testShortestPath() {
+        assertPath("A-B-C", 9, "A", "C");
+        assertPath("B-C-E-B", 9, "B", "B");
+        assertPath("A-E", 7, "A", "E");
+        assertPath("D-E-B", 9, "D", "B");
+        assertPath("A-B", 5, "A", "B");
+    }
+
+    @Test
+    public void testNoRoute() {
+        assertEquals(AllPairsShortestPaths.UNREACHABLE,
+                shortestPaths.getShortestDistance(City.valueOf("D"), City.valueOf("A")));
+        assertNull(shortestPaths.getShortestPath(City.valueOf("D"), City.valueOf("A")));
+        assertNull(shortestPaths.getShortestPath(City.valueOf("A"), City.valueOf("Z")));
+    }
+
+    @Test
+    public void testDuplicateRoutes() {
+        List<Route> routes = new ArrayList<Route>();
+        routes.add(new Route("A", "B", 5));
+        routes.add(new Route("A", "B", 2));
+        routes.add(new Route("B", "A", 1));
+        shortestPaths = AllPairsShortestPaths.newInstance(routes);
+
+        assertPath("A-B", 2, "A", "B");
+        assertPath("A-B-A", 3, "A", "A");
+    }
+
+    @Test
+    public void testRandomNetwork() {
+        assertRandomNetwork();
+    }
+
+    @Test
+    public void testBlockedRandomNetwork() {
+        KernelConfig.setBlockSize(7);
+        KernelConfig.setTilingThreshold(0);
+        assertRandomNetwork();
+
+        KernelConfig.setParallelism(4);
+        KernelConfig.setParallelThreshold(0);
+        assertRandomNetwork();
+    }
+
+    private void assertRandomNetwork() {
+        Random random = new Random(20140706);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 300; i++) {
+            String from = "S" + random.nextInt(60);
+            String to = "S" + random.nextInt(60);
+            routes.add(new Route(from, to, 1 + random.nextInt(20)));
+        }
+        shortestPaths = AllPairsShortestPaths.newInstance(routes);
+
+        RouteMatrix<Integer> distances = DistanceRouteMatrix.newInstance();
+        distances.addRoutes(routes);
+        distances.build();
+        RouteMatrix<Integer> closure = distances.getMatrixTransitiveClosure();
+
+        for (City from : closure.getMatrixRouteCities()) {
+            for (City to : closure.getMatrixRouteCities()) {
+                Integer expected = closure.getMatrixElement(from, to);
+                Route path = shortestPaths.getShortestPath(from, to);
+                if (expected == null) {
+                    assertNull(path);
+                    continue;
+                }
+
+                assertEquals(expected.intValue(),
+                        shortestPaths.getShortestDistance(from, to));
+                assertEquals(expected.intValue(), path.getDistance());
+                assertEquals(from, path.getSourceCity());
+                assertEquals(to, path.getDestinationCity());
+            }
+        }
+    }
+}
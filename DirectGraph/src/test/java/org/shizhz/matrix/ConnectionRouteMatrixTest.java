@@ -4,6 +4,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -16,7 +17,6 @@ import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.shizhz.exception.BrokenRouteMatrixExcpetion;
 import org.shizhz.exception.IllegalInputException;
 import org.shizhz.exception.UnconnectedRouteException;
 import org.shizhz.route.City;
@@ -80,8 +80,8 @@ public class ConnectionRouteMatrixTest {
     public void testSetMatrixElement() {
         RouteMatrix<Integer> matrix = ConnectionRouteMatrix.newInstance();
         Integer i1 = new Integer(2);
-        City row = new City("A");
-        City column = new City("B");
+        City row = City.valueOf("A");
+        City column = City.valueOf("B");
 
         assertNull(matrix.getMatrixElement(row, column));
         assertEquals(matrix.getMatrixRow(row).get(column), matrix
@@ -103,7 +103,7 @@ public class ConnectionRouteMatrixTest {
     }
 
     @Test
-    public void testMatrixCities() throws BrokenRouteMatrixExcpetion {
+    public void testMatrixCities() {
         List<City> matrixCities = matrix.getMatrixRouteCities();
 
         List<City> parsedCities = new ArrayList<City>();
@@ -140,6 +140,16 @@ public class ConnectionRouteMatrixTest {
         assertEquals(RouteParser.newInstance().parseCities(routes).size(),
                 m.getMatrixDimensions());
         assertFalse(m.getMatrixRouteCities().contains(duplicateRoute));
+        assertTrue(((AbstractRouteMatrix<Integer>) m).takeNewMatrixRoutes()
+                .isEmpty());
+
+        // Routes built before are dropped, and routes between the same cities
+        // with another distance are kept.
+        m.addRoutes(newRoutes);
+        m.addRoutes(Arrays.asList(new Route("A", "D", 6), new Route("A", "D",
+                6)));
+        assertEquals(Arrays.asList(new Route("A", "D", 6)),
+                ((AbstractRouteMatrix<Integer>) m).takeNewMatrixRoutes());
     }
 
     @Test
@@ -405,6 +415,47 @@ public class ConnectionRouteMatrixTest {
         testMatrixEqual(m.power(3), m.multiply(m).multiply(m));
     }
 
+    @Test
+    public void testPowerBySquaring() throws IllegalInputException {
+        RouteMatrix<Integer> product = matrix;
+        for (int i = 1; i <= 9; i++) {
+            testMatrixEqual(product, matrix.power(i));
+            product = product.multiply(matrix);
+        }
+    }
+
+    @Test
+    public void testPowerSum() throws IllegalInputException {
+        RouteMatrix<Integer> sum = matrix;
+        for (int i = 1; i <= 12; i++) {
+            testMatrixEqual(sum, matrix.powerSum(i));
+            sum = sum.add(matrix.power(i + 1));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPowerSumNonPositiveExponent() {
+        matrix.powerSum(0);
+    }
+
+    @Test
+    public void testPowerCacheInvalidation() throws IllegalInputException {
+        RouteMatrix<Integer> m = ConnectionRouteMatrix.newInstance();
+        m.addRoutes(RouteParser.newInstance().parse("AB1, BC1"));
+        m.build();
+
+        City a = City.valueOf("A");
+        City c = City.valueOf("C");
+        assertNull(m.power(3).getMatrixElement(a, a));
+
+        m.addRoutes(RouteParser.newInstance().parse("CA1"));
+        m.build();
+        assertEquals(Integer.valueOf(1), m.power(3).getMatrixElement(a, a));
+
+        m.setMatrixElement(a, c, Integer.valueOf(1));
+        testMatrixEqual(m.multiply(m).multiply(m).multiply(m), m.power(4));
+    }
+
     @Test
     public void testConnectedNumber() throws IllegalInputException {
         String input = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
@@ -417,11 +468,11 @@ public class ConnectionRouteMatrixTest {
 
         printMatrix(product, "Matrix power 4: ");
         // The number of routes between C and C with exactly 4 stops.
-        assertEquals(3, Math.abs(product.getMatrixElement(new City("A"),
-                new City("C"))));
+        assertEquals(3, Math.abs(product.getMatrixElement(City.valueOf("A"),
+                City.valueOf("C"))));
 
         // The number of routes between C and C with maximum of 3 stops.
-        City from = new City("C");
+        City from = City.valueOf("C");
         City to = from;
 
         Integer with1Stop = m.getMatrixElement(from, to);
@@ -489,18 +540,88 @@ public class ConnectionRouteMatrixTest {
         testMatrixEqual(m, identify.multiply(m));
     }
     
-    @Test(expected=BrokenRouteMatrixExcpetion.class)
-    public void testGetMatrixElementException() throws IllegalInputException {
+    @Test
+    public void testMatrixRowAndColumnAreReadOnlyViews()
+            throws IllegalInputException {
         String input = "AD1, BA2, BC3, CA5, CD6, DC7";
 
         RouteMatrix<Integer> m = ConnectionRouteMatrix.newInstance();
         m.addRoutes(RouteParser.newInstance().parse(input));
         m.build();
-        
-        City a = new City("A");
-        City b = new City("D");
-        m.getMatrixRow(a).put(b, Integer.valueOf(1));
-        m.getMatrixColumn(b).put(a, Integer.valueOf(2));
-        m.getMatrixElement(a, b);
+
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        City d = City.valueOf("D");
+        Map<City, Integer> row = m.getMatrixRow(a);
+        Map<City, Integer> column = m.getMatrixColumn(d);
+        try {
+            row.put(b, Integer.valueOf(1));
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            column.entrySet().iterator().remove();
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        assertNull(m.getMatrixElement(a, b));
+        assertEquals(Integer.valueOf(1), m.getMatrixElement(a, d));
+
+        // Views follow the changes of the matrix, including new cities
+        // shifting the ordinals.
+        m.setMatrixElement(a, b, Integer.valueOf(4));
+        m.setMatrixElement(City.valueOf("0"), d, Integer.valueOf(5));
+        assertEquals(Integer.valueOf(4), row.get(b));
+        assertEquals(Arrays.asList(b, d), new ArrayList<City>(row.keySet()));
+        assertEquals(Integer.valueOf(5), column.get(City.valueOf("0")));
+        assertEquals(3, column.size());
+        assertNull(column.get("0"));
+    }
+
+    @Test
+    public void testColumnIndex() throws IllegalInputException {
+        ConnectionRouteMatrix m = new ConnectionRouteMatrix();
+        m.addRoutes(routes);
+        m.build();
+        m.setColumnIndexed(true);
+
+        for (City city : m.getMatrixRouteCities()) {
+            assertEquals(matrix.getMatrixColumn(city), m.getMatrixColumn(city));
+        }
+
+        City a = City.valueOf("A");
+        City c = City.valueOf("C");
+        City g = City.valueOf("G");
+        m.setMatrixElement(g, c, Integer.valueOf(3));
+        m.setMatrixElement(a, c, null);
+        Map<City, Integer> column = m.getMatrixColumn(c);
+        assertEquals(Integer.valueOf(3), column.get(g));
+        assertFalse(column.containsKey(a));
+        assertEquals(m.getMatrixColumn(a), matrix.getMatrixColumn(a));
+    }
+
+    @Test
+    public void testSharedCities() {
+        List<City> cities = matrix.getMatrixRouteCities();
+        assertSame(cities, matrix.multiply(matrix).getMatrixRouteCities());
+        assertSame(cities, matrix.add(matrix).getMatrixRouteCities());
+        assertSame(cities, matrix.power(3).getMatrixRouteCities());
+        assertSame(cities, matrix.getMatrixTransitiveClosure()
+                .getMatrixRouteCities());
+
+        assertEquals(2, cities.indexOf(City.valueOf("C")));
+        assertTrue(cities.contains(City.valueOf("F")));
+        assertFalse(cities.contains(City.valueOf("G")));
+        assertFalse(cities.contains("A"));
+
+        matrix.addMatrixRouteCities(Arrays.asList(City.valueOf("A"),
+                City.valueOf("F")));
+        assertSame(cities, matrix.getMatrixRouteCities());
+
+        matrix.addMatrixRouteCities(Arrays.asList(City.valueOf("G"),
+                City.valueOf("G")));
+        assertEquals(cities.size() + 1, matrix.getMatrixDimensions());
+        assertEquals(City.valueOf("G"), matrix.getMatrixRouteCities().get(
+                cities.size()));
     }
 }
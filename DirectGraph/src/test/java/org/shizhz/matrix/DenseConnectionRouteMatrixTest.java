@@ -0,0 +1,220 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class DenseConnectionRouteMatrixTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private RouteMatrix<Long> matrix;
+
+    private RouteMatrix<Integer> reference;
+
+    @Before
+    public void setup() throws IllegalInputException {
+        List<Route> routes = RouteParser.newInstance().parse(ROUTES_INPUT);
+
+        matrix = DenseConnectionRouteMatrix.newInstance();
+        matrix.addRoutes(routes);
+        matrix.build();
+
+        reference = ConnectionRouteMatrix.newInstance();
+        reference.addRoutes(routes);
+        reference.build();
+    }
+
+    private void assertSameConnections(RouteMatrix<Integer> expected,
+            RouteMatrix<Long> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertArrayEquals(cities.toArray(), actual.getMatrixRouteCities()
+                .toArray());
+
+        for (City row : cities) {
+            for (City column : cities) {
+                Integer expectedElement = expected.getMatrixElement(row,
+                        column);
+                Long actualElement = actual.getMatrixElement(row, column);
+                if (expectedElement == null) {
+                    assertNull(actualElement);
+                } else {
+                    assertEquals(Math.abs(expectedElement.longValue()),
+                            actualElement.longValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        assertSameConnections(reference, matrix);
+        assertEquals(3, matrix.getMatrixRow(City.valueOf("A")).size());
+        assertEquals(2, matrix.getMatrixColumn(City.valueOf("C")).size());
+    }
+
+    @Test
+    public void testSetMatrixElement() {
+        RouteMatrix<Long> m = DenseConnectionRouteMatrix.newInstance();
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        City c = City.valueOf("C");
+
+        assertNull(m.getMatrixElement(b, c));
+        m.setMatrixElement(b, c, 2L);
+        m.setMatrixElement(a, b, 3L);
+
+        // Adding city A shifts the ordinals of B and C.
+        assertEquals(3, m.getMatrixDimensions());
+        assertEquals(Long.valueOf(2), m.getMatrixElement(b, c));
+        assertEquals(Long.valueOf(3), m.getMatrixElement(a, b));
+        assertEquals(Long.valueOf(2), m.getMatrixRow(b).get(c));
+        assertEquals(Long.valueOf(3), m.getMatrixColumn(b).get(a));
+    }
+
+    @Test
+    public void testMultiplyAndAdd() {
+        assertSameConnections(reference.multiply(reference),
+                matrix.multiply(matrix));
+        assertSameConnections(reference.add(reference.multiply(reference)),
+                matrix.add(matrix.multiply(matrix)));
+    }
+
+    @Test
+    public void testPower() {
+        for (int i = 1; i <= 6; i++) {
+            assertSameConnections(reference.power(i), matrix.power(i));
+        }
+
+        assertEquals(Long.valueOf(3),
+                matrix.power(4).getMatrixElement(City.valueOf("A"), City.valueOf("C")));
+    }
+
+    @Test
+    public void testIdentify() {
+        RouteMatrix<Long> identify = matrix.getMultiplyIdentify();
+        assertSameConnections(reference, matrix.multiply(identify));
+        assertSameConnections(reference, identify.multiply(matrix));
+
+        assertSameConnections(reference,
+                matrix.add(matrix.getAdditionIdentify()));
+    }
+
+    @Test
+    public void testExactElementsBeyondLong() {
+        // The complete graph K5, where each city reaches each other by
+        // (4^k - (-1)^k) / 5 routes with k stops.
+        List<Route> routes = new ArrayList<Route>();
+        String[] names = new String[] { "A", "B", "C", "D", "E" };
+        for (String from : names) {
+            for (String to : names) {
+                if (!from.equals(to)) {
+                    routes.add(new Route(City.valueOf(from), City.valueOf(to),
+                            1));
+                }
+            }
+        }
+        DenseLongRouteMatrix complete = new DenseConnectionRouteMatrix();
+        complete.addRoutes(routes);
+        complete.build();
+
+        City from = City.valueOf("A");
+        City to = City.valueOf("B");
+        BigInteger four = BigInteger.valueOf(4);
+        for (int k : new int[] { 31, 32, 40, 100 }) {
+            BigInteger expected = four.pow(k)
+                    .subtract(BigInteger.ONE.negate().pow(k))
+                    .divide(BigInteger.valueOf(5));
+            DenseLongRouteMatrix power = (DenseLongRouteMatrix) complete
+                    .power(k);
+            assertEquals(expected, power.getExactMatrixElement(from, to));
+            assertEquals(expected.bitLength() < 64 ? expected.longValue()
+                    : Long.MAX_VALUE, power.getMatrixElement(from, to)
+                    .longValue());
+
+            DenseLongRouteMatrix sum = (DenseLongRouteMatrix) power.add(power);
+            assertEquals(expected.shiftLeft(1),
+                    sum.getExactMatrixElement(from, to));
+        }
+
+        // Exact elements follow the cities when new ones shift the ordinals.
+        DenseLongRouteMatrix power = (DenseLongRouteMatrix) complete.power(40);
+        BigInteger expected = power.getExactMatrixElement(from, to);
+        power.addMatrixRouteCities(Arrays.asList(new City[] { City
+                .valueOf("0") }));
+        assertEquals(expected, power.getExactMatrixElement(from, to));
+
+        power.setMatrixElement(from, to, 1L);
+        assertEquals(BigInteger.ONE, power.getExactMatrixElement(from, to));
+    }
+
+    @Test
+    public void testExactClosureBeyondLong() {
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        City c = City.valueOf("C");
+        DenseLongRouteMatrix matrix = new DenseConnectionRouteMatrix();
+        matrix.addRoutes(Arrays.asList(new Route("A", "B", 1), new Route("B",
+                "C", 1)));
+        matrix.build();
+        matrix.setMatrixElement(a, b, 1L << 40);
+        matrix.setMatrixElement(b, c, 1L << 40);
+
+        BigInteger expected = BigInteger.ONE.shiftLeft(80);
+        DenseLongRouteMatrix closure = (DenseLongRouteMatrix) matrix
+                .getMatrixTransitiveClosure();
+        assertEquals(expected, closure.getExactMatrixElement(a, c));
+        assertEquals(Long.valueOf(Long.MAX_VALUE),
+                closure.getMatrixElement(a, c));
+        assertEquals(BigInteger.ONE.shiftLeft(40),
+                closure.getExactMatrixElement(a, b));
+
+        // Exact elements of the matrix are kept by the closure.
+        DenseLongRouteMatrix square = (DenseLongRouteMatrix) matrix
+                .multiply(matrix);
+        assertEquals(expected, ((DenseLongRouteMatrix) square
+                .getMatrixTransitiveClosure()).getExactMatrixElement(a, c));
+    }
+
+    @Test
+    public void testExactBuildBeyondLong() {
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        DenseLongRouteMatrix matrix = new DenseConnectionRouteMatrix();
+        matrix.setMatrixElement(a, b, Long.MAX_VALUE);
+
+        matrix.addRoutes(Arrays.asList(new Route("A", "B", 1)));
+        matrix.build();
+        BigInteger expected = BigInteger.valueOf(Long.MAX_VALUE).add(
+                BigInteger.ONE);
+        assertEquals(expected, matrix.getExactMatrixElement(a, b));
+        assertEquals(Long.valueOf(Long.MAX_VALUE),
+                matrix.getMatrixElement(a, b));
+
+        matrix.addRoutes(Arrays.asList(new Route("A", "B", 2)));
+        matrix.build();
+        assertEquals(expected.add(BigInteger.ONE),
+                matrix.getExactMatrixElement(a, b));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMultiplyDifferentCities() {
+        RouteMatrix<Long> m = DenseConnectionRouteMatrix.newInstance();
+        m.addRoutes(Arrays.asList(new Route[] { new Route("A", "B", 12) }));
+        m.build();
+        assertTrue(m.getMatrixDimensions() != matrix.getMatrixDimensions());
+        m.multiply(matrix);
+    }
+}
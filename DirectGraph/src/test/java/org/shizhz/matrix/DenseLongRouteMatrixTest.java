@@ -0,0 +1,120 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class DenseLongRouteMatrixTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private static final LongSemiring[] SEMIRINGS = new LongSemiring[] {
+            LongSemiring.COUNTING, LongSemiring.MIN_PLUS,
+            LongSemiring.MAX_MIN, LongSemiring.BOOLEAN,
+            LongSemiring.product(IntSemiring.MIN_PLUS, IntSemiring.COUNTING) };
+
+    private List<Route> routes;
+
+    @Before
+    public void setup() throws IllegalInputException {
+        routes = RouteParser.newInstance().parse(ROUTES_INPUT);
+    }
+
+    private RouteMatrix<Long> build(RouteMatrix<Long> matrix) {
+        matrix.addRoutes(routes);
+        matrix.build();
+        return matrix;
+    }
+
+    private void assertMatrixEqual(RouteMatrix<Long> expected,
+            RouteMatrix<Long> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertEquals(cities, actual.getMatrixRouteCities());
+
+        for (City row : cities) {
+            for (City column : cities) {
+                assertEquals(expected.getMatrixElement(row, column),
+                        actual.getMatrixElement(row, column));
+            }
+        }
+    }
+
+    private Long element(RouteMatrix<Long> matrix, String from, String to) {
+        return matrix.getMatrixElement(City.valueOf(from), City.valueOf(to));
+    }
+
+    @Test
+    public void testDenseAndSparseAgree() {
+        for (LongSemiring semiring : SEMIRINGS) {
+            RouteMatrix<Long> dense = build(DenseLongRouteMatrix
+                    .newInstance(semiring));
+            RouteMatrix<Long> sparse = build(SparseLongRouteMatrix
+                    .newInstance(semiring));
+
+            assertMatrixEqual(dense, sparse);
+            for (int i = 2; i <= 5; i++) {
+                assertMatrixEqual(dense.power(i), sparse.power(i));
+            }
+            assertMatrixEqual(dense.add(dense.power(2)),
+                    sparse.add(sparse.power(2)));
+            assertMatrixEqual(dense.getMatrixTransitiveClosure(),
+                    sparse.getMatrixTransitiveClosure());
+        }
+    }
+
+    @Test
+    public void testGenericKernelsAgree() {
+        // The generic kernels of AbstractRouteMatrix are used when the
+        // operands are not on the same semiring representation.
+        for (LongSemiring semiring : SEMIRINGS) {
+            RouteMatrix<Long> dense = build(DenseLongRouteMatrix
+                    .newInstance(semiring));
+            RouteMatrix<Long> sparse = build(SparseLongRouteMatrix
+                    .newInstance(semiring));
+
+            assertMatrixEqual(dense.multiply(dense), dense.multiply(sparse));
+            assertMatrixEqual(dense.add(dense), dense.add(sparse));
+        }
+    }
+
+    @Test
+    public void testBooleanClosure() {
+        RouteMatrix<Long> closure = build(
+                DenseLongRouteMatrix.newInstance(LongSemiring.BOOLEAN))
+                .getMatrixTransitiveClosure();
+
+        assertEquals(Long.valueOf(1), element(closure, "A", "C"));
+        assertEquals(Long.valueOf(1), element(closure, "B", "B"));
+        assertNull(element(closure, "D", "A"));
+    }
+
+    @Test
+    public void testMaxMinClosure() {
+        RouteMatrix<Long> closure = build(
+                DenseLongRouteMatrix.newInstance(LongSemiring.MAX_MIN))
+                .getMatrixTransitiveClosure();
+
+        // A-D-C-D... has the widest bottleneck 5, A-E-B-C only 3.
+        assertEquals(Long.valueOf(5), element(closure, "A", "C"));
+        assertEquals(Long.valueOf(8), element(closure, "C", "C"));
+        assertNull(element(closure, "B", "A"));
+    }
+
+    @Test
+    public void testProductSemiring() {
+        RouteMatrix<Long> power = build(
+                DenseLongRouteMatrix.newInstance(LongSemiring.product(
+                        IntSemiring.MIN_PLUS, IntSemiring.COUNTING))).power(4);
+
+        long element = element(power, "A", "C");
+        assertEquals(18, LongSemiring.high(element));
+        assertEquals(3, LongSemiring.low(element));
+    }
+}
@@ -0,0 +1,118 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class DistanceRouteMatrixTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private RouteMatrix<Integer> matrix;
+
+    private RouteMatrix<List<Route>> paths;
+
+    @Before
+    public void setup() throws IllegalInputException {
+        List<Route> routes = RouteParser.newInstance().parse(ROUTES_INPUT);
+
+        matrix = DistanceRouteMatrix.newInstance();
+        matrix.addRoutes(routes);
+        matrix.build();
+
+        paths = PathRouteMatrix.newInstance();
+        paths.addRoutes(routes);
+        paths.build();
+    }
+
+    /**
+     * Check the distances against the shortest ones of all enumerated paths.
+     */
+    private void assertShortestDistances(RouteMatrix<List<Route>> expected,
+            RouteMatrix<Integer> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertEquals(cities, actual.getMatrixRouteCities());
+
+        for (City row : cities) {
+            for (City column : cities) {
+                List<Route> routes = expected.getMatrixElement(row, column);
+                Integer distance = actual.getMatrixElement(row, column);
+                if (routes == null) {
+                    assertNull(distance);
+                    continue;
+                }
+
+                int shortest = Integer.MAX_VALUE;
+                for (Route route : routes) {
+                    shortest = Math.min(shortest, route.getDistance());
+                }
+                assertEquals(Integer.valueOf(shortest), distance);
+            }
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        assertShortestDistances(paths, matrix);
+        assertEquals(Integer.valueOf(5),
+                matrix.getMatrixRow(City.valueOf("A")).get(City.valueOf("B")));
+        assertEquals(2, matrix.getMatrixColumn(City.valueOf("C")).size());
+    }
+
+    @Test
+    public void testBuildWithDuplicateCityPair() {
+        RouteMatrix<Integer> m = DistanceRouteMatrix.newInstance();
+        m.addRoutes(Arrays.asList(new Route[] { new Route("A", "B", 7),
+                new Route("A", "B", 3), new Route("A", "B", 5) }));
+        m.build();
+
+        assertEquals(Integer.valueOf(3),
+                m.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+    }
+
+    @Test
+    public void testPower() {
+        for (int i = 1; i <= 6; i++) {
+            assertShortestDistances(paths.power(i), matrix.power(i));
+        }
+    }
+
+    @Test
+    public void testTransitiveClosure() {
+        RouteMatrix<Integer> closure = matrix.getMatrixTransitiveClosure();
+        assertShortestDistances(paths.getMatrixTransitiveClosure(), closure);
+
+        assertEquals(Integer.valueOf(9),
+                closure.getMatrixElement(City.valueOf("A"), City.valueOf("C")));
+        assertEquals(Integer.valueOf(9),
+                closure.getMatrixElement(City.valueOf("B"), City.valueOf("B")));
+        assertNull(closure.getMatrixElement(City.valueOf("D"), City.valueOf("A")));
+    }
+
+    @Test
+    public void testIdentify() {
+        RouteMatrix<List<Route>> expected = paths;
+        assertShortestDistances(expected,
+                matrix.multiply(matrix.getMultiplyIdentify()));
+        assertShortestDistances(expected,
+                matrix.getMultiplyIdentify().multiply(matrix));
+        assertShortestDistances(expected,
+                matrix.add(matrix.getAdditionIdentify()));
+        assertEquals(Integer.valueOf(0), matrix.getMultiplyIdentify()
+                .getMatrixElement(City.valueOf("A"), City.valueOf("A")));
+    }
+
+    @Test
+    public void testAdd() {
+        assertShortestDistances(paths.add(paths.power(2)),
+                matrix.add(matrix.power(2)));
+    }
+}
@@ -0,0 +1,80 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class LinearRecurrenceTest {
+
+    private static final long MODULUS = LinearRecurrence.DEFAULT_MODULUS;
+
+    private static long[] fibonacci(int amount, long modulus) {
+        long[] sequence = new long[amount];
+        sequence[0] = 0;
+        sequence[1] = 1;
+        for (int i = 2; i < amount; i++) {
+            sequence[i] = (sequence[i - 1] + sequence[i - 2]) % modulus;
+        }
+
+        return sequence;
+    }
+
+    @Test
+    public void testFind() {
+        LinearRecurrence recurrence = LinearRecurrence.find(
+                fibonacci(10, MODULUS), MODULUS);
+        assertEquals(2, recurrence.getOrder());
+
+        long[] sequence = fibonacci(200, MODULUS);
+        for (int i = 0; i < sequence.length; i++) {
+            assertEquals(sequence[i], recurrence.getTerm(i));
+        }
+    }
+
+    @Test
+    public void testGetTermOfHugeIndex() {
+        LinearRecurrence recurrence = LinearRecurrence.find(
+                fibonacci(10, MODULUS), MODULUS);
+
+        // F(2^k) by the doubling formula F(2m) = F(m) * (2F(m + 1) - F(m)).
+        BigInteger modulus = BigInteger.valueOf(MODULUS);
+        BigInteger f = BigInteger.ONE;
+        BigInteger g = BigInteger.ONE;
+        for (int k = 1; k <= 60; k++) {
+            BigInteger f2 = f.multiply(g.shiftLeft(1).subtract(f)).mod(modulus);
+            BigInteger g2 = f.multiply(f).add(g.multiply(g)).mod(modulus);
+            f = f2;
+            g = g2;
+            assertEquals(f.longValue(), recurrence.getTerm(1L << k));
+        }
+    }
+
+    @Test
+    public void testZeroSequence() {
+        LinearRecurrence recurrence = LinearRecurrence.find(new long[8],
+                MODULUS);
+        assertEquals(0, recurrence.getOrder());
+        assertEquals(0, recurrence.getTerm(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPeriodicSequence() {
+        long[] sequence = new long[] { 1, 0, 0, 1, 0, 0, 1, 0, 0, 1 };
+        LinearRecurrence recurrence = LinearRecurrence.find(sequence, 7);
+        assertEquals(3, recurrence.getOrder());
+        assertEquals(1, recurrence.getTerm(3000000000L));
+        assertEquals(0, recurrence.getTerm(3000000001L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompositeModulus() {
+        LinearRecurrence.find(new long[] { 1, 1 }, 1000000000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testModulusTooLarge() {
+        LongSemiring.modular(4294967311L);
+    }
+}
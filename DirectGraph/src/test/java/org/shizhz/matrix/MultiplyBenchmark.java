@@ -0,0 +1,126 @@
+package org.shizhz.matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compare the multiplication kernels of dense counting matrices: the naive
+ * row -> column -> cursor loop used by <code>AbstractRouteMatrix</code>, the
+ * row -> cursor -> column loop, the tiled one and Strassen's algorithm. Not
+ * run as a unit test:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.shizhz.matrix.MultiplyBenchmark \
+ *     -Dexec.args="256 1024 4096"
+ * </pre>
+ *
+ * Pass <code>-Dorg.shizhz.matrix.blockSize=auto</code> to measure the block
+ * size as well.
+ *
+ * @author shizhz
+ *
+ */
+public class MultiplyBenchmark {
+
+    private static final int[] DEFAULT_SIZES = new int[] { 256, 1024, 4096 };
+
+    private static final int ROUNDS = 3;
+
+    private static void multiplyNaive(long[] multiplicand, long[] multiplier,
+            long[] product, int size) {
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                long element = 0;
+                for (int k = 0; k < size; k++) {
+                    element += multiplicand[i * size + k]
+                            * multiplier[k * size + j];
+                }
+                product[i * size + j] = element;
+            }
+        }
+    }
+
+    private static long[] randomMatrix(Random random, int size) {
+        long[] matrix = new long[size * size];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = random.nextInt(2);
+        }
+
+        return matrix;
+    }
+
+    private static long measure(String kernel, long[] multiplicand,
+            long[] multiplier, long[] product, int size) {
+        long best = Long.MAX_VALUE;
+        int rounds = size > 1024 ? 1 : ROUNDS;
+        for (int round = 0; round < rounds; round++) {
+            Arrays.fill(product, 0);
+            long start = System.nanoTime();
+            if ("naive".equals(kernel)) {
+                multiplyNaive(multiplicand, multiplier, product, size);
+            } else if ("rows".equals(kernel)) {
+                SemiringKernels.multiplyRows(LongSemiring.COUNTING,
+                        multiplicand, multiplier, product, size);
+            } else if ("strassen".equals(kernel)) {
+                long[] result = SemiringKernels.multiplyStrassen(multiplicand,
+                        multiplier, size);
+                System.arraycopy(result, 0, product, 0, result.length);
+            } else {
+                SemiringKernels.multiplyTiled(LongSemiring.COUNTING,
+                        multiplicand, multiplier, product, size,
+                        KernelConfig.getBlockSize());
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best / 1000000;
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("Block size: " + KernelConfig.getBlockSize()
+                + ", Strassen threshold: "
+                + KernelConfig.getStrassenThreshold());
+        System.out.println(String.format("%6s %10s %10s %10s %12s %8s", "n",
+                "naive(ms)", "rows(ms)", "tiled(ms)", "strassen(ms)",
+                "speedup"));
+
+        Random random = new Random(20140704);
+        for (int size : sizes) {
+            long[] multiplicand = randomMatrix(random, size);
+            long[] multiplier = randomMatrix(random, size);
+            long[] expected = new long[size * size];
+            long[] actual = new long[size * size];
+
+            long naive = measure("naive", multiplicand, multiplier, expected,
+                    size);
+            long rows = measure("rows", multiplicand, multiplier, actual, size);
+            long tiled = measure("tiled", multiplicand, multiplier, actual,
+                    size);
+            if (!Arrays.equals(expected, actual)) {
+                throw new IllegalStateException(
+                        "The tiled product differs from the naive one, n = "
+                                + size);
+            }
+            long strassen = measure("strassen", multiplicand, multiplier,
+                    actual, size);
+            if (!Arrays.equals(expected, actual)) {
+                throw new IllegalStateException(
+                        "The Strassen product differs from the naive one, n = "
+                                + size);
+            }
+
+            System.out.println(String.format("%6d %10d %10d %10d %12d %7.1fx",
+                    size, naive, rows, tiled, strassen, (double) naive
+                            / Math.max(Math.min(tiled, strassen), 1)));
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+
+public class OffHeapLongRouteMatrixTest {
+
+    private OffHeapLongRouteMatrix matrix;
+
+    @After
+    public void tearDown() {
+        if (matrix != null) {
+            matrix.close();
+        }
+    }
+
+    private static List<Route> randomRoutes(long seed) {
+        Random random = new Random(seed);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 60; i++) {
+            String from = String.valueOf((char) ('A' + random.nextInt(26)));
+            String to = String.valueOf((char) ('A' + random.nextInt(26)));
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+
+        return routes;
+    }
+
+    private void assertMatrixEqual(RouteMatrix<Long> expected,
+            RouteMatrix<Long> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertArrayEquals(cities.toArray(), actual.getMatrixRouteCities()
+                .toArray());
+
+        for (City row : cities) {
+            assertEquals(expected.getMatrixRow(row), actual.getMatrixRow(row));
+            for (City column : cities) {
+                assertEquals(expected.getMatrixElement(row, column),
+                        actual.getMatrixElement(row, column));
+            }
+        }
+    }
+
+    @Test
+    public void testOperations() {
+        List<Route> routes = randomRoutes(20140708);
+        for (LongSemiring semiring : new LongSemiring[] {
+                LongSemiring.COUNTING, LongSemiring.MIN_PLUS }) {
+            RouteMatrix<Long> reference = DenseLongRouteMatrix
+                    .newInstance(semiring);
+            reference.addRoutes(routes);
+            reference.build();
+
+            matrix = OffHeapLongRouteMatrix.newInstance(semiring);
+            matrix.addRoutes(routes);
+            matrix.build();
+
+            assertMatrixEqual(reference, matrix);
+            for (int i = 2; i <= 7; i++) {
+                assertMatrixEqual(reference.power(i), matrix.power(i));
+            }
+            assertMatrixEqual(reference.add(reference.power(2)),
+                    matrix.add(matrix.power(2)));
+            assertMatrixEqual(reference.powerSum(5), matrix.powerSum(5));
+            if (semiring == LongSemiring.MIN_PLUS) {
+                assertMatrixEqual(reference.getMatrixTransitiveClosure(),
+                        matrix.getMatrixTransitiveClosure());
+            }
+            matrix.close();
+        }
+    }
+
+    @Test
+    public void testParallelTransitiveClosure() {
+        int parallelism = KernelConfig.getParallelism();
+        int parallelThreshold = KernelConfig.getParallelThreshold();
+        KernelConfig.setParallelism(4);
+        KernelConfig.setParallelThreshold(0);
+        try {
+            // Routes only go from a city to a later one, so the counts of the
+            // closure stay small.
+            List<Route> routes = new ArrayList<Route>();
+            for (Route route : randomRoutes(20140709)) {
+                int order = route.getSourceCity().compareTo(
+                        route.getDestinationCity());
+                if (order < 0) {
+                    routes.add(route);
+                } else if (order > 0) {
+                    routes.add(new Route(route.getDestinationCity(), route
+                            .getSourceCity(), route.getDistance()));
+                }
+            }
+
+            for (LongSemiring semiring : new LongSemiring[] {
+                    LongSemiring.COUNTING, LongSemiring.MIN_PLUS }) {
+                RouteMatrix<Long> reference = DenseLongRouteMatrix
+                        .newInstance(semiring);
+                reference.addRoutes(routes);
+                reference.build();
+
+                matrix = OffHeapLongRouteMatrix.newInstance(semiring);
+                matrix.addRoutes(routes);
+                matrix.build();
+
+                OffHeapLongRouteMatrix closure = (OffHeapLongRouteMatrix) matrix
+                        .getMatrixTransitiveClosure();
+                assertMatrixEqual(reference.getMatrixTransitiveClosure(),
+                        closure);
+                closure.close();
+                matrix.close();
+            }
+        } finally {
+            KernelConfig.setParallelism(parallelism);
+            KernelConfig.setParallelThreshold(parallelThreshold);
+        }
+    }
+
+    @Test
+    public void testCountsOverflow() {
+        matrix = OffHeapLongRouteMatrix.newInstance(LongSemiring.COUNTING);
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        matrix.setMatrixElement(a, b, 1L << 40);
+        matrix.setMatrixElement(b, a, 1L << 40);
+
+        try {
+            matrix.power(2);
+            fail();
+        } catch (ArithmeticException e) {
+        }
+
+        matrix.setMatrixElement(a, b, Long.MAX_VALUE);
+        try {
+            matrix.add(matrix);
+            fail();
+        } catch (ArithmeticException e) {
+        }
+
+        try {
+            matrix.getMatrixTransitiveClosure();
+            fail();
+        } catch (ArithmeticException e) {
+        }
+
+        matrix.addRoutes(Arrays.asList(new Route("A", "B", 1)));
+        try {
+            matrix.build();
+            fail();
+        } catch (ArithmeticException e) {
+        }
+    }
+
+    @Test
+    public void testSetMatrixElement() {
+        matrix = OffHeapLongRouteMatrix.newInstance(LongSemiring.MIN_PLUS);
+        matrix.setMatrixElement(City.valueOf("B"), City.valueOf("C"), 4L);
+        matrix.setMatrixElement(City.valueOf("A"), City.valueOf("B"), 5L);
+
+        assertEquals(Long.valueOf(5),
+                matrix.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+        assertEquals(Long.valueOf(4),
+                matrix.getMatrixElement(City.valueOf("B"), City.valueOf("C")));
+        assertNull(matrix.getMatrixElement(City.valueOf("C"), City.valueOf("A")));
+        assertEquals(Long.valueOf(9),
+                matrix.power(2).getMatrixElement(City.valueOf("A"), City.valueOf("C")));
+
+        matrix.setMatrixElement(City.valueOf("A"), City.valueOf("B"), null);
+        assertNull(matrix.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+    }
+
+    @Test
+    public void testClose() {
+        matrix = OffHeapLongRouteMatrix.newInstance(LongSemiring.COUNTING);
+        matrix.addRoutes(randomRoutes(20140709));
+        matrix.build();
+
+        // The square is cached by the matrix, so a copy of it is returned,
+        // which is closed without closing the cache.
+        OffHeapLongRouteMatrix square = (OffHeapLongRouteMatrix) matrix
+                .power(2);
+        Long element = square.getMatrixElement(City.valueOf("A"),
+                City.valueOf("B"));
+        square.close();
+        OffHeapLongRouteMatrix cube = (OffHeapLongRouteMatrix) matrix.power(3);
+        assertFalse(cube.isClosed());
+        square = (OffHeapLongRouteMatrix) matrix.power(2);
+        assertEquals(element,
+                square.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+
+        OffHeapLongRouteMatrix itself = (OffHeapLongRouteMatrix) matrix
+                .power(1);
+        itself.close();
+        assertFalse(matrix.isClosed());
+
+        matrix.close();
+        assertTrue(matrix.isClosed());
+        assertFalse(square.isClosed());
+        assertFalse(cube.isClosed());
+        square.close();
+        cube.close();
+
+        try {
+            matrix.getMatrixElement(City.valueOf("A"), City.valueOf("B"));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("The matrix has been closed.", e.getMessage());
+        }
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory
+                .getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+
+        return 0;
+    }
+
+    @Test
+    public void testPowerSumClosesIntermediates() {
+        matrix = OffHeapLongRouteMatrix.newInstance(LongSemiring.COUNTING);
+        matrix.addRoutes(randomRoutes(20140710));
+        matrix.build();
+        int size = matrix.getMatrixDimensions();
+
+        long used = directMemoryUsed();
+        OffHeapLongRouteMatrix sum = (OffHeapLongRouteMatrix) matrix
+                .powerSum(13);
+        // Only the sum is left open.
+        assertTrue(directMemoryUsed() - used <= 8L * size * size);
+
+        OffHeapLongRouteMatrix itself = (OffHeapLongRouteMatrix) matrix
+                .powerSum(1);
+        itself.close();
+        assertFalse(matrix.isClosed());
+        assertFalse(sum.isClosed());
+        sum.close();
+    }
+
+    @Test
+    public void testChunks() {
+        // 3 chunks of 4 elements.
+        OffHeapLongArray array = new OffHeapLongArray(10, 2);
+        for (long i = 0; i < array.length(); i++) {
+            array.set(i, i * i);
+        }
+        for (long i = 0; i < array.length(); i++) {
+            assertEquals(i * i, array.get(i));
+        }
+
+        array.fill(-1);
+        assertEquals(-1, array.get(9));
+        array.close();
+        assertTrue(array.isClosed());
+    }
+}
@@ -0,0 +1,28 @@
+package org.shizhz.matrix;
+
+import org.junit.After;
+import org.junit.Before;
+
+/**
+ * Run all tests of <code>ConnectionRouteMatrixTest</code> with matrix
+ * operations split across threads.
+ */
+public class ParallelConnectionRouteMatrixTest extends ConnectionRouteMatrixTest {
+    private int parallelism;
+
+    private int parallelThreshold;
+
+    @Before
+    public void enableParallel() {
+        parallelism = KernelConfig.getParallelism();
+        parallelThreshold = KernelConfig.getParallelThreshold();
+        KernelConfig.setParallelism(4);
+        KernelConfig.setParallelThreshold(0);
+    }
+
+    @After
+    public void restoreParallel() {
+        KernelConfig.setParallelism(parallelism);
+        KernelConfig.setParallelThreshold(parallelThreshold);
+    }
+}
@@ -60,12 +60,12 @@ public class PathRouteMatrixTest {
     }
 
     private City getSourceCity(String routes) {
-        return new City(routes.split("-")[0]);
+        return City.valueOf(routes.split("-")[0]);
     }
 
     private City getDestCity(String routes) {
         String[] array = routes.split("-");
-        return new City(array[array.length - 1]);
+        return City.valueOf(array[array.length - 1]);
     }
 
     private int getStops(String routes) {
@@ -131,9 +131,9 @@ public class PathRouteMatrixTest {
         matrix.build();
 
         List<Route> cToc = new ArrayList<Route>();
-        cToc.addAll(findRoutes(matrix, new City("C"), new City("C"), 1));
-        cToc.addAll(findRoutes(matrix, new City("C"), new City("C"), 2));
-        cToc.addAll(findRoutes(matrix, new City("C"), new City("C"), 3));
+        cToc.addAll(findRoutes(matrix, City.valueOf("C"), City.valueOf("C"), 1));
+        cToc.addAll(findRoutes(matrix, City.valueOf("C"), City.valueOf("C"), 2));
+        cToc.addAll(findRoutes(matrix, City.valueOf("C"), City.valueOf("C"), 3));
 
         printRoutes(cToc, "From C to C with maximum 3 stops: ");
         assertEquals(2, cToc.size());
@@ -147,7 +147,7 @@ public class PathRouteMatrixTest {
                 || "C-E-B-C".equals(secRoute.fullRouteRepr()));
 
         List<Route> aToc = new ArrayList<Route>();
-        aToc.addAll(findRoutes(matrix, new City("A"), new City("C"), 4));
+        aToc.addAll(findRoutes(matrix, City.valueOf("A"), City.valueOf("C"), 4));
         printRoutes(aToc, "From A to C with 4 stops: ");
         assertEquals(3, aToc.size());
         Set<String> routeRepr = new HashSet<>();
@@ -202,9 +202,9 @@ public class PathRouteMatrixTest {
 
         RouteMatrix<List<Route>> sum = matrix.add(matrix2);
 
-        City a = new City("A");
-        City b = new City("B");
-        City c = new City("C");
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        City c = City.valueOf("C");
 
         assertArrayEquals(new Route[] { new Route("A", "B", 5) }, sum
                 .getMatrixElement(a, b).toArray(new Route[1]));
@@ -269,10 +269,10 @@ public class PathRouteMatrixTest {
     public void testAddDuplicateMatrixCities() {
         RouteMatrix<List<Route>> m = PathRouteMatrix.newInstance();
         m.addMatrixRouteCities(Arrays.asList(new City[] {
-                new City("A"),new City("B"), new City("A")
+                City.valueOf("A"),City.valueOf("B"), City.valueOf("A")
         }));
         assertEquals(2, m.getMatrixRouteCities().size());
-        assertTrue(m.getMatrixRouteCities().contains(new City("A")));
-        assertTrue(m.getMatrixRouteCities().contains(new City("B")));
+        assertTrue(m.getMatrixRouteCities().contains(City.valueOf("A")));
+        assertTrue(m.getMatrixRouteCities().contains(City.valueOf("B")));
     }
 }
@@ -0,0 +1,136 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class ReachabilityRouteMatrixTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private ReachabilityRouteMatrix matrix;
+
+    private RouteMatrix<Long> reference;
+
+    private void buildMatrices(List<Route> routes) {
+        matrix = new ReachabilityRouteMatrix();
+        matrix.addRoutes(routes);
+        matrix.build();
+
+        reference = DenseLongRouteMatrix.newInstance(LongSemiring.BOOLEAN);
+        reference.addRoutes(routes);
+        reference.build();
+    }
+
+    @Before
+    public void setup() throws IllegalInputException {
+        buildMatrices(RouteParser.newInstance().parse(ROUTES_INPUT));
+    }
+
+    private void assertMatrixEqual(RouteMatrix<Long> expected,
+            RouteMatrix<Boolean> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertEquals(cities, actual.getMatrixRouteCities());
+
+        for (City row : cities) {
+            assertEquals(expected.getMatrixRow(row).keySet(), actual
+                    .getMatrixRow(row).keySet());
+            assertEquals(expected.getMatrixColumn(row).keySet(), actual
+                    .getMatrixColumn(row).keySet());
+            for (City column : cities) {
+                assertEquals(expected.getMatrixElement(row, column) != null,
+                        actual.getMatrixElement(row, column) != null);
+            }
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        assertMatrixEqual(reference, matrix);
+        assertEquals(Boolean.TRUE,
+                matrix.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+        assertNull(matrix.getMatrixElement(City.valueOf("B"), City.valueOf("A")));
+        assertNull(matrix.getMatrixElement(City.valueOf("A"), City.valueOf("Z")));
+    }
+
+    @Test
+    public void testTransitiveClosure() {
+        ReachabilityRouteMatrix closure = (ReachabilityRouteMatrix) matrix
+                .getMatrixTransitiveClosure();
+
+        assertMatrixEqual(reference.getMatrixTransitiveClosure(), closure);
+        assertTrue(closure.isReachable(City.valueOf("A"), City.valueOf("C")));
+        assertTrue(closure.isReachable(City.valueOf("B"), City.valueOf("B")));
+        assertFalse(closure.isReachable(City.valueOf("A"), City.valueOf("A")));
+        assertFalse(closure.isReachable(City.valueOf("D"), City.valueOf("A")));
+    }
+
+    @Test
+    public void testSetMatrixElement() {
+        City a = City.valueOf("A");
+        City f = City.valueOf("F");
+
+        matrix.setMatrixElement(a, f, Boolean.TRUE);
+        assertEquals(6, matrix.getMatrixDimensions());
+        assertTrue(matrix.isReachable(a, f));
+        assertTrue(matrix.isReachable(a, City.valueOf("B")));
+
+        matrix.setMatrixElement(a, f, null);
+        assertFalse(matrix.isReachable(a, f));
+    }
+
+    @Test
+    public void testRandomNetwork() {
+        // More than 64 cities, so each row takes multiple words.
+        Random random = new Random(20140705);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 200; i++) {
+            String from = "S" + random.nextInt(150);
+            String to = "S" + random.nextInt(150);
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+        buildMatrices(routes);
+
+        assertMatrixEqual(reference, matrix);
+        assertMatrixEqual(reference.power(3), matrix.power(3));
+        assertMatrixEqual(reference.add(reference.power(2)),
+                matrix.add(matrix.power(2)));
+        assertMatrixEqual(reference.getMatrixTransitiveClosure(),
+                matrix.getMatrixTransitiveClosure());
+    }
+
+    @Test
+    public void testParallelTransitiveClosure() {
+        Random random = new Random(20140706);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 200; i++) {
+            String from = "S" + random.nextInt(150);
+            String to = "S" + random.nextInt(150);
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+        buildMatrices(routes);
+
+        int parallelism = KernelConfig.getParallelism();
+        int parallelThreshold = KernelConfig.getParallelThreshold();
+        KernelConfig.setParallelism(4);
+        KernelConfig.setParallelThreshold(0);
+        try {
+            assertMatrixEqual(reference.getMatrixTransitiveClosure(),
+                    matrix.getMatrixTransitiveClosure());
+        } finally {
+            KernelConfig.setParallelism(parallelism);
+            KernelConfig.setParallelThreshold(parallelThreshold);
+        }
+    }
+}
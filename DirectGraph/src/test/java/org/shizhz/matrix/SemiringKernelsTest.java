@@ -0,0 +1,423 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+
+public class SemiringKernelsTest {
+    private static final int SIZE = 37;
+
+    private static final int BLOCK_SIZE = 8;
+
+    private static final LongSemiring[] LONG_SEMIRINGS = new LongSemiring[] {
+            LongSemiring.COUNTING, LongSemiring.MIN_PLUS,
+            LongSemiring.MAX_MIN, LongSemiring.BOOLEAN,
+            LongSemiring.product(IntSemiring.MIN_PLUS, IntSemiring.COUNTING),
+            LongSemiring.product(IntSemiring.MIN_PLUS, IntSemiring.MAX_MIN) };
+
+    private static final IntSemiring[] INT_SEMIRINGS = new IntSemiring[] {
+            IntSemiring.COUNTING, IntSemiring.MIN_PLUS, IntSemiring.MAX_MIN,
+            IntSemiring.BOOLEAN };
+
+    private Random random = new Random(20140702);
+
+    private int parallelism = KernelConfig.getParallelism();
+
+    @After
+    public void tearDown() {
+        KernelConfig.setBlockSize(KernelConfig.DEFAULT_BLOCK_SIZE);
+        KernelConfig.setTilingThreshold(KernelConfig.DEFAULT_TILING_THRESHOLD);
+        KernelConfig.setStrassenThreshold(KernelConfig.DEFAULT_STRASSEN_THRESHOLD);
+        KernelConfig.setParallelism(parallelism);
+        KernelConfig.setParallelThreshold(KernelConfig.DEFAULT_PARALLEL_THRESHOLD);
+        KernelConfig.setVectorized(true);
+    }
+
+    private Route randomRoute() {
+        return new Route("A", "B", 1 + random.nextInt(9));
+    }
+
+    private long[] randomMatrix(LongSemiring semiring) {
+        long[] matrix = new long[SIZE * SIZE];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = random.nextInt(4) == 0 ? semiring
+                    .valueOf(randomRoute()) : semiring.zero();
+        }
+
+        return matrix;
+    }
+
+    private int[] randomMatrix(IntSemiring semiring) {
+        int[] matrix = new int[SIZE * SIZE];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = random.nextInt(4) == 0 ? semiring
+                    .valueOf(randomRoute()) : semiring.zero();
+        }
+
+        return matrix;
+    }
+
+    private long[] zeroMatrix(LongSemiring semiring) {
+        long[] matrix = new long[SIZE * SIZE];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = semiring.zero();
+        }
+
+        return matrix;
+    }
+
+    private int[] zeroMatrix(IntSemiring semiring) {
+        int[] matrix = new int[SIZE * SIZE];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = semiring.zero();
+        }
+
+        return matrix;
+    }
+
+    @Test
+    public void testTiledMultiply() {
+        for (LongSemiring semiring : LONG_SEMIRINGS) {
+            long[] multiplicand = randomMatrix(semiring);
+            long[] multiplier = randomMatrix(semiring);
+            long[] expected = zeroMatrix(semiring);
+            long[] actual = zeroMatrix(semiring);
+
+            SemiringKernels.multiplyRows(semiring, multiplicand, multiplier,
+                    expected, SIZE);
+            SemiringKernels.multiplyTiled(semiring, multiplicand, multiplier,
+                    actual, SIZE, BLOCK_SIZE);
+            assertArrayEquals(expected, actual);
+        }
+
+        for (IntSemiring semiring : INT_SEMIRINGS) {
+            int[] multiplicand = randomMatrix(semiring);
+            int[] multiplier = randomMatrix(semiring);
+            int[] expected = zeroMatrix(semiring);
+            int[] actual = zeroMatrix(semiring);
+
+            SemiringKernels.multiplyRows(semiring, multiplicand, multiplier,
+                    expected, SIZE);
+            SemiringKernels.multiplyTiled(semiring, multiplicand, multiplier,
+                    actual, SIZE, BLOCK_SIZE);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testBlockedClosure() {
+        for (LongSemiring semiring : LONG_SEMIRINGS) {
+            if (!semiring.isIdempotent()) {
+                continue;
+            }
+
+            long[] expected = randomMatrix(semiring);
+            long[] actual = expected.clone();
+            KernelConfig.setTilingThreshold(Integer.MAX_VALUE);
+            SemiringKernels.closure(semiring, expected, SIZE);
+            SemiringKernels.closureBlocked(semiring, actual, SIZE, BLOCK_SIZE);
+            assertArrayEquals(expected, actual);
+        }
+
+        for (IntSemiring semiring : INT_SEMIRINGS) {
+            if (!semiring.isIdempotent()) {
+                continue;
+            }
+
+            int[] expected = randomMatrix(semiring);
+            int[] actual = expected.clone();
+            KernelConfig.setTilingThreshold(Integer.MAX_VALUE);
+            SemiringKernels.closure(semiring, expected, SIZE);
+            SemiringKernels.closureBlocked(semiring, actual, SIZE, BLOCK_SIZE);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    private Object[] elements(RouteMatrix<Integer> matrix) {
+        List<Integer> elements = new ArrayList<Integer>();
+        for (City row : matrix.getMatrixRouteCities()) {
+            for (City column : matrix.getMatrixRouteCities()) {
+                elements.add(matrix.getMatrixElement(row, column));
+            }
+        }
+
+        return elements.toArray();
+    }
+
+    @Test
+    public void testTiledMatrixOperations() {
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 200; i++) {
+            String from = String.valueOf((char) ('A' + random.nextInt(26)));
+            String to = String.valueOf((char) ('A' + random.nextInt(26)));
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+
+        RouteMatrix<Integer> rows = DistanceRouteMatrix.newInstance();
+        rows.addRoutes(routes);
+        rows.build();
+        Object[] power = elements(rows.power(3));
+        Object[] closure = elements(rows.getMatrixTransitiveClosure());
+
+        KernelConfig.setBlockSize(4);
+        KernelConfig.setTilingThreshold(0);
+        RouteMatrix<Integer> tiles = DistanceRouteMatrix.newInstance();
+        tiles.addRoutes(routes);
+        tiles.build();
+
+        assertArrayEquals(power, elements(tiles.power(3)));
+        assertArrayEquals(closure, elements(tiles.getMatrixTransitiveClosure()));
+    }
+
+    @Test
+    public void testParallelOperations() {
+        for (LongSemiring semiring : LONG_SEMIRINGS) {
+            long[] multiplicand = randomMatrix(semiring);
+            long[] multiplier = randomMatrix(semiring);
+            long[] expected = zeroMatrix(semiring);
+            long[] expectedSum = zeroMatrix(semiring);
+            long[] actual = zeroMatrix(semiring);
+            long[] actualSum = zeroMatrix(semiring);
+
+            KernelConfig.setParallelism(1);
+            SemiringKernels.multiply(semiring, multiplicand, multiplier,
+                    expected, SIZE);
+            SemiringKernels.add(semiring, multiplicand, multiplier,
+                    expectedSum, SIZE);
+
+            KernelConfig.setParallelism(4);
+            KernelConfig.setParallelThreshold(0);
+            for (int blockSize : new int[] { BLOCK_SIZE, SIZE }) {
+                KernelConfig.setBlockSize(blockSize);
+                KernelConfig.setTilingThreshold(0);
+                Arrays.fill(actual, semiring.zero());
+                SemiringKernels.multiply(semiring, multiplicand, multiplier,
+                        actual, SIZE);
+                SemiringKernels.add(semiring, multiplicand, multiplier,
+                        actualSum, SIZE);
+                assertArrayEquals(expected, actual);
+                assertArrayEquals(expectedSum, actualSum);
+            }
+        }
+    }
+
+    @Test
+    public void testVectorizedKernels() {
+        for (LongSemiring semiring : LONG_SEMIRINGS) {
+            long[] multiplicand = randomMatrix(semiring);
+            long[] multiplier = randomMatrix(semiring);
+            if (semiring == LongSemiring.MIN_PLUS) {
+                // Distances around Long.MAX_VALUE make the sums overflow.
+                multiplier[0] = Long.MAX_VALUE - 3;
+                multiplier[SIZE + 1] = Long.MAX_VALUE - 1;
+            }
+
+            long[][] expected = new long[][] { zeroMatrix(semiring),
+                    zeroMatrix(semiring), multiplier.clone(),
+                    multiplier.clone() };
+            long[][] actual = new long[][] { zeroMatrix(semiring),
+                    zeroMatrix(semiring), multiplier.clone(),
+                    multiplier.clone() };
+            for (long[][] matrices : new long[][][] { expected, actual }) {
+                KernelConfig.setVectorized(matrices == actual);
+                SemiringKernels.multiplyRows(semiring, multiplicand,
+                        multiplier, matrices[0], SIZE);
+                SemiringKernels.multiplyTiled(semiring, multiplicand,
+                        multiplier, matrices[1], SIZE, BLOCK_SIZE);
+                KernelConfig.setTilingThreshold(Integer.MAX_VALUE);
+                SemiringKernels.closure(semiring, matrices[2], SIZE);
+                if (semiring.isIdempotent()) {
+                    SemiringKernels.closureBlocked(semiring, matrices[3],
+                            SIZE, BLOCK_SIZE);
+                }
+            }
+
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], actual[i]);
+            }
+        }
+
+        for (IntSemiring semiring : INT_SEMIRINGS) {
+            int[] multiplicand = randomMatrix(semiring);
+            int[] multiplier = randomMatrix(semiring);
+            if (semiring == IntSemiring.MIN_PLUS) {
+                multiplier[0] = Integer.MAX_VALUE - 3;
+                multiplier[SIZE + 1] = Integer.MAX_VALUE - 1;
+            }
+
+            int[][] expected = new int[][] { zeroMatrix(semiring),
+                    zeroMatrix(semiring), multiplier.clone(),
+                    multiplier.clone() };
+            int[][] actual = new int[][] { zeroMatrix(semiring),
+                    zeroMatrix(semiring), multiplier.clone(),
+                    multiplier.clone() };
+            for (int[][] matrices : new int[][][] { expected, actual }) {
+                KernelConfig.setVectorized(matrices == actual);
+                SemiringKernels.multiplyRows(semiring, multiplicand,
+                        multiplier, matrices[0], SIZE);
+                SemiringKernels.multiplyTiled(semiring, multiplicand,
+                        multiplier, matrices[1], SIZE, BLOCK_SIZE);
+                KernelConfig.setTilingThreshold(Integer.MAX_VALUE);
+                SemiringKernels.closure(semiring, matrices[2], SIZE);
+                if (semiring.isIdempotent()) {
+                    SemiringKernels.closureBlocked(semiring, matrices[3],
+                            SIZE, BLOCK_SIZE);
+                }
+            }
+
+            for (int i = 0; i < expected.length; i++) {
+                assertArrayEquals(expected[i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelBlockedClosure() {
+        KernelConfig.setTilingThreshold(Integer.MAX_VALUE);
+        for (LongSemiring semiring : LONG_SEMIRINGS) {
+            if (!semiring.isIdempotent()) {
+                continue;
+            }
+
+            long[] expected = randomMatrix(semiring);
+            long[] actual = expected.clone();
+            KernelConfig.setParallelism(1);
+            SemiringKernels.closure(semiring, expected, SIZE);
+
+            KernelConfig.setParallelism(4);
+            KernelConfig.setParallelThreshold(0);
+            SemiringKernels.closureBlocked(semiring, actual, SIZE, BLOCK_SIZE);
+            assertArrayEquals(expected, actual);
+            KernelConfig.setParallelThreshold(KernelConfig.DEFAULT_PARALLEL_THRESHOLD);
+        }
+
+        for (IntSemiring semiring : INT_SEMIRINGS) {
+            if (!semiring.isIdempotent()) {
+                continue;
+            }
+
+            int[] expected = randomMatrix(semiring);
+            int[] actual = expected.clone();
+            KernelConfig.setParallelism(1);
+            SemiringKernels.closure(semiring, expected, SIZE);
+
+            KernelConfig.setParallelism(4);
+            KernelConfig.setParallelThreshold(0);
+            SemiringKernels.closureBlocked(semiring, actual, SIZE, BLOCK_SIZE);
+            assertArrayEquals(expected, actual);
+            KernelConfig.setParallelThreshold(KernelConfig.DEFAULT_PARALLEL_THRESHOLD);
+        }
+    }
+
+    @Test
+    public void testStrassenMultiply() {
+        KernelConfig.setStrassenThreshold(4);
+        for (int size : new int[] { 4, 16, 37 }) {
+            long[] multiplicand = new long[size * size];
+            long[] multiplier = new long[size * size];
+            for (int i = 0; i < multiplicand.length; i++) {
+                // Large elements, whose products still fit in a long.
+                multiplicand[i] = random.nextInt(3) == 0 ? random
+                        .nextInt(Integer.MAX_VALUE) : random.nextInt(3);
+                multiplier[i] = random.nextInt(3) == 0 ? random
+                        .nextInt(1 << 20) : random.nextInt(3);
+            }
+
+            long[] expected = new long[size * size];
+            SemiringKernels.multiplyRows(LongSemiring.COUNTING, multiplicand,
+                    multiplier, expected, size);
+            assertArrayEquals(expected, SemiringKernels.multiplyStrassen(
+                    multiplicand, multiplier, size));
+        }
+    }
+
+    @Test
+    public void testStrassenMultiplyBeyondBound() {
+        KernelConfig.setStrassenThreshold(4);
+        int size = 16;
+        long[] multiplicand = new long[size * size];
+        long[] multiplier = new long[size * size];
+        // Large elements which never meet, so the bound fails but the
+        // product still fits in a long.
+        for (int i = 0; i < size; i++) {
+            multiplicand[i * size] = Long.MAX_VALUE;
+            multiplicand[i * size + 1] = 1;
+            multiplier[size] = Long.MAX_VALUE;
+            multiplier[1] = 1;
+        }
+        assertFalse(SemiringKernels.countsFit(multiplicand, multiplier, size));
+
+        long[] expected = new long[size * size];
+        SemiringKernels.multiplyRows(LongSemiring.COUNTING, multiplicand,
+                multiplier, expected, size);
+        assertArrayEquals(expected, SemiringKernels.multiplyStrassen(
+                multiplicand, multiplier, size));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void testStrassenMultiplyOverflow() {
+        KernelConfig.setStrassenThreshold(4);
+        int size = 16;
+        long[] multiplicand = new long[size * size];
+        long[] multiplier = new long[size * size];
+        Arrays.fill(multiplicand, 1L << 32);
+        Arrays.fill(multiplier, 1L << 32);
+        SemiringKernels.multiplyStrassen(multiplicand, multiplier, size);
+    }
+
+    @Test
+    public void testStrassenMultiplyWrapsAround() {
+        KernelConfig.setStrassenThreshold(4);
+        int size = 13;
+        long[] multiplicand = new long[size * size];
+        long[] multiplier = new long[size * size];
+        for (int i = 0; i < multiplicand.length; i++) {
+            multiplicand[i] = random.nextLong();
+            multiplier[i] = random.nextLong();
+        }
+
+        // Unchecked operands wrap around modulo 2^64 on both kernels.
+        long[] expected = new long[size * size];
+        SemiringKernels.multiplyRows(LongSemiring.COUNTING, multiplicand,
+                multiplier, expected, size);
+        long[] actual = new long[size * size];
+        SemiringKernels.multiply(LongSemiring.COUNTING, multiplicand,
+                multiplier, actual, size);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testStrassenMatrixPower() {
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 300; i++) {
+            String from = "S" + random.nextInt(45);
+            String to = "S" + random.nextInt(45);
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+
+        RouteMatrix<Long> classical = DenseConnectionRouteMatrix.newInstance();
+        classical.addRoutes(routes);
+        classical.build();
+        RouteMatrix<Long> expected = classical.power(20);
+
+        KernelConfig.setStrassenThreshold(8);
+        RouteMatrix<Long> strassen = DenseConnectionRouteMatrix.newInstance();
+        strassen.addRoutes(routes);
+        strassen.build();
+        RouteMatrix<Long> actual = strassen.power(20);
+
+        for (City row : expected.getMatrixRouteCities()) {
+            assertEquals(expected.getMatrixRow(row), actual.getMatrixRow(row));
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.shizhz.matrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.shizhz.exception.IllegalInputException;
+import org.shizhz.route.City;
+import org.shizhz.route.Route;
+import org.shizhz.route.RouteParser;
+
+public class SparseConnectionRouteMatrixTest {
+    private static final String ROUTES_INPUT = "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7";
+
+    private RouteMatrix<Long> matrix;
+
+    private RouteMatrix<Long> reference;
+
+    private void buildMatrices(List<Route> routes) {
+        matrix = SparseConnectionRouteMatrix.newInstance();
+        matrix.addRoutes(routes);
+        matrix.build();
+
+        reference = DenseConnectionRouteMatrix.newInstance();
+        reference.addRoutes(routes);
+        reference.build();
+    }
+
+    @Before
+    public void setup() throws IllegalInputException {
+        buildMatrices(RouteParser.newInstance().parse(ROUTES_INPUT));
+    }
+
+    private void assertMatrixEqual(RouteMatrix<Long> expected,
+            RouteMatrix<Long> actual) {
+        List<City> cities = expected.getMatrixRouteCities();
+        assertArrayEquals(cities.toArray(), actual.getMatrixRouteCities()
+                .toArray());
+
+        for (City row : cities) {
+            assertEquals(expected.getMatrixRow(row), actual.getMatrixRow(row));
+            assertEquals(expected.getMatrixColumn(row),
+                    actual.getMatrixColumn(row));
+            for (City column : cities) {
+                assertEquals(expected.getMatrixElement(row, column),
+                        actual.getMatrixElement(row, column));
+            }
+        }
+    }
+
+    @Test
+    public void testBuild() {
+        assertMatrixEqual(reference, matrix);
+        assertEquals(9, ((SparseConnectionRouteMatrix) matrix)
+                .getNonZeroElementsAmount());
+    }
+
+    @Test
+    public void testIncrementalBuild() throws IllegalInputException {
+        RouteMatrix<Long> sparse = SparseConnectionRouteMatrix.newInstance();
+        RouteMatrix<Long> dense = DenseConnectionRouteMatrix.newInstance();
+        for (String input : new String[] { "AB5, CD8, CE2", "AB5, BC4, DC8",
+                "DE6, AD5, EB3, AE7", "AB6, FA1" }) {
+            List<Route> routes = RouteParser.newInstance().parse(input);
+            sparse.addRoutes(routes);
+            sparse.build();
+            dense.addRoutes(routes);
+            dense.build();
+        }
+
+        // Rebuilding without new routes keeps the elements.
+        sparse.build();
+        dense.build();
+
+        List<Route> routes = new ArrayList<Route>(RouteParser.newInstance()
+                .parse(ROUTES_INPUT));
+        routes.addAll(RouteParser.newInstance().parse("AB6, FA1"));
+        buildMatrices(routes);
+        assertMatrixEqual(reference, sparse);
+        assertMatrixEqual(reference, dense);
+        assertEquals(Long.valueOf(2),
+                sparse.getMatrixElement(City.valueOf("A"), City.valueOf("B")));
+        assertMatrixEqual(reference.power(4), sparse.power(4));
+    }
+
+    @Test
+    public void testSetMatrixElement() {
+        RouteMatrix<Long> m = SparseConnectionRouteMatrix.newInstance();
+        City a = City.valueOf("A");
+        City b = City.valueOf("B");
+        City c = City.valueOf("C");
+
+        m.setMatrixElement(c, b, 4L);
+        m.setMatrixElement(b, c, 2L);
+        m.setMatrixElement(a, c, 3L);
+        m.setMatrixElement(a, b, 1L);
+
+        assertEquals(3, m.getMatrixDimensions());
+        assertEquals(Long.valueOf(1), m.getMatrixElement(a, b));
+        assertEquals(Long.valueOf(3), m.getMatrixElement(a, c));
+        assertEquals(Long.valueOf(2), m.getMatrixElement(b, c));
+        assertEquals(Long.valueOf(4), m.getMatrixElement(c, b));
+
+        m.setMatrixElement(a, c, null);
+        assertNull(m.getMatrixElement(a, c));
+        assertEquals(3, ((SparseConnectionRouteMatrix) m)
+                .getNonZeroElementsAmount());
+    }
+
+    @Test
+    public void testOperations() {
+        assertMatrixEqual(reference.multiply(reference),
+                matrix.multiply(matrix));
+        assertMatrixEqual(reference.add(reference.power(3)),
+                matrix.add(matrix.power(3)));
+        assertMatrixEqual(reference.getMultiplyIdentify(),
+                matrix.getMultiplyIdentify());
+        assertMatrixEqual(matrix, matrix.multiply(matrix.getMultiplyIdentify()));
+        assertMatrixEqual(matrix, matrix.add(matrix.getAdditionIdentify()));
+
+        for (int i = 1; i <= 8; i++) {
+            assertMatrixEqual(reference.power(i), matrix.power(i));
+        }
+    }
+
+    @Test
+    public void testRandomNetwork() {
+        Random random = new Random(20140701);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 120; i++) {
+            String from = String.valueOf((char) ('A' + random.nextInt(26)));
+            String to = String.valueOf((char) ('A' + random.nextInt(26)));
+            routes.add(new Route(from, to, 1 + random.nextInt(9)));
+        }
+        buildMatrices(routes);
+
+        assertMatrixEqual(reference, matrix);
+        assertMatrixEqual(reference.power(5), matrix.power(5));
+        assertMatrixEqual(reference.add(reference.power(2)),
+                matrix.add(matrix.power(2)));
+    }
+
+    @Test
+    public void testTransitiveClosure() {
+        // Routes only go from a city to a later one, so that the amount of
+        // trips between each pair stays finite.
+        Random random = new Random(20140709);
+        List<Route> routes = new ArrayList<Route>();
+        for (int i = 0; i < 80; i++) {
+            int from = random.nextInt(25);
+            int to = from + 1 + random.nextInt(25 - from);
+            routes.add(new Route(String.valueOf((char) ('A' + from)), String
+                    .valueOf((char) ('A' + to)), 1 + random.nextInt(9)));
+        }
+        buildMatrices(routes);
+
+        RouteMatrix<Long> closure = matrix.getMatrixTransitiveClosure();
+        assertEquals(SparseConnectionRouteMatrix.class, closure.getClass());
+        assertMatrixEqual(reference.getMatrixTransitiveClosure(), closure);
+    }
+
+    @Test
+    public void testPowerElement() {
+        SparseConnectionRouteMatrix sparse = (SparseConnectionRouteMatrix) matrix;
+        List<City> cities = matrix.getMatrixRouteCities();
+        RouteMatrix<Long> sum = null;
+        for (int i = 1; i <= 6; i++) {
+            RouteMatrix<Long> power = reference.power(i);
+            sum = sum == null ? power : sum.add(power);
+            for (City row : cities) {
+                for (City column : cities) {
+                    assertEquals(power.getMatrixElement(row, column),
+                            sparse.getPowerElement(row, column, i));
+                    assertEquals(sum.getMatrixElement(row, column),
+                            sparse.getPowerSumElement(row, column, i));
+                }
+            }
+        }
+
+        assertNull(sparse.getPowerElement(City.valueOf("A"), City.valueOf("Z"), 3));
+    }
+
+    @Test
+    public void testPowerSum() {
+        SparseConnectionRouteMatrix sparse = (SparseConnectionRouteMatrix) matrix;
+        List<City> cities = matrix.getMatrixRouteCities();
+        for (int stops : new int[] { 1, 2, 7, 64, 1000 }) {
+            SparseLongRouteMatrix sum = (SparseLongRouteMatrix) matrix
+                    .powerSum(stops);
+            DenseLongRouteMatrix referenceSum = (DenseLongRouteMatrix) reference
+                    .powerSum(stops);
+            for (City row : cities) {
+                for (City column : cities) {
+                    BigInteger element = sum.getExactMatrixElement(row, column);
+                    assertEquals(
+                            sparse.getExactPowerSumElement(row, column, stops),
+                            element);
+                    assertEquals(referenceSum.getMatrixElement(row, column),
+                            sum.getMatrixElement(row, column));
+                    assertEquals(
+                            referenceSum.getExactMatrixElement(row, column),
+                            element);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExactElementsBeyondLong() {
+        // Each city of the complete graph K5 reaches each other by
+        // (4^k - (-1)^k) / 5 routes with k stops, which overflow a long from
+        // k = 32 on.
+        List<Route> routes = new ArrayList<Route>();
+        String[] names = new String[] { "A", "B", "C", "D", "E" };
+        for (String from : names) {
+            for (String to : names) {
+                if (!from.equals(to)) {
+                    routes.add(new Route(City.valueOf(from), City.valueOf(to), 1));
+                }
+            }
+        }
+        buildMatrices(routes);
+        SparseConnectionRouteMatrix sparse = (SparseConnectionRouteMatrix) matrix;
+
+        City from = City.valueOf("A");
+        City to = City.valueOf("B");
+        BigInteger four = BigInteger.valueOf(4);
+        for (int k : new int[] { 31, 32, 40, 100 }) {
+            BigInteger expected = four.pow(k)
+                    .subtract(BigInteger.ONE.negate().pow(k))
+                    .divide(BigInteger.valueOf(5));
+            SparseLongRouteMatrix power = (SparseLongRouteMatrix) matrix
+                    .power(k);
+
+            assertEquals(expected, power.getExactMatrixElement(from, to));
+            assertEquals(expected, sparse.getExactPowerElement(from, to, k));
+            assertEquals(expected, power.toDense().getExactMatrixElement(from,
+                    to));
+            assertEquals(expected, ((DenseLongRouteMatrix) reference.power(k))
+                    .getExactMatrixElement(from, to));
+            assertEquals(expected, power.toDense().toSparse()
+                    .getExactMatrixElement(from, to));
+            assertEquals(expected.bitLength() < 64 ? expected.longValue()
+                    : Long.MAX_VALUE, power.getMatrixElement(from, to)
+                    .longValue());
+        }
+
+        // Exact elements follow the cities when new ones shift the ordinals.
+        SparseLongRouteMatrix power = (SparseLongRouteMatrix) matrix.power(40);
+        BigInteger expected = power.getExactMatrixElement(from, to);
+        power.addMatrixRouteCities(Arrays.asList(new City[] { City.valueOf("0") }));
+        assertEquals(expected, power.getExactMatrixElement(from, to));
+
+        power.setMatrixElement(from, to, 1L);
+        assertEquals(BigInteger.ONE, power.getExactMatrixElement(from, to));
+    }
+}
@@ -0,0 +1,116 @@
+package org.shizhz.matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compare the generic inner loops of <code>SemiringKernels</code> with the
+ * vectorized ones of <code>VectorKernels</code>, on the counting
+ * multiplication and the min-plus and boolean closures. Both run single
+ * threaded without tiling, so only the inner loops differ. Not run as a unit
+ * test:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.shizhz.matrix.VectorBenchmark \
+ *     -Dexec.args="256 512 1024"
+ * </pre>
+ *
+ * @author shizhz
+ *
+ */
+public class VectorBenchmark {
+
+    private static final int[] DEFAULT_SIZES = new int[] { 256, 512, 1024 };
+
+    private static final int ROUNDS = 3;
+
+    private static long[] randomMatrix(Random random, LongSemiring semiring,
+            int size) {
+        long[] matrix = new long[size * size];
+        for (int i = 0; i < matrix.length; i++) {
+            if (i % (size + 1) == 0 && semiring != LongSemiring.COUNTING) {
+                matrix[i] = semiring.one();
+            } else if (random.nextInt(8) == 0) {
+                matrix[i] = semiring == LongSemiring.MIN_PLUS ? 1 + random
+                        .nextInt(100) : 1;
+            } else {
+                matrix[i] = semiring.zero();
+            }
+        }
+
+        return matrix;
+    }
+
+    private static long measure(String kernel, boolean vectorized,
+            long[] multiplicand, long[] multiplier, long[] result, int size) {
+        KernelConfig.setVectorized(vectorized);
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start;
+            if ("counting".equals(kernel)) {
+                Arrays.fill(result, 0);
+                start = System.nanoTime();
+                SemiringKernels.multiplyRows(LongSemiring.COUNTING,
+                        multiplicand, multiplier, result, size);
+            } else {
+                LongSemiring semiring = "min-plus".equals(kernel) ? LongSemiring.MIN_PLUS
+                        : LongSemiring.BOOLEAN;
+                System.arraycopy(multiplicand, 0, result, 0, result.length);
+                start = System.nanoTime();
+                SemiringKernels.closure(semiring, result, size);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        return best / 1000000;
+    }
+
+    private static void compare(String kernel, long[] multiplicand,
+            long[] multiplier, int size) {
+        long[] expected = new long[size * size];
+        long[] actual = new long[size * size];
+        long generic = measure(kernel, false, multiplicand, multiplier,
+                expected, size);
+        long vectorized = measure(kernel, true, multiplicand, multiplier,
+                actual, size);
+        if (!Arrays.equals(expected, actual)) {
+            throw new IllegalStateException("The vectorized " + kernel
+                    + " kernel differs from the generic one, n = " + size);
+        }
+
+        System.out.println(String.format("%6d %-10s %12d %15d %7.1fx", size,
+                kernel, generic, vectorized, (double) generic
+                        / Math.max(vectorized, 1)));
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        KernelConfig.setParallelism(1);
+        KernelConfig.setTilingThreshold(Integer.MAX_VALUE);
+        System.out.println(String.format("%6s %-10s %12s %15s %8s", "n",
+                "kernel", "generic(ms)", "vectorized(ms)", "speedup"));
+
+        Random random = new Random(20140705);
+        for (int size : sizes) {
+            compare("counting",
+                    randomMatrix(random, LongSemiring.COUNTING, size),
+                    randomMatrix(random, LongSemiring.COUNTING, size), size);
+            compare("min-plus",
+                    randomMatrix(random, LongSemiring.MIN_PLUS, size), null,
+                    size);
+            compare("boolean",
+                    randomMatrix(random, LongSemiring.BOOLEAN, size), null,
+                    size);
+        }
+
+        KernelConfig.setVectorized(true);
+    }
+}
@@ -3,6 +3,9 @@ package org.shizhz.route;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -13,25 +16,37 @@ public class CityTest {
 
     @Test
     public void testCityToString() {
-        City city = new City("Chengdu");
+        City city = City.valueOf("Chengdu");
         assertEquals("Chengdu", city.toString());
-        city.setName("Beijing");
-        assertEquals("Beijing", city.toString());
+        assertEquals("Beijing", City.valueOf("Beijing").toString());
+    }
+
+    @Test
+    public void testInterning() {
+        City city = City.valueOf("Xi'an");
+        assertSame(city, City.valueOf(new String("Xi'an")));
+        assertEquals(city.getId(), city.hashCode());
+        assertSame(city, CityRegistry.getInstance().getCity(city.getId()));
+        assertTrue(city.getId() < CityRegistry.getInstance().size());
+        assertNull(CityRegistry.getInstance().getCity(-1));
+
+        assertNotSame(city, City.valueOf("Lhasa"));
+        assertTrue(city.getId() != City.valueOf("Lhasa").getId());
     }
 
     @Test
     public void testCityEquality() {
         String name = "chengdu";
-        City cd = new City(name);
+        City cd = City.valueOf(name);
 
         // reflexive
         assertTrue(cd.equals(cd));
-        City cdNew = new City(name);
+        City cdNew = City.valueOf(name);
 
         // symmetric
         assertTrue(cd.equals(cdNew));
         assertTrue(cdNew.equals(cd));
-        City cdEvenNewer = new City(name);
+        City cdEvenNewer = City.valueOf(name);
 
         // transitive
         assertTrue(cd.equals(cdNew));
@@ -39,26 +54,26 @@ public class CityTest {
         assertTrue(cd.equals(cdEvenNewer));
 
         // null case
-        assertTrue(new City(null).equals(new City("")));
+        assertTrue(City.valueOf(null).equals(City.valueOf("")));
 
-        assertFalse(new City("A").equals(null));
-        assertFalse(new City("A").equals("A"));
+        assertFalse(City.valueOf("A").equals(null));
+        assertFalse(City.valueOf("A").equals("A"));
     }
 
     @Test
     public void testCompareTo() {
-        assertTrue(new City("A").compareTo(new City("B")) < 0);
-        assertTrue(new City("A").compareTo(new City("A")) == 0);
-        assertTrue(new City("Z").compareTo(new City("A")) > 0);
+        assertTrue(City.valueOf("A").compareTo(City.valueOf("B")) < 0);
+        assertTrue(City.valueOf("A").compareTo(City.valueOf("A")) == 0);
+        assertTrue(City.valueOf("Z").compareTo(City.valueOf("A")) > 0);
 
-        City[] cities = new City[] { new City("A"), new City("D"),
-                new City("C") };
+        City[] cities = new City[] { City.valueOf("A"), City.valueOf("D"),
+                City.valueOf("C") };
 
-        assertArrayEquals(new City[] { new City("A"), new City("D"),
-                new City("C") }, cities);
+        assertArrayEquals(new City[] { City.valueOf("A"), City.valueOf("D"),
+                City.valueOf("C") }, cities);
 
         Arrays.sort(cities);
-        assertArrayEquals(new City[] { new City("A"), new City("C"),
-                new City("D") }, cities);
+        assertArrayEquals(new City[] { City.valueOf("A"), City.valueOf("C"),
+                City.valueOf("D") }, cities);
     }
 }
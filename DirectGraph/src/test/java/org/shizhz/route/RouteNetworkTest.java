@@ -5,10 +5,17 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.math.BigInteger;
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.shizhz.exception.IllegalInputException;
 import org.shizhz.exception.NoRouteExistingException;
+import org.shizhz.matrix.LongSemiring;
+import org.shizhz.matrix.SparseConnectionRouteMatrix;
+import org.shizhz.matrix.SparseLongRouteMatrix;
+import org.shizhz.matrix.TripAggregate;
 
 public class RouteNetworkTest {
     private RouteNetwork routeNetwork;
@@ -25,6 +32,29 @@ public class RouteNetworkTest {
         routeNetwork.addRoutes("a,d");
     }
 
+    @Test
+    public void testAddRoutesIncrementally() throws IllegalInputException,
+            NoRouteExistingException {
+        RouteNetwork routeNetwork = new RouteNetwork("AB5, BC4, CD8, DC8");
+        assertEquals(BigInteger.ONE,
+                routeNetwork.tripsAmountWithStops("A-C", 4));
+
+        // Routes added again are ignored, both within one collection and
+        // across additions.
+        routeNetwork.addRoutes(Arrays.asList(new Route("A", "E", 7),
+                new Route("A", "E", 7), new Route("A", "B", 5)));
+        routeNetwork.addRoutes("DE6, AD5, CE2, EB3");
+        routeNetwork.addRoutes("AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7");
+        assertEquals(9, routeNetwork.findRouteDistance("A-B-C"));
+        assertEquals(BigInteger.valueOf(3),
+                routeNetwork.tripsAmountWithStops("A-C", 4));
+        assertEquals(new TripAggregate(3, 18, 29, 72),
+                routeNetwork.tripsAggregateWithStops("A-C", 4));
+        assertEquals(BigInteger.valueOf(2),
+                routeNetwork.tripsAmountWithMaximumStops("C-C", 3));
+        assertEquals(7, routeNetwork.tripsLessThanDistance("C-C", 30));
+    }
+
     @Test
     public void testRoutePattern() {
         String pattern = "([A-Z]-)+[A-Z]$";
@@ -141,7 +171,58 @@ public class RouteNetworkTest {
     @Test
     public void testTripsAmountWithStops() throws IllegalInputException,
             NoRouteExistingException {
-        assertEquals(3, routeNetwork.tripsAmountWithStops("A-C", 4));
+        assertEquals(BigInteger.valueOf(3),
+                routeNetwork.tripsAmountWithStops("A-C", 4));
+    }
+
+    @Test
+    public void testTripsAggregateWithStops() throws IllegalInputException,
+            NoRouteExistingException {
+        // A-B-C-D-C (25), A-D-C-D-C (29) and A-D-E-B-C (18).
+        assertEquals(new TripAggregate(3, 18, 29, 72),
+                routeNetwork.tripsAggregateWithStops("A-C", 4));
+
+        // The aggregates are built again with the new routes.
+        routeNetwork.addRoutes("AC3");
+        assertEquals(new TripAggregate(1, 3, 3, 3),
+                routeNetwork.tripsAggregateWithStops("A-C", 1));
+        assertEquals(new TripAggregate(4, 12, 29, 84),
+                routeNetwork.tripsAggregateWithStops("A-C", 4));
+    }
+
+    @Test
+    public void testTripsAggregateWithStopsOverflow()
+            throws IllegalInputException, NoRouteExistingException {
+        // The complete graph of 8 cities, where there are (7^30 - 1) / 8
+        // trips with 30 stops between two cities, more than a long holds.
+        StringBuilder routesInput = new StringBuilder();
+        for (char source = 'A'; source <= 'H'; source++) {
+            for (char destination = 'A'; destination <= 'H'; destination++) {
+                if (source != destination) {
+                    routesInput.append(source).append(destination)
+                            .append("3, ");
+                }
+            }
+        }
+        RouteNetwork network = new RouteNetwork(routesInput.substring(0,
+                routesInput.length() - 2));
+
+        BigInteger amount = network.tripsAmountWithStops("A-B", 30);
+        assertEquals(new BigInteger("2817417536336532260982906"), amount);
+
+        TripAggregate aggregate = network.tripsAggregateWithStops("A-B", 30);
+        assertEquals(amount, aggregate.getCount());
+        assertEquals(90, aggregate.getMinDistance());
+        assertEquals(90, aggregate.getMaxDistance());
+        assertEquals(amount.multiply(BigInteger.valueOf(90)),
+                aggregate.getSumDistance());
+        assertEquals(90, aggregate.getAverageDistance(), 0);
+    }
+
+    @Test(expected = NoRouteExistingException.class)
+    public void testTripsAggregateWithStopsNoSuchRoute()
+            throws IllegalInputException, NoRouteExistingException {
+        routeNetwork.tripsAggregateWithStops("A-C", 1);
     }
 
     @Test(expected = NoRouteExistingException.class)
@@ -207,7 +288,55 @@ public class RouteNetworkTest {
     @Test
     public void testTripsAmountWithMaximumStops() throws IllegalInputException,
             NoRouteExistingException {
-        assertEquals(2, routeNetwork.tripsAmountWithMaximumStops("C-C", 3));
+        assertEquals(BigInteger.valueOf(2),
+                routeNetwork.tripsAmountWithMaximumStops("C-C", 3));
+    }
+
+    @Test
+    public void testTripsAmountBeyondLong() throws IllegalInputException,
+            NoRouteExistingException {
+        // Each pair of the 5 cities is connected both ways, so the trips from
+        // a city back to itself with k stops amount to (4^k + 4 * (-1)^k) / 5.
+        RouteNetwork completeNetwork = new RouteNetwork(
+                "AB1, AC1, AD1, AE1, BA1, BC1, BD1, BE1, CA1, CB1, CD1, CE1, "
+                        + "DA1, DB1, DC1, DE1, EA1, EB1, EC1, ED1");
+        BigInteger four = BigInteger.valueOf(4);
+        BigInteger five = BigInteger.valueOf(5);
+
+        // 40 stops are counted by pushing the row of A, 200 stops by the sum
+        // of powers of the whole matrix.
+        for (int stops : new int[] { 40, 200 }) {
+            BigInteger sum = BigInteger.ZERO;
+            BigInteger amount = null;
+            for (int k = 1; k <= stops; k++) {
+                amount = four.pow(k)
+                        .add(four.multiply(BigInteger.ONE.negate().pow(k)))
+                        .divide(five);
+                sum = sum.add(amount);
+            }
+
+            assertEquals(amount, completeNetwork.tripsAmountWithStops("A-A",
+                    stops));
+            assertEquals(sum, completeNetwork.tripsAmountWithMaximumStops(
+                    "A-A", stops));
+        }
+    }
+
+    @Test
+    public void testTripsAmountWithManyMaximumStops()
+            throws IllegalInputException, NoRouteExistingException {
+        // Large enough to sum up the powers of the whole matrix.
+        SparseConnectionRouteMatrix matrix = new SparseConnectionRouteMatrix();
+        matrix.addRoutes(RouteParser.newInstance().parse(
+                "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7"));
+        matrix.build();
+
+        for (int stops : new int[] { 30, 1000 }) {
+            assertEquals(
+                    matrix.getExactPowerSumElement(City.valueOf("C"),
+                            City.valueOf("C"), stops),
+                    routeNetwork.tripsAmountWithMaximumStops("C-C", stops));
+        }
     }
 
     @Test(expected = NoRouteExistingException.class)
@@ -275,6 +404,46 @@ public class RouteNetworkTest {
             NoRouteExistingException {
         assertEquals(9, routeNetwork.shortestPath("A-C").getDistance());
         assertEquals(9, routeNetwork.shortestPath("B-B").getDistance());
+        assertEquals("A-B-C", routeNetwork.shortestPath("A-C").fullRouteRepr());
+
+        routeNetwork.addRoutes("AC3");
+        assertEquals("A-C", routeNetwork.shortestPath("A-C").fullRouteRepr());
+    }
+
+    @Test
+    public void testShortestDistance() throws IllegalInputException,
+            NoRouteExistingException {
+        assertEquals(9, routeNetwork.shortestDistance("A-C"));
+        assertEquals(9, routeNetwork.shortestDistance("B-B"));
+        assertEquals(7, routeNetwork.shortestDistance("A-E"));
+
+        routeNetwork.addRoutes("AC3");
+        assertEquals(3, routeNetwork.shortestDistance("A-C"));
+    }
+
+    @Test(expected = NoRouteExistingException.class)
+    public void testShortestDistanceNoSuchRoute()
+            throws IllegalInputException, NoRouteExistingException {
+        routeNetwork.shortestDistance("D-A");
+    }
+
+    @Test
+    public void testShortestDistanceWithStops() throws IllegalInputException,
+            NoRouteExistingException {
+        assertEquals(18, routeNetwork.shortestDistanceWithStops("A-C", 4));
+        assertEquals(9, routeNetwork.shortestDistanceWithStops("A-C", 2));
+        assertEquals(17, routeNetwork.shortestDistanceWithStops("A-D", 3));
+
+        // The distances are built again with the new routes.
+        routeNetwork.addRoutes("AC3");
+        assertEquals(3, routeNetwork.shortestDistanceWithStops("A-C", 1));
+        assertEquals(12, routeNetwork.shortestDistanceWithStops("A-C", 4));
+    }
+
+    @Test(expected = NoRouteExistingException.class)
+    public void testShortestDistanceWithStopsNoSuchRoute()
+            throws IllegalInputException, NoRouteExistingException {
+        routeNetwork.shortestDistanceWithStops("A-C", 1);
     }
 
     @Test(expected = NoRouteExistingException.class)
@@ -351,6 +520,120 @@ public class RouteNetworkTest {
         routeNetwork.tripsAmountWithMaximumStops("D-A", 9);
     }
 
+    @Test
+    public void testUnreachablePair() throws IllegalInputException {
+        // Nothing leaves the cluster of C, D and E towards A.
+        for (int query = 0; query < 6; query++) {
+            try {
+                switch (query) {
+                case 0:
+                    routeNetwork.tripsAmountWithStops("D-A", 3);
+                    break;
+                case 1:
+                    routeNetwork.tripsAmountWithMaximumStops("C-A", 30);
+                    break;
+                case 2:
+                    routeNetwork.tripsLessThanDistance("E-A", 1000);
+                    break;
+                case 3:
+                    routeNetwork.shortestPath("B-A");
+                    break;
+                case 4:
+                    routeNetwork.shortestDistance("D-A");
+                    break;
+                default:
+                    routeNetwork.shortestDistanceWithStops("C-A", 4);
+                }
+                fail("Query " + query + " should find no route.");
+            } catch (NoRouteExistingException e) {
+                assertEquals("NO SUCH ROUTE", e.getMessage());
+            }
+        }
+    }
+
+    private long tripsAmountOrZero(String route, int stops, long modulus)
+            throws IllegalInputException {
+        try {
+            return routeNetwork.tripsAmountWithStops(route, stops)
+                    .mod(BigInteger.valueOf(modulus)).longValue();
+        } catch (NoRouteExistingException e) {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testTripsAmountModulo() throws IllegalInputException,
+            NoRouteExistingException {
+        long modulus = 1009;
+        for (int stops = 1; stops <= 40; stops++) {
+            assertEquals(tripsAmountOrZero("C-C", stops, modulus),
+                    routeNetwork.tripsAmountWithStops("C-C", (long) stops,
+                            modulus));
+        }
+
+        // No trip from A to C with only one stop.
+        for (int stops = 2; stops <= 40; stops++) {
+            assertEquals(
+                    routeNetwork.tripsAmountWithMaximumStops("A-C", stops)
+                            .mod(BigInteger.valueOf(modulus)).longValue(),
+                    routeNetwork.tripsAmountWithMaximumStops("A-C",
+                            (long) stops, modulus));
+        }
+    }
+
+    @Test
+    public void testTripsAmountWithHugeStops() throws IllegalInputException,
+            NoRouteExistingException {
+        SparseConnectionRouteMatrix matrix = new SparseConnectionRouteMatrix();
+        matrix.addRoutes(RouteParser.newInstance().parse(
+                "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7"));
+        matrix.build();
+
+        // The amounts of 10^6 stops are far beyond a long, their residues are
+        // checked against the sums of those of 1 to 10^6 stops.
+        long modulus = 1000000007L;
+        SparseLongRouteMatrix modular = new SparseLongRouteMatrix(
+                LongSemiring.modular(modulus));
+        modular.addRoutes(RouteParser.newInstance().parse(
+                "AB5, BC4, CD8, DC8, DE6, AD5, CE2, EB3, AE7"));
+        modular.build();
+        int stops = 1000000;
+        long[] amounts = modular.getPowerElements(City.valueOf("A"), City.valueOf("C"),
+                stops);
+        long sum = 0;
+        for (long amount : amounts) {
+            sum = (sum + amount) % modulus;
+        }
+
+        assertEquals(amounts[stops - 1],
+                routeNetwork.tripsAmountWithStops("A-C", (long) stops, modulus));
+        assertEquals(sum, routeNetwork.tripsAmountWithMaximumStops("A-C",
+                (long) stops, modulus));
+        assertEquals(
+                matrix.getPowerElement(City.valueOf("A"), City.valueOf("C"), 30)
+                        .longValue() % modulus,
+                routeNetwork.tripsAmountWithStops("A-C", 30L, modulus));
+
+        assertTrue(routeNetwork.tripsAmountWithStops("A-C", Long.MAX_VALUE,
+                modulus) < modulus);
+    }
+
+    @Test
+    public void testTripsAmountModuloInputInvalid()
+            throws NoRouteExistingException {
+        try {
+            routeNetwork.tripsAmountWithStops("A-C", 3L, 1000L);
+            fail();
+        } catch (IllegalInputException e) {
+        }
+
+        try {
+            routeNetwork.tripsAmountWithMaximumStops("A-C", 0L, 1009L);
+            fail();
+        } catch (IllegalInputException e) {
+        }
+    }
+
     @Test
     public void testRepr() {
         String expectedMatrix = "\n       A   B   C   D   E\n"
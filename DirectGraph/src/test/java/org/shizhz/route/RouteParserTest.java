@@ -83,11 +83,11 @@ public class RouteParserTest {
 
         assertNotNull(cities);
         assertEquals(4, cities.size());
-        assertTrue(cities.contains(new City("A")));
-        assertTrue(cities.contains(new City("B")));
-        assertTrue(cities.contains(new City("C")));
-        assertTrue(cities.contains(new City("D")));
-        assertFalse(cities.contains(new City("E")));
+        assertTrue(cities.contains(City.valueOf("A")));
+        assertTrue(cities.contains(City.valueOf("B")));
+        assertTrue(cities.contains(City.valueOf("C")));
+        assertTrue(cities.contains(City.valueOf("D")));
+        assertFalse(cities.contains(City.valueOf("E")));
     }
 
     @Test
@@ -99,10 +99,10 @@ public class RouteParserTest {
 
         assertNotNull(cities);
         assertEquals(4, cities.size());
-        assertTrue(cities.contains(new City("A")));
-        assertTrue(cities.contains(new City("B")));
-        assertTrue(cities.contains(new City("C")));
-        assertTrue(cities.contains(new City("D")));
-        assertFalse(cities.contains(new City("E")));
+        assertTrue(cities.contains(City.valueOf("A")));
+        assertTrue(cities.contains(City.valueOf("B")));
+        assertTrue(cities.contains(City.valueOf("C")));
+        assertTrue(cities.contains(City.valueOf("D")));
+        assertFalse(cities.contains(City.valueOf("E")));
     }
 }
@@ -7,6 +7,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 import org.shizhz.exception.UnconnectedRouteException;
@@ -15,8 +17,8 @@ public class RouteTest {
 
     @Test(expected = UnconnectedRouteException.class)
     public void testAddUnconnectedRoutes() throws UnconnectedRouteException {
-        Route route1 = new Route(new City("A"), new City("B"), 123);
-        Route route2 = new Route(new City("C"), new City("D"), 32);
+        Route route1 = new Route(City.valueOf("A"), City.valueOf("B"), 123);
+        Route route2 = new Route(City.valueOf("C"), City.valueOf("D"), 32);
 
         route1.addInnerRoute(route2);
     }
@@ -30,8 +32,8 @@ public class RouteTest {
     @Test(expected = UnconnectedRouteException.class)
     public void testAddTwoRoutesWithSameSourceCity()
             throws UnconnectedRouteException {
-        Route route1 = new Route(new City("A"), new City("B"), 123);
-        Route route2 = new Route(new City("A"), new City("D"), 32);
+        Route route1 = new Route(City.valueOf("A"), City.valueOf("B"), 123);
+        Route route2 = new Route(City.valueOf("A"), City.valueOf("D"), 32);
 
         route1.addInnerRoute(route2);
     }
@@ -55,7 +57,7 @@ public class RouteTest {
         Route route3 = route1.addInnerRoute(route2);
 
         assertEquals("A", route3.getSourceCity().getName());
-        assertEquals(new City("C"), route3.getDestinationCity());
+        assertEquals(City.valueOf("C"), route3.getDestinationCity());
         assertEquals(route1.getDistance() + route2.getDistance(),
                 route3.getDistance());
     }
@@ -195,4 +197,63 @@ public class RouteTest {
         assertEquals("A-B-C-D-E", r3.fullRouteRepr());
         assertEquals(18, r3.getDistance());
     }
+
+    @Test
+    public void testSharedParts() {
+        Route ab = new Route("A", "B", 3);
+        Route bc = new Route("B", "C", 4);
+        Route cd = new Route("C", "D", 5);
+
+        Route left = ab.addInnerRoute(bc).addInnerRoute(cd);
+        Route right = ab.addInnerRoute(bc.addInnerRoute(cd));
+        assertEquals(left, right);
+        assertEquals(left.hashCode(), right.hashCode());
+        assertEquals(3, right.getInnerRoutesAmount());
+        assertEquals(Arrays.asList(ab, bc, cd), right.getInnerRoutes());
+        assertEquals("A-B-C-D", right.fullRouteRepr());
+    }
+
+    @Test
+    public void testLongRoute() {
+        Route cycle = new Route("A", "B", 1).addInnerRoute(new Route("B", "A",
+                2));
+        Route route = cycle;
+        Route doubled = cycle;
+        for (int i = 1; i < 65536; i++) {
+            route = route.addInnerRoute(cycle);
+            if ((i & (i - 1)) == 0) {
+                doubled = doubled.addInnerRoute(doubled);
+            }
+        }
+
+        assertEquals(131072, route.getInnerRoutesAmount());
+        assertEquals(196608, route.getDistance());
+        assertEquals(131072, route.getInnerRoutes().size());
+        assertEquals(route, doubled);
+        assertEquals(route.hashCode(), doubled.hashCode());
+    }
+
+    @Test
+    public void testFingerprint() {
+        Route ab1 = new Route("A", "B", 1);
+        Route ab3 = new Route("A", "B", 3);
+        Route ba2 = new Route("B", "A", 2);
+
+        // The same single routes in different orders.
+        Route r1 = ab1.addInnerRoute(ba2).addInnerRoute(ab3);
+        Route r2 = ab3.addInnerRoute(ba2).addInnerRoute(ab1);
+        assertFalse(r1.getFingerprint() == r2.getFingerprint());
+        assertFalse(r1.equals(r2));
+        assertEquals(r1.getFingerprint(),
+                ab1.addInnerRoute(ba2.addInnerRoute(ab3)).getFingerprint());
+
+        Set<Integer> hashCodes = new HashSet<Integer>();
+        Route route = ab1;
+        for (int i = 0; i < 1000; i++) {
+            route = route.addInnerRoute(ba2).addInnerRoute(
+                    i % 2 == 0 ? ab1 : ab3);
+            hashCodes.add(route.hashCode());
+        }
+        assertEquals(1000, hashCodes.size());
+    }
 }